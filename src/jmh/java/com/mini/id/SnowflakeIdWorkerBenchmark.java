@@ -0,0 +1,97 @@
+package com.mini.id;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID生成吞吐量：无锁实现与原 synchronized 实现在单线程、全部核心下的对比
+ * <p>
+ * 线程数可用 {@code -t} 覆盖，例如依次以 -t 1、-t 4、-t 16 运行观察扩展性。
+ * 雪花算法单个工作节点每毫秒最多4096个ID，各实现的总吞吐量上限都约为4M ID/s，
+ * 对比的是多线程下达到该上限的能力。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnowflakeIdWorkerBenchmark {
+
+    private SnowflakeIdWorker lockFree;
+
+    private SynchronizedIdWorker synchronizedWorker;
+
+    @Setup
+    public void setup() {
+        lockFree = new SnowflakeIdWorker(1, 0);
+        synchronizedWorker = new SynchronizedIdWorker(1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long lockFreeSingleThread() {
+        return lockFree.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long lockFreeAllThreads() {
+        return lockFree.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long synchronizedSingleThread() {
+        return synchronizedWorker.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long synchronizedAllThreads() {
+        return synchronizedWorker.nextId();
+    }
+
+    /**
+     * 原实现：synchronized 保护，序列号用尽时忙等下一毫秒
+     */
+    static final class SynchronizedIdWorker {
+
+        private final long workerBits;
+
+        private long sequence;
+
+        private long lastTimestamp = -1L;
+
+        SynchronizedIdWorker(long workerId) {
+            this.workerBits = workerId << 12;
+        }
+
+        synchronized long nextId() {
+            long timestamp = System.currentTimeMillis();
+            if (lastTimestamp == timestamp) {
+                sequence = (sequence + 1) & 0xfff;
+                if (sequence == 0) {
+                    while (timestamp <= lastTimestamp) {
+                        timestamp = System.currentTimeMillis();
+                    }
+                }
+            } else {
+                sequence = 0L;
+            }
+            lastTimestamp = timestamp;
+            return (timestamp - SnowflakeIdWorker.EPOCH) << 22 | workerBits | sequence;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.mini.metadata;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.mini.entity.FileInfo;
+import com.mini.mapper.FileInfoChangeListener;
+import com.mini.mapper.FileInfoMapper;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 元数据查询延迟：嵌入式存储与 MyBatis 映射（FileInfoMapper.xml）对比
+ * <p>
+ * jdbc 默认连接进程内的 H2（MySQL 兼容模式），只反映SQL执行与映射的开销，不含网络往返；
+ * 对比真实 MySQL 时用 {@code -Dbenchmark.jdbc.url/user/password} 指定一个专用的空库，启动时会建表并清空 fileInfo 表。
+ * 嵌入式存储开启 sync，写入的耗时包含每次提交的刷盘。
+ * <p>
+ * 预置 rows 条记录，上传时间均匀分布在最近30天，约十分之一已删除；查询覆盖列表首页、深分页、按文件名、按ID与过期计数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class FileInfoMapperBenchmark {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 12, 0);
+
+    @Param({"embedded", "jdbc"})
+    private String store;
+
+    @Param({"20000"})
+    private int rows;
+
+    private FileInfoMapper mapper;
+
+    private Path dataDir;
+
+    private DruidDataSource dataSource;
+
+    private long[] ids;
+
+    private String[] fileNames;
+
+    private final AtomicLong nextId = new AtomicLong(1L << 40);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        if ("embedded".equals(store)) {
+            dataDir = Files.createTempDirectory("metadata-benchmark");
+            mapper = new EmbeddedFileInfoMapper(dataDir.resolve("fileInfo.mv.db"), true, 64,
+                    new StaticListableBeanFactory().getBeanProvider(FileInfoChangeListener.class));
+        } else {
+            dataSource = dataSource();
+            mapper = jdbcMapper(dataSource);
+        }
+        populate();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (mapper instanceof EmbeddedFileInfoMapper embedded) {
+            embedded.close();
+            FileSystemUtils.deleteRecursively(dataDir);
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    @Benchmark
+    public FileInfo selectById() {
+        return mapper.selectById(ids[random(ids.length)]);
+    }
+
+    @Benchmark
+    public FileInfo selectByFileName() {
+        return mapper.selectByFileName(fileNames[random(fileNames.length)]);
+    }
+
+    @Benchmark
+    public List<FileInfo> firstPageByCursor() {
+        return mapper.selectPageByCursor(null, null, false, 20, null, null);
+    }
+
+    @Benchmark
+    public List<FileInfo> deepPageByOffset() {
+        return mapper.selectPage(rows / 2, 20, null, null);
+    }
+
+    @Benchmark
+    public long selectExpiredCount() {
+        return mapper.selectExpiredCount(NOW.minusDays(7));
+    }
+
+    @Benchmark
+    public int insert() {
+        long id = nextId.incrementAndGet();
+        return mapper.insert(fileInfo(id, "bench_" + id + ".txt", NOW));
+    }
+
+    private void populate() {
+        SplittableRandom random = new SplittableRandom(42);
+        ids = new long[rows];
+        fileNames = new String[rows];
+        List<FileInfo> batch = new ArrayList<>(500);
+        List<Long> deleted = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            long id = 1_000_000L + i;
+            ids[i] = id;
+            fileNames[i] = "report_" + i + ".pdf";
+            batch.add(fileInfo(id, fileNames[i], NOW.minusSeconds(random.nextLong(30L * 24 * 3600))));
+            if (random.nextInt(10) == 0) {
+                deleted.add(id);
+            }
+            if (batch.size() == 500) {
+                mapper.batchInsert(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            mapper.batchInsert(batch);
+        }
+        for (int from = 0; from < deleted.size(); from += 500) {
+            mapper.batchDeleteByIds(deleted.subList(from, Math.min(from + 500, deleted.size())));
+        }
+    }
+
+    private static FileInfo fileInfo(long id, String fileName, LocalDateTime uploadDate) {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setId(id);
+        fileInfo.setFileName(fileName);
+        fileInfo.setFilePath("/data/uploads/" + Long.toHexString(id & 0xff) + "/" + fileName);
+        fileInfo.setFileSize(4096L);
+        fileInfo.setStatus(0);
+        fileInfo.setUploadDate(uploadDate);
+        return fileInfo;
+    }
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    private static DruidDataSource dataSource() throws IOException, SQLException {
+        String url = System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:fileInfoBenchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setUrl(url);
+        dataSource.setUsername(System.getProperty("benchmark.jdbc.user", "sa"));
+        dataSource.setPassword(System.getProperty("benchmark.jdbc.password", ""));
+        dataSource.setMaxActive(8);
+        String schema;
+        try (InputStream in = FileInfoMapperBenchmark.class.getResourceAsStream("/sql/schema.sql")) {
+            schema = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (url.startsWith("jdbc:h2:")) {
+            // H2 不支持的排序规则、注释与存储引擎子句
+            schema = schema
+                    .replaceAll("(?m)^\\s*--.*$", "")
+                    .replaceAll("(?i)\\s+COLLATE\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+COMMENT\\s*(=\\s*)?'[^']*'", "")
+                    .replaceAll("(?i)\\s+ENGINE\\s*=\\s*\\w+", "")
+                    .replaceAll("(?i)\\s+DEFAULT\\s+CHARSET\\s*=\\s*\\w+", "");
+        }
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : schema.split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql);
+                }
+            }
+            statement.execute("DELETE FROM fileInfo");
+        }
+        return dataSource;
+    }
+
+    /**
+     * 不经过 Spring 直接加载 FileInfoMapper.xml，每次调用自动提交
+     */
+    private static FileInfoMapper jdbcMapper(DruidDataSource dataSource) throws IOException {
+        Configuration configuration = new Configuration(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        String resource = "mapper/FileInfoMapper.xml";
+        try (InputStream in = FileInfoMapperBenchmark.class.getClassLoader().getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        return SqlSessionManager.newInstance(new SqlSessionFactoryBuilder().build(configuration)).getMapper(FileInfoMapper.class);
+    }
+}
@@ -0,0 +1,159 @@
+package com.mini.nio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下载读取路径：把整个文件写到输出端的几种方式
+ * <ul>
+ *     <li>readAllBytes：原实现，整个文件读入堆内数组后写出</li>
+ *     <li>streamCopy：64KB 堆内缓冲区循环复制</li>
+ *     <li>directBufferCopy：64KB 直接缓冲区经 FileChannel 读写</li>
+ *     <li>transferTo：{@link FileChannel#transferTo}，输出到 /dev/null 的文件通道，由内核完成复制（对应 sendfile）</li>
+ *     <li>cachedBuffer：内容已在堆外缓存中，直接写出</li>
+ * </ul>
+ * 文件位于页缓存中，测量的是复制开销而非磁盘吞吐。线程数用 {@code -t} 指定，例如分别以 -t 1 和 -t 8 运行对比并发读取。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileReadBenchmark {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    @Param({"4096", "262144", "16777216"})
+    private int fileSize;
+
+    private Path file;
+
+    private ByteBuffer cached;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("jmh-read-", ".bin");
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        Files.write(file, content);
+        cached = ByteBuffer.allocateDirect(fileSize).put(content).flip().asReadOnlyBuffer();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 每个线程独立的输出端
+     */
+    @State(Scope.Thread)
+    public static class Sink {
+
+        FileChannel devNull;
+
+        OutputStream devNullStream;
+
+        byte[] heapBuffer = new byte[BUFFER_SIZE];
+
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            devNull = FileChannel.open(Paths.get("/dev/null"), StandardOpenOption.WRITE);
+            devNullStream = OutputStream.nullOutputStream();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            devNull.close();
+        }
+    }
+
+    @Benchmark
+    public int readAllBytes(Sink sink) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        sink.devNullStream.write(content);
+        return content.length;
+    }
+
+    @Benchmark
+    public long streamCopy(Sink sink, Blackhole blackhole) throws IOException {
+        long total = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(sink.heapBuffer)) >= 0) {
+                sink.devNullStream.write(sink.heapBuffer, 0, read);
+                total += read;
+            }
+        }
+        blackhole.consume(sink.heapBuffer);
+        return total;
+    }
+
+    @Benchmark
+    public long directBufferCopy(Sink sink) throws IOException {
+        long total = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = sink.directBuffer;
+            while (true) {
+                buffer.clear();
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    total += sink.devNull.write(buffer);
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long transferTo(Sink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, sink.devNull);
+            }
+            return position;
+        }
+    }
+
+    @Benchmark
+    public long cachedBuffer(Sink sink) throws IOException {
+        ByteBuffer region = cached.duplicate();
+        long total = 0;
+        while (region.hasRemaining()) {
+            total += sink.devNull.write(region);
+        }
+        return total;
+    }
+}
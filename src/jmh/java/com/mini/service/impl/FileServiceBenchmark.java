@@ -0,0 +1,104 @@
+package com.mini.service.impl;
+
+import com.mini.dto.FileInfoDTO;
+import com.mini.entity.FileInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 上传、列表请求中逐文件执行的辅助方法：文件名生成、类型校验与DTO转换
+ * <p>
+ * 每组同时给出一个替代实现作为对照：类型校验预先解析为 Set，DTO 转换直接调用 setter，
+ * 用于判断是否值得替换当前实现。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileServiceBenchmark {
+
+    private static final String ALLOWED_TYPES = "jpg,jpeg,png,gif,pdf,doc,docx,xls,xlsx,txt,zip,rar";
+
+    // 雪花ID的典型取值（19位十进制），与上传时追加到文件名中的长度一致
+    private static final long FILE_ID = 2111801031795937280L;
+
+    // 列表首位、末位与不允许的扩展名
+    @Param({"jpg", "rar", "exe"})
+    private String extension;
+
+    private FileServiceImpl fileService;
+
+    private Set<String> allowedTypeSet;
+
+    private String originalFileName;
+
+    private FileInfo fileInfo;
+
+    @Setup
+    public void setup() {
+        fileService = new FileServiceImpl();
+        ReflectionTestUtils.setField(fileService, "allowedTypes", ALLOWED_TYPES);
+        allowedTypeSet = Arrays.stream(ALLOWED_TYPES.split(","))
+                .map(type -> type.trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        originalFileName = "quarterly report 2024." + extension;
+        fileInfo = new FileInfo();
+        fileInfo.setId(FILE_ID);
+        fileInfo.setFileName("quarterly report 2024_" + FILE_ID + "." + extension);
+        fileInfo.setFilePath("/data/uploads/ab/cd/quarterly report 2024_" + FILE_ID + "." + extension);
+        fileInfo.setFileSize(1048576L);
+        fileInfo.setStatus(0);
+        fileInfo.setUploadDate(LocalDateTime.now());
+    }
+
+    @Benchmark
+    public String generateFileName() {
+        return fileService.generateFileName(originalFileName, FILE_ID);
+    }
+
+    @Benchmark
+    public boolean isAllowedFileType() {
+        return fileService.isAllowedFileType(extension);
+    }
+
+    @Benchmark
+    public boolean isAllowedFileTypePrecomputedSet() {
+        return allowedTypeSet.contains(extension.toLowerCase(Locale.ROOT));
+    }
+
+    @Benchmark
+    public FileInfoDTO convertToDTO() {
+        return fileService.convertToDTO(fileInfo);
+    }
+
+    @Benchmark
+    public FileInfoDTO convertToDTOWithSetters() {
+        FileInfoDTO dto = new FileInfoDTO();
+        dto.setId(fileInfo.getId());
+        dto.setFileName(fileInfo.getFileName());
+        dto.setFilePath(fileInfo.getFilePath());
+        dto.setFileSize(fileInfo.getFileSize());
+        dto.setStatus(fileInfo.getStatus());
+        dto.setUploadDate(fileInfo.getUploadDate());
+        return dto;
+    }
+}
@@ -0,0 +1,125 @@
+package com.mini.upload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上传写盘路径：以 64KB 缓冲块写入整个文件的几种方式
+ * <ul>
+ *     <li>outputStream：原实现使用的 {@link Files#newOutputStream} 顺序写</li>
+ *     <li>heapChannel：{@link UploadIngestPipeline} 当前的方式，堆内缓冲块经 FileChannel 写入</li>
+ *     <li>directChannel：直接缓冲块经 FileChannel 写入，省去 JDK 内部到临时直接缓冲区的复制</li>
+ * </ul>
+ * {@code fsync=true} 时每个文件写完后 force，结果取决于所在文件系统（tmpfs 上接近无成本），
+ * 需要在目标磁盘上运行时用 {@code -Djava.io.tmpdir} 指定目录。线程数用 {@code -t} 指定。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileWriteBenchmark {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    @Param({"4096", "262144", "16777216"})
+    private int fileSize;
+
+    @Param({"false", "true"})
+    private boolean fsync;
+
+    /**
+     * 每个线程写自己的文件，避免线程间竞争同一个 inode
+     */
+    @State(Scope.Thread)
+    public static class Target {
+
+        Path file;
+
+        byte[] chunk = new byte[BUFFER_SIZE];
+
+        ByteBuffer heapBuffer;
+
+        ByteBuffer directBuffer;
+
+        @Setup(Level.Trial)
+        public void create() throws IOException {
+            file = Files.createTempFile("jmh-write-", ".bin");
+            ThreadLocalRandom.current().nextBytes(chunk);
+            heapBuffer = ByteBuffer.wrap(chunk);
+            directBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).put(chunk).flip();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long outputStream(Target target) throws IOException {
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(target.file, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (written < fileSize) {
+                int length = (int) Math.min(BUFFER_SIZE, fileSize - written);
+                out.write(target.chunk, 0, length);
+                written += length;
+            }
+        }
+        if (fsync) {
+            try (FileChannel channel = FileChannel.open(target.file, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        return written;
+    }
+
+    @Benchmark
+    public long heapChannel(Target target) throws IOException {
+        return writeChannel(target.file, target.heapBuffer);
+    }
+
+    @Benchmark
+    public long directChannel(Target target) throws IOException {
+        return writeChannel(target.file, target.directBuffer);
+    }
+
+    private long writeChannel(Path file, ByteBuffer chunk) throws IOException {
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (written < fileSize) {
+                ByteBuffer buffer = chunk.duplicate();
+                buffer.limit((int) Math.min(BUFFER_SIZE, fileSize - written));
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+            }
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+        return written;
+    }
+}
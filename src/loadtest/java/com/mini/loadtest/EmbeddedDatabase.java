@@ -0,0 +1,55 @@
+package com.mini.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 代替 MySQL 的内存数据库：H2 的 MySQL 兼容模式
+ * <p>
+ * 表结构直接取自 {@code sql/schema.sql}，去掉 H2 不支持的存储引擎、字符集、排序规则与注释子句后执行，
+ * 与生产表结构保持同一份来源。mapper 中的 LIMIT m,n、INSERT IGNORE、ON DUPLICATE KEY UPDATE 在该模式下均可用。
+ */
+final class EmbeddedDatabase {
+
+    static final String URL = "jdbc:h2:mem:file_service;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    static final String USERNAME = "sa";
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * 建库建表，连接关闭后数据库随 JVM 存活
+     */
+    static void create() throws IOException, SQLException {
+        String schema;
+        try (InputStream in = EmbeddedDatabase.class.getResourceAsStream("/sql/schema.sql")) {
+            if (in == null) {
+                throw new IllegalStateException("sql/schema.sql not found on classpath");
+            }
+            schema = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection connection = DriverManager.getConnection(URL, USERNAME, "");
+             Statement statement = connection.createStatement()) {
+            for (String sql : toH2(schema).split(";")) {
+                if (!sql.isBlank()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+    }
+
+    static String toH2(String schema) {
+        return schema
+                .replaceAll("(?m)^\\s*--.*$", "")
+                .replaceAll("(?i)\\s+COLLATE\\s+\\w+", "")
+                .replaceAll("(?i)\\s+COMMENT\\s*(=\\s*)?'[^']*'", "")
+                .replaceAll("(?i)\\s+ENGINE\\s*=\\s*\\w+", "")
+                .replaceAll("(?i)\\s+DEFAULT\\s+CHARSET\\s*=\\s*\\w+", "");
+    }
+}
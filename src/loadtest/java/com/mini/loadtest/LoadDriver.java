@@ -0,0 +1,249 @@
+package com.mini.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 闭环压测驱动：固定数量的工作线程按场景比例循环发送请求，每个请求完成后立即发送下一个
+ * <p>
+ * 每个线程为每种请求类型维护独立的 HdrHistogram（微秒），场景结束后合并，记录时无锁。
+ * 下载从最近上传成功的文件中随机选取。
+ */
+final class LoadDriver {
+
+    // 直方图可记录的最大延迟：1小时
+    private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private static final int FILE_POOL_SIZE = 4096;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final URI baseUri;
+
+    private final HttpClient client;
+
+    // 可供下载的文件名，环形覆盖
+    private final AtomicReferenceArray<String> files = new AtomicReferenceArray<>(FILE_POOL_SIZE);
+
+    private final AtomicLong fileCount = new AtomicLong();
+
+    private final AtomicLong uploadSequence = new AtomicLong();
+
+    private byte[] content = new byte[0];
+
+    LoadDriver(URI baseUri) {
+        this.baseUri = baseUri;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * 预先上传一批文件供下载
+     */
+    void seed(Scenario scenario, int count) throws IOException, InterruptedException {
+        prepareContent(scenario);
+        for (int i = 0; i < count; i++) {
+            if (!upload(scenario.nextSize())) {
+                throw new IllegalStateException("seed upload failed");
+            }
+        }
+    }
+
+    ScenarioResult run(Scenario scenario, int threads, Duration warmup, Duration duration) throws InterruptedException {
+        prepareContent(scenario);
+        if (warmup.toMillis() > 0) {
+            runWorkers(scenario, threads, warmup);
+        }
+        System.gc();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        List<Worker> workers = runWorkers(scenario, threads, duration);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<Scenario.Operation, Histogram> merged = new EnumMap<>(Scenario.Operation.class);
+        Map<Scenario.Operation, Long> errors = new EnumMap<>(Scenario.Operation.class);
+        for (Worker worker : workers) {
+            worker.histograms.forEach((operation, histogram) ->
+                    merged.computeIfAbsent(operation, key -> newHistogram()).add(histogram));
+            worker.errors.forEach((operation, count) -> errors.merge(operation, count, Long::sum));
+        }
+        Map<String, ScenarioResult.OperationStats> operations = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<Scenario.Operation, Histogram> entry : merged.entrySet()) {
+            Histogram histogram = entry.getValue();
+            total += histogram.getTotalCount();
+            operations.put(entry.getKey().name().toLowerCase(), ScenarioResult.OperationStats.of(
+                    histogram, errors.getOrDefault(entry.getKey(), 0L), seconds));
+        }
+        return new ScenarioResult(scenario.name(), threads, seconds, total / seconds, operations,
+                gcCount() - gcCount, gcMillis() - gcMillis,
+                (allocatedBytes() - allocated) / seconds / (1024 * 1024));
+    }
+
+    private List<Worker> runWorkers(Scenario scenario, int threads, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        List<Worker> workers = new ArrayList<>(threads);
+        List<Thread> running = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(scenario, deadline);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "loadtest-" + i);
+            thread.start();
+            running.add(thread);
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        return workers;
+    }
+
+    private final class Worker implements Runnable {
+
+        private final Scenario scenario;
+
+        private final long deadline;
+
+        private final Map<Scenario.Operation, Histogram> histograms = new EnumMap<>(Scenario.Operation.class);
+
+        private final Map<Scenario.Operation, Long> errors = new EnumMap<>(Scenario.Operation.class);
+
+        Worker(Scenario scenario, long deadline) {
+            this.scenario = scenario;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                Scenario.Operation operation = scenario.nextOperation();
+                long start = System.nanoTime();
+                boolean success;
+                try {
+                    success = switch (operation) {
+                        case UPLOAD -> upload(scenario.nextSize());
+                        case DOWNLOAD -> download();
+                        case LIST -> list();
+                    };
+                } catch (IOException e) {
+                    success = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long micros = (System.nanoTime() - start) / 1000;
+                histograms.computeIfAbsent(operation, key -> newHistogram())
+                        .recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+                if (!success) {
+                    errors.merge(operation, 1L, Long::sum);
+                }
+            }
+        }
+    }
+
+    private boolean upload(int size) throws IOException, InterruptedException {
+        String boundary = "----loadtest" + ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        String fileName = "loadtest-" + uploadSequence.incrementAndGet() + ".txt";
+        ByteArrayOutputStream body = new ByteArrayOutputStream(size + 256);
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"" + fileName + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content, ThreadLocalRandom.current().nextInt(content.length - size + 1), size);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/upload/"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        boolean stored = false;
+        for (JsonNode file : MAPPER.readTree(response.body()).path("files")) {
+            if (file.path("success").asBoolean()) {
+                String storedName = file.path("fileInfo").path("fileName").asText();
+                files.set((int) (fileCount.getAndIncrement() % FILE_POOL_SIZE), storedName);
+                stored = true;
+            }
+        }
+        return stored;
+    }
+
+    private boolean download() throws IOException, InterruptedException {
+        long count = Math.min(fileCount.get(), FILE_POOL_SIZE);
+        if (count == 0) {
+            return false;
+        }
+        String fileName = files.get(ThreadLocalRandom.current().nextInt((int) count));
+        HttpRequest request = HttpRequest.newBuilder(
+                baseUri.resolve("/download/" + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20"))).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+    }
+
+    private boolean list() throws IOException, InterruptedException {
+        int page = 1 + ThreadLocalRandom.current().nextInt(5);
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/files/?page=" + page + "&page_size=20")).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+    }
+
+    private void prepareContent(Scenario scenario) {
+        // 上传内容取自同一块随机数据的不同偏移，避免逐次生成
+        int size = scenario.maxSize() * 2;
+        if (content.length < size) {
+            content = new byte[size];
+            ThreadLocalRandom.current().nextBytes(content);
+        }
+    }
+
+    private static Histogram newHistogram() {
+        return new Histogram(MAX_LATENCY_MICROS, 3);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, bean.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * 整个 JVM 的累计分配量，包含压测客户端自身的分配
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getTotalThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,147 @@
+package com.mini.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mini.FileServiceApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 端到端压测：在同一JVM内以内存数据库和临时目录启动完整应用，按场景驱动上传、下载与列表请求
+ * <p>
+ * 参数为 key=value，均可省略：
+ * <pre>
+ * scenarios=mixed,read-heavy   内置场景 mixed / read-heavy / write-heavy / list，或 custom（配合 mix）
+ * mix=upload:10,download:80,list:10
+ * sizes=4k:60,256k:30,4m:10   上传文件大小分布
+ * threads=16  warmup=10s  duration=30s  seed-files=200
+ * out=target/loadtest/results  结果 JSON 目录
+ * --任意应用配置=值             透传给应用，例如 --file.download.cache.enabled=true
+ * </pre>
+ * 示例：{@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="scenarios=mixed threads=32"}
+ * <p>
+ * 客户端与服务端在同一进程中，GC 与分配统计包含客户端自身的开销，适合对比不同提交，不代表单独部署时的绝对值。
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                appArgs.add(arg);
+            } else if (arg.contains("=")) {
+                options.put(arg.substring(0, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        String sizes = options.getOrDefault("sizes", Scenario.DEFAULT_SIZES);
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : options.getOrDefault("scenarios", options.containsKey("mix") ? "custom" : "mixed").split(",")) {
+            scenarios.add(Scenario.named(name.trim(), options.get("mix"), sizes));
+        }
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        Duration warmup = parseDuration(options.getOrDefault("warmup", "10s"));
+        Duration duration = parseDuration(options.getOrDefault("duration", "30s"));
+        int seedFiles = Integer.parseInt(options.getOrDefault("seed-files", "200"));
+        Path out = Paths.get(options.getOrDefault("out", "target/loadtest/results"));
+
+        Path workDir = Files.createTempDirectory("file-service-loadtest-");
+        EmbeddedDatabase.create();
+        ConfigurableApplicationContext context = SpringApplication.run(FileServiceApplication.class,
+                applicationArgs(workDir, appArgs));
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadDriver driver = new LoadDriver(URI.create("http://127.0.0.1:" + port));
+            driver.seed(scenarios.get(0), seedFiles);
+
+            List<ScenarioResult> results = new ArrayList<>();
+            for (Scenario scenario : scenarios) {
+                System.out.printf("%n>>> scenario %s: %d threads, warmup %s, duration %s%n",
+                        scenario.name(), threads, warmup, duration);
+                ScenarioResult result = driver.run(scenario, threads, warmup, duration);
+                print(result);
+                results.add(result);
+            }
+            Files.createDirectories(out);
+            Path report = out.resolve("loadtest-"
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), results);
+            System.out.println("\nresults written to " + report.toAbsolutePath());
+        } finally {
+            context.close();
+            FileSystemUtils.deleteRecursively(workDir);
+        }
+    }
+
+    /**
+     * 覆盖 application.yml 中依赖外部环境的配置：数据库、注册中心、所有 /data 下的目录
+     */
+    private static String[] applicationArgs(Path workDir, List<String> overrides) {
+        Path uploads = workDir.resolve("uploads");
+        Path journal = workDir.resolve("journal");
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=" + EmbeddedDatabase.URL,
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=" + EmbeddedDatabase.USERNAME,
+                "--spring.datasource.password=",
+                "--spring.datasource.druid.filters=stat",
+                "--eureka.client.enabled=false",
+                "--file.upload.path=" + uploads,
+                "--file.storage.volumes=" + uploads,
+                "--file.storage.dedup.blob-dir=" + uploads.resolve("blobs"),
+                "--file.upload.chunked.session-dir=" + uploads.resolve(".sessions"),
+                "--file.image.derivative.dir=" + workDir.resolve("derivatives"),
+                "--file.metadata.embedded.path=" + workDir.resolve("metadata").resolve("fileInfo.mv.db"),
+                "--file.cleanup.checkpoint-file=" + journal.resolve("cleanup.checkpoint"),
+                "--file.invalid-queue.journal-dir=" + journal,
+                "--file.metadata.write-behind.journal-dir=" + journal,
+                "--file.id.worker-id=1",
+                "--file.reconcile.cron=-",
+                "--logging.file.path=" + workDir.resolve("logs"),
+                "--logging.level.com.mini=WARN"));
+        // 放在后面，同名配置以调用方为准
+        args.addAll(overrides);
+        return args.toArray(new String[0]);
+    }
+
+    private static void print(ScenarioResult result) {
+        System.out.printf("throughput %.1f req/s, gc %d (%d ms), allocation %.1f MB/s%n",
+                result.throughput(), result.gcCount(), result.gcMillis(), result.allocationRate());
+        System.out.printf("%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        result.operations().forEach((name, stats) -> System.out.printf("%-10s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, stats.count(), stats.errors(), stats.throughput(),
+                stats.p50(), stats.p90(), stats.p99(), stats.p999(), stats.max()));
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        if (value.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+}
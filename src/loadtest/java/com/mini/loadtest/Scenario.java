@@ -0,0 +1,96 @@
+package com.mini.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 压测场景：请求类型的比例与上传文件大小的分布
+ *
+ * @param mix   各请求类型的权重
+ * @param sizes 上传文件大小（字节）与权重
+ */
+record Scenario(String name, List<Weighted<Operation>> mix, List<Weighted<Integer>> sizes) {
+
+    enum Operation {
+        UPLOAD, DOWNLOAD, LIST
+    }
+
+    record Weighted<T>(T value, int weight) {
+    }
+
+    static final String DEFAULT_SIZES = "4k:60,256k:30,4m:10";
+
+    /**
+     * 内置场景，或以 {@code mix} 参数自定义的 custom 场景
+     */
+    static Scenario named(String name, String mix, String sizes) {
+        String resolvedMix = switch (name) {
+            case "mixed" -> "upload:10,download:80,list:10";
+            case "read-heavy" -> "upload:2,download:93,list:5";
+            case "write-heavy" -> "upload:80,download:15,list:5";
+            case "list" -> "list:100";
+            case "custom" -> mix;
+            default -> throw new IllegalArgumentException("unknown scenario: " + name);
+        };
+        if (resolvedMix == null) {
+            throw new IllegalArgumentException("scenario custom requires mix=upload:n,download:n,list:n");
+        }
+        return new Scenario(name, parse(resolvedMix, value -> Operation.valueOf(value.toUpperCase(Locale.ROOT))),
+                parse(sizes, Scenario::parseSize));
+    }
+
+    Operation nextOperation() {
+        return pick(mix);
+    }
+
+    int nextSize() {
+        return pick(sizes);
+    }
+
+    int maxSize() {
+        return sizes.stream().mapToInt(Weighted::value).max().orElse(0);
+    }
+
+    private static <T> T pick(List<Weighted<T>> choices) {
+        int total = choices.stream().mapToInt(Weighted::weight).sum();
+        int point = ThreadLocalRandom.current().nextInt(total);
+        for (Weighted<T> choice : choices) {
+            point -= choice.weight();
+            if (point < 0) {
+                return choice.value();
+            }
+        }
+        throw new IllegalStateException("empty distribution");
+    }
+
+    private static <T> List<Weighted<T>> parse(String spec, java.util.function.Function<String, T> parser) {
+        List<Weighted<T>> result = new ArrayList<>();
+        for (String element : spec.split(",")) {
+            String[] pair = element.trim().split(":");
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            if (weight > 0) {
+                result.add(new Weighted<>(parser.apply(pair[0].trim()), weight));
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("empty distribution: " + spec);
+        }
+        return result;
+    }
+
+    static int parseSize(String size) {
+        String value = size.toLowerCase(Locale.ROOT);
+        int multiplier = 1;
+        if (value.endsWith("k")) {
+            multiplier = 1024;
+        } else if (value.endsWith("m")) {
+            multiplier = 1024 * 1024;
+        }
+        if (multiplier > 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return Integer.parseInt(value) * multiplier;
+    }
+}
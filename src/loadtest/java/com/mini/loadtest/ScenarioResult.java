@@ -0,0 +1,39 @@
+package com.mini.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+
+/**
+ * 单个场景的结果，以 JSON 输出便于跨提交对比
+ *
+ * @param throughput     全部请求的吞吐量（次/秒）
+ * @param gcCount        测量期间的GC次数
+ * @param gcMillis       测量期间的GC累计耗时
+ * @param allocationRate 测量期间的分配速率（MB/s），含压测客户端
+ */
+record ScenarioResult(String scenario, int threads, double seconds, double throughput,
+                      Map<String, OperationStats> operations,
+                      long gcCount, long gcMillis, double allocationRate) {
+
+    /**
+     * 单类请求的统计，延迟单位为毫秒
+     */
+    record OperationStats(long count, long errors, double throughput,
+                          double p50, double p90, double p99, double p999, double max, double mean) {
+
+        static OperationStats of(Histogram histogram, long errors, double seconds) {
+            return new OperationStats(histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()),
+                    histogram.getMean() / 1000);
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.mini;
 
+import org.apache.ibatis.annotations.Mapper;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -12,7 +13,7 @@ import org.springframework.scheduling.annotation.EnableAsync;
 @SpringBootApplication
 @EnableDiscoveryClient
 @EnableAsync
-@MapperScan("com.mini.mapper")
+@MapperScan(value = "com.mini.mapper", annotationClass = Mapper.class)
 public class FileServiceApplication {
 
     public static void main(String[] args) {
@@ -1,87 +1,117 @@
 package com.mini.aop;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
+import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletRequest;
 import java.lang.reflect.Method;
 import java.time.Duration;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
- * AOP aspect for logging controller method invocations
+ * AOP aspect for timing and logging controller method invocations
+ * <p>
+ * Every call is recorded in the {@code file.api.requests} timer (percentile histogram), tagged with the method,
+ * the outcome and the exception class, so the tag set stays bounded. Success timers are cached per method,
+ * the hot path only reads {@link System#nanoTime()} twice.
+ * <p>
+ * Per-call logging is opt-in: calls are logged when sampled ({@code file.api.log.sample-rate}), slower than
+ * {@code file.api.log.slow-threshold}, or when DEBUG is enabled for this class. Failures are always logged.
  */
 @Aspect
 @Component
 @Slf4j
 public class ControllerCommonAspect {
 
+    @Value("${file.api.log.sample-rate:0}")
+    private double logSampleRate;
+
+    @Value("${file.api.log.slow-threshold:1s}")
+    private Duration slowThreshold;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<Method, Timer> successTimers = new ConcurrentHashMap<>();
+
     // Pointcut for all controller methods
     @Pointcut("@annotation(com.mini.annotation.ControllerCommonAnnotation)")
     public void controllerPointcut() {
     }
 
-    // Around advice to log before and after method execution
+    // Around advice to time the method and log sampled, slow or failed calls
     @Around("controllerPointcut()")
     public Object logAroundControllerMethods(ProceedingJoinPoint joinPoint) throws Throwable {
-        // Get current request
-        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        HttpServletRequest request = attributes.getRequest();
-
-        // Get method information
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        Method method = signature.getMethod();
-        String className = joinPoint.getTarget().getClass().getName();
-        String methodName = method.getName();
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS"));
-
-        // Log method start
-        log.info("[API] Request started at {} | Method: {} | URL: {} | Class: {} | Method: {}",
-                timestamp,
-                request.getMethod(),
-                request.getRequestURL().toString(),
-                className,
-                methodName);
+        long startTime = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            long elapsed = System.nanoTime() - startTime;
+            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+            successTimers.computeIfAbsent(method, key -> timer(key, "SUCCESS", "none"))
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            if (shouldLog(elapsed)) {
+                log.info("[API] {} {} | Method: {} | Execution time: {} ms | Status: SUCCESS",
+                        requestMethod(), requestUrl(), methodName(method), TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+            return result;
+        } catch (Exception e) {
+            long elapsed = System.nanoTime() - startTime;
+            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+            timer(method, "ERROR", e.getClass().getSimpleName()).record(elapsed, TimeUnit.NANOSECONDS);
+            log.error("[API] {} {} | Method: {} | Execution time: {} ms | Status: FAILED | Error: {}",
+                    requestMethod(), requestUrl(), methodName(method), TimeUnit.NANOSECONDS.toMillis(elapsed), e.getMessage());
+            throw e; // Rethrow the exception
+        }
+    }
 
-        Instant startTime = Instant.now();
-        Object result;
+    private Timer timer(Method method, String outcome, String exception) {
+        // Timer.Builder#register returns the existing timer for the same tags
+        return Timer.builder("file.api.requests")
+                .description("latency of annotated service methods")
+                .tag("method", methodName(method))
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
-        try {
-            // Execute the method asynchronously
-            result = joinPoint.proceed();
-            Instant endTime = Instant.now();
-            long executionTime = Duration.between(startTime, endTime).toMillis();
+    private boolean shouldLog(long elapsedNanos) {
+        return elapsedNanos >= slowThreshold.toNanos()
+                || log.isDebugEnabled()
+                || (logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate);
+    }
 
-            // Log method end
-            log.info("[API] Request completed at {} | Class: {} | Method: {} | Execution time: {} ms | Status: SUCCESS",
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")),
-                    className,
-                    methodName,
-                    executionTime);
+    private static String methodName(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
 
-            return result;
-        } catch (Exception e) {
-            Instant endTime = Instant.now();
-            long executionTime = Duration.between(startTime, endTime).toMillis();
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servletAttributes ? servletAttributes.getRequest() : null;
+    }
 
-            // Log method failure
-            log.error("[API] Request failed at {} | Class: {} | Method: {} | Execution time: {} ms | Status: FAILED | Error: {}",
-                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")),
-                    className,
-                    methodName,
-                    executionTime,
-                    e.getMessage());
+    private static String requestMethod() {
+        HttpServletRequest request = currentRequest();
+        return request == null ? "-" : request.getMethod();
+    }
 
-            throw e; // Rethrow the exception
-        }
+    private static String requestUrl() {
+        HttpServletRequest request = currentRequest();
+        return request == null ? "-" : request.getRequestURI();
     }
-}
\ No newline at end of file
+}
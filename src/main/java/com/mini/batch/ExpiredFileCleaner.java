@@ -0,0 +1,238 @@
+package com.mini.batch;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.mini.entity.FileInfo;
+import com.mini.executor.TaskExecutors;
+import com.mini.mapper.FileInfoMapper;
+import com.mini.storage.FileStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 过期文件流式清理
+ * <p>
+ * 按 (uploadDate, id) 键集分批读取过期记录，内存中只保留一批：
+ * <ol>
+ *     <li>先以 batchDeleteByIds 将整批记录标记为删除，缓存与索引由拦截器统一失效</li>
+ *     <li>再在I/O线程池中并行删除物理文件，删除速率由 {@code file.cleanup.io-rate} 限制</li>
+ *     <li>每批完成后把最后一条的位置写入检查点文件，中断后下次运行从检查点继续，全部完成后删除检查点</li>
+ * </ol>
+ * 先标记后删除保证崩溃重跑时不会重复释放去重内容块的引用；标记后未删除成功的文件由对账扫描作为孤儿文件回收。
+ */
+@Slf4j
+@Component
+public class ExpiredFileCleaner {
+
+    @Value("${file.cleanup.retention:7d}")
+    private Duration retention;
+
+    @Value("${file.cleanup.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.cleanup.io-rate:500}")
+    private double ioRate;
+
+    @Value("${file.cleanup.checkpoint-file:/data/journal/cleanup.checkpoint}")
+    private String checkpointFile;
+
+    @Resource
+    private FileInfoMapper fileInfoMapper;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 本次运行开始时的过期记录数减去已处理数
+    private final AtomicLong backlog = new AtomicLong();
+
+    private Counter rowsCounter;
+
+    private Counter unlinkFailures;
+
+    private Timer batchTimer;
+
+    @PostConstruct
+    public void init() {
+        rowsCounter = Counter.builder("file.cleanup.rows")
+                .description("expired rows marked deleted")
+                .register(meterRegistry);
+        unlinkFailures = Counter.builder("file.cleanup.unlink.failures")
+                .description("expired files that could not be removed from disk")
+                .register(meterRegistry);
+        batchTimer = Timer.builder("file.cleanup.batch")
+                .description("time to process one batch of expired rows")
+                .register(meterRegistry);
+        Gauge.builder("file.cleanup.backlog", backlog, AtomicLong::get)
+                .description("expired rows left in the current run")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行一次清理，已有清理在进行时直接返回
+     *
+     * @return 本次标记删除的记录数
+     */
+    public long run() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("expired file cleanup is already running");
+            return 0;
+        }
+        try {
+            return clean();
+        } finally {
+            backlog.set(0);
+            running.set(false);
+        }
+    }
+
+    private long clean() {
+        Checkpoint checkpoint = loadCheckpoint();
+        LocalDateTime cutoff = checkpoint != null ? checkpoint.cutoff : LocalDateTime.now().minus(retention);
+        if (checkpoint != null) {
+            log.info("resume expired file cleanup after ({}, {}), cutoff = {}", checkpoint.uploadDate, checkpoint.id, cutoff);
+        }
+        backlog.set(fileInfoMapper.selectExpiredCount(cutoff));
+        RateLimiter limiter = RateLimiter.create(ioRate);
+        LocalDateTime afterDate = checkpoint != null ? checkpoint.uploadDate : null;
+        Long afterId = checkpoint != null ? checkpoint.id : null;
+        long total = 0;
+        while (true) {
+            List<FileInfo> batch = fileInfoMapper.selectExpiredAfter(cutoff, afterDate, afterId, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            long start = System.nanoTime();
+            List<Long> ids = new ArrayList<>(batch.size());
+            batch.forEach(fileInfo -> ids.add(fileInfo.getId()));
+            fileInfoMapper.batchDeleteByIds(ids);
+            unlink(batch, limiter);
+
+            FileInfo last = batch.get(batch.size() - 1);
+            afterDate = last.getUploadDate();
+            afterId = last.getId();
+            saveCheckpoint(new Checkpoint(cutoff, afterDate, afterId));
+            total += batch.size();
+            rowsCounter.increment(batch.size());
+            backlog.updateAndGet(value -> Math.max(0, value - batch.size()));
+            batchTimer.record(Duration.ofNanos(System.nanoTime() - start));
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+        deleteCheckpoint();
+        log.info("expired file cleanup finished, cutoff = {}, nDelete = {}", cutoff, total);
+        return total;
+    }
+
+    /**
+     * 并行删除一批文件，全部完成后返回
+     */
+    private void unlink(List<FileInfo> batch, RateLimiter limiter) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batch.size());
+        for (FileInfo fileInfo : batch) {
+            limiter.acquire();
+            futures.add(taskExecutors.io().submit(() -> {
+                try {
+                    fileStorage.deleteContent(fileInfo);
+                } catch (IOException | RuntimeException e) {
+                    unlinkFailures.increment();
+                    log.error("delete expired file error: {}", fileInfo.getFilePath(), e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private Checkpoint loadCheckpoint() {
+        Path path = Paths.get(checkpointFile);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Properties properties = new Properties();
+            properties.load(reader);
+            return new Checkpoint(LocalDateTime.parse(properties.getProperty("cutoff")),
+                    LocalDateTime.parse(properties.getProperty("uploadDate")),
+                    Long.parseLong(properties.getProperty("id")));
+        } catch (IOException | RuntimeException e) {
+            log.warn("ignore invalid cleanup checkpoint: {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免崩溃时留下不完整的检查点
+     */
+    private void saveCheckpoint(Checkpoint checkpoint) {
+        Path path = Paths.get(checkpointFile);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Properties properties = new Properties();
+        properties.setProperty("cutoff", checkpoint.cutoff.toString());
+        properties.setProperty("uploadDate", checkpoint.uploadDate.toString());
+        properties.setProperty("id", String.valueOf(checkpoint.id));
+        try {
+            Files.createDirectories(path.getParent());
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("save cleanup checkpoint error: {}", path, e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(Paths.get(checkpointFile));
+        } catch (IOException e) {
+            log.warn("delete cleanup checkpoint error: {}", checkpointFile, e);
+        }
+    }
+
+    private static final class Checkpoint {
+
+        // 本次运行的过期时间界限，续跑时沿用
+        private final LocalDateTime cutoff;
+
+        private final LocalDateTime uploadDate;
+
+        private final Long id;
+
+        Checkpoint(LocalDateTime cutoff, LocalDateTime uploadDate, Long id) {
+            this.cutoff = cutoff;
+            this.uploadDate = uploadDate;
+            this.id = id;
+        }
+    }
+}
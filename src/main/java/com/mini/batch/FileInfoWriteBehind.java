@@ -0,0 +1,546 @@
+package com.mini.batch;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+import com.mini.entity.FileInfo;
+import com.mini.mapper.FileInfoMapper;
+import com.mini.storage.AppendOnlyJournal;
+import com.mini.storage.FileStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 文件元数据写后合并（write-behind）提交
+ * <p>
+ * 各请求上传成功的 {@link FileInfo} 先追加到本地日志并 fsync（并发请求的 fsync 合并进行，不持有队列锁），随后进入内存队列立即返回；
+ * 单个刷写线程把所有请求的待写记录合并为一条多行 INSERT，待写数达到 max-batch-size 或最早一条等待超过
+ * flush-interval 时触发。写库失败时保留记录按退避间隔重试；若是记录本身违反约束（如字段超长），
+ * 则二分拆批定位出错的记录，单条仍失败的记录转入死信日志（fileInfoDead-*.log）并计数，不再重试，以免阻塞后续记录。
+ * 死信记录的内容先复制到日志目录下的 quarantine 目录（不在存储卷内，对账不会当作孤儿删除），死信日志中的路径指向该副本，
+ * 随后释放原记录占用的内容块引用、段内空间或独立文件。
+ * <p>
+ * 日志按段滚动，段内记录全部入库后删除该段；启动时回放残留段，已入库的记录按主键去重，
+ * 因此进程崩溃不会丢失已返回成功的上传。刷写完成前可通过 {@link #findPending(String)} 查到待写记录。
+ */
+@Slf4j
+@Component
+public class FileInfoWriteBehind {
+
+    private static final TypeReference<List<FileInfo>> ROWS_TYPE = new TypeReference<>() {
+    };
+
+    @Value("${file.metadata.write-behind.journal-dir:/data/journal}")
+    private String journalDir;
+
+    @Value("${file.metadata.write-behind.segment-size:16777216}")
+    private long segmentSize;
+
+    @Value("${file.metadata.write-behind.max-batch-size:500}")
+    private int maxBatchSize;
+
+    @Value("${file.metadata.write-behind.flush-interval:50ms}")
+    private Duration flushInterval;
+
+    @Value("${file.metadata.write-behind.retry-backoff:1s}")
+    private Duration retryBackoff;
+
+    @Resource
+    private FileInfoMapper fileInfoMapper;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private AppendOnlyJournal journal;
+
+    // 无法入库的记录，仅供人工排查与补录，启动时不回放
+    private AppendOnlyJournal deadLetter;
+
+    // 死信记录的内容副本，按记录ID命名
+    private Path quarantineDir;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    // 重试退避只在关闭时提前唤醒，不受新记录影响
+    private final Condition closed = lock.newCondition();
+
+    // 以下字段受lock保护
+    private final ArrayDeque<PendingRow> queue = new ArrayDeque<>();
+
+    // 段号 -> 该段中尚未入库的记录数
+    private final Map<Long, Integer> unflushedBySegment = new HashMap<>();
+
+    // 追加开始时的活动段 -> 正在追加、尚未入队的请求数，不低于其中最小段号的段不能释放
+    private final TreeMap<Long, Integer> appending = new TreeMap<>();
+
+    private boolean running = true;
+
+    // 待写记录按文件名索引，供下载在入库前查询
+    private final Map<String, FileInfo> pendingByName = new ConcurrentHashMap<>();
+
+    private Thread flusher;
+
+    private DistributionSummary batchSize;
+
+    private Timer flushTimer;
+
+    private Counter deadLetterCounter;
+
+    @PostConstruct
+    public void init() throws IOException {
+        journal = new AppendOnlyJournal(Paths.get(journalDir), "fileInfo", segmentSize);
+        deadLetter = new AppendOnlyJournal(Paths.get(journalDir), "fileInfoDead", segmentSize);
+        quarantineDir = Files.createDirectories(Paths.get(journalDir).resolve("quarantine"));
+        // 转入死信后、所在段释放前崩溃的记录不再回放，其原存储已经释放或将由对账回收
+        Set<Long> deadIds = new HashSet<>();
+        for (AppendOnlyJournal.Entry entry : deadLetter.replay()) {
+            objectMapper.readValue(entry.getPayload(), ROWS_TYPE).forEach(row -> deadIds.add(row.getId()));
+        }
+        int replayed = 0;
+        for (AppendOnlyJournal.Entry entry : journal.replay()) {
+            List<FileInfo> rows = objectMapper.readValue(entry.getPayload(), ROWS_TYPE);
+            rows.removeIf(row -> deadIds.contains(row.getId()));
+            // 记录全部转入死信的段也要登记，随下一次刷写释放
+            enqueue(rows, entry.getSegment());
+            replayed += rows.size();
+        }
+        if (replayed > 0) {
+            log.info("replayed {} pending file info rows from journal {}", replayed, journalDir);
+        }
+
+        batchSize = DistributionSummary.builder("file.metadata.batch.size")
+                .description("rows per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        flushTimer = Timer.builder("file.metadata.flush")
+                .description("group commit latency")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("file.metadata.journal.backlog", this, FileInfoWriteBehind::backlog)
+                .description("rows accepted but not yet inserted")
+                .register(meterRegistry);
+        Gauge.builder("file.metadata.journal.bytes", this, writeBehind -> writeBehind.journal.sizeInBytes())
+                .description("journal size on disk")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        deadLetterCounter = Counter.builder("file.metadata.dead.letter")
+                .description("rows moved to the dead-letter journal after failing on their own")
+                .register(meterRegistry);
+
+        flusher = new Thread(this::flushLoop, "fileInfo-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 接收一批待写记录，写入本地日志后返回，入库异步完成
+     */
+    public void accept(List<FileInfo> fileInfos) {
+        if (fileInfos.isEmpty()) {
+            return;
+        }
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(fileInfos);
+        } catch (IOException e) {
+            throw new RuntimeException("file info serialize error: " + e.getMessage());
+        }
+        long pinned;
+        lock.lock();
+        try {
+            if (!running) {
+                throw new RuntimeException("file info writer is closed");
+            }
+            // 记录只会写入不早于该段的段，入队前这些段不会被刷写线程释放
+            pinned = journal.getActiveSegment();
+            appending.merge(pinned, 1, Integer::sum);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            // 追加与 fsync 不持有 lock，并发请求的 fsync 由日志按水位合并
+            AppendOnlyJournal.Position position = journal.write(payload);
+            journal.sync(position);
+            enqueue(fileInfos, position.getSegment());
+        } catch (IOException e) {
+            log.error("file info journal append error", e);
+            throw new RuntimeException("file info journal append error: " + e.getMessage());
+        } finally {
+            lock.lock();
+            try {
+                appending.merge(pinned, -1, (count, delta) -> count + delta == 0 ? null : count + delta);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 查询尚未入库的记录
+     */
+    public FileInfo findPending(String fileName) {
+        return pendingByName.get(fileName);
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            changed.signalAll();
+            closed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+            deadLetter.close();
+        } catch (IOException e) {
+            log.warn("file info journal close error", e);
+        }
+    }
+
+    private void enqueue(List<FileInfo> rows, long segment) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            for (FileInfo row : rows) {
+                queue.add(new PendingRow(row, segment, now));
+                pendingByName.put(row.getFileName(), row);
+            }
+            unflushedBySegment.merge(segment, rows.size(), Integer::sum);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<PendingRow> batch = nextBatch();
+            if (batch == null) {
+                return;
+            }
+            while (!flush(batch)) {
+                if (!awaitRetry()) {
+                    log.warn("file info writer stopped with {} rows unflushed, they will be replayed on restart",
+                            backlog());
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待直到待写数达到批量上限、最早一条超时或关闭
+     *
+     * @return 待刷写的批次；关闭且队列为空时返回null
+     */
+    private List<PendingRow> nextBatch() {
+        lock.lock();
+        try {
+            while (queue.size() < maxBatchSize) {
+                if (queue.isEmpty()) {
+                    if (!running) {
+                        return null;
+                    }
+                    changed.awaitUninterruptibly();
+                    continue;
+                }
+                long waited = System.nanoTime() - queue.peek().enqueueTime;
+                long remaining = flushInterval.toNanos() - waited;
+                if (remaining <= 0 || !running) {
+                    break;
+                }
+                changed.awaitNanos(remaining);
+            }
+            List<PendingRow> batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+            while (batch.size() < maxBatchSize && !queue.isEmpty()) {
+                batch.add(queue.poll());
+            }
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 以一条多行 INSERT 写入一批记录
+     *
+     * @return false 表示写库失败，需要重试
+     */
+    private boolean flush(List<PendingRow> batch) {
+        // 重试时跳过上一轮已入库或已转入死信的子批
+        batch.removeIf(pending -> pending.done);
+        long start = System.nanoTime();
+        try {
+            insert(batch);
+        } catch (RuntimeException e) {
+            log.error("file info group commit error, {} rows will be retried",
+                    batch.stream().filter(pending -> !pending.done).count(), e);
+            return false;
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(batch.size());
+        return true;
+    }
+
+    /**
+     * 写入记录并释放日志计数；违反约束时二分拆批，单条仍失败则转入死信
+     *
+     * @throws RuntimeException 与具体记录无关的写库失败（连接、超时等），由调用方整批重试
+     */
+    private void insert(List<PendingRow> batch) {
+        List<FileInfo> rows = new ArrayList<>(batch.size());
+        batch.forEach(pending -> rows.add(pending.fileInfo));
+        try {
+            try {
+                fileInfoMapper.batchInsert(rows);
+            } catch (DuplicateKeyException e) {
+                // 回放的记录可能在崩溃前已经入库
+                List<FileInfo> remaining = excludeExisting(rows);
+                if (!remaining.isEmpty()) {
+                    fileInfoMapper.batchInsert(remaining);
+                }
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                deadLetter(batch.get(0), e);
+                return;
+            }
+            int half = batch.size() / 2;
+            insert(batch.subList(0, half));
+            insert(batch.subList(half, batch.size()));
+            return;
+        }
+        onFlushed(batch);
+    }
+
+    /**
+     * 把无法入库的记录的内容隔离、写入死信日志后释放原存储，并从待写日志中释放
+     * <p>
+     * 隔离在记录仍处于待写状态时进行，段整理不会在复制期间搬走内容；释放失败只遗留存储，由对账回收
+     */
+    private void deadLetter(PendingRow pending, DataIntegrityViolationException cause) {
+        FileInfo row = pending.fileInfo;
+        try {
+            deadLetter.append(objectMapper.writeValueAsBytes(List.of(quarantine(row))));
+        } catch (IOException e) {
+            throw new RuntimeException("file info dead letter append error: " + e.getMessage());
+        }
+        deadLetterCounter.increment();
+        log.error("file info row {} ({}) rejected by database, moved to dead letter: {}",
+                row.getId(), row.getFileName(), cause.getMostSpecificCause().getMessage());
+        try {
+            fileStorage.deleteContent(row);
+        } catch (IOException | RuntimeException e) {
+            log.warn("release content of dead letter row {} error: {}", row.getId(), row.getFilePath(), e);
+        }
+        onFlushed(List.of(pending));
+    }
+
+    /**
+     * 把记录的存储内容（压缩存储时为压缩后的字节）复制到隔离目录
+     *
+     * @return 指向隔离副本的记录；内容已不存在时返回原记录
+     */
+    private FileInfo quarantine(FileInfo row) throws IOException {
+        Path source = Paths.get(row.getFilePath());
+        // 文件名可能正是超长被拒的字段，副本只按ID命名
+        Path target = quarantineDir.resolve(String.valueOf(row.getId()));
+        if (Files.notExists(target)) {
+            if (Files.notExists(source)) {
+                log.warn("content of dead letter row {} not found: {}", row.getId(), source);
+                return row;
+            }
+            Path temp = quarantineDir.resolve(row.getId() + ".tmp");
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = row.getSegmentOffset() != null ? row.getSegmentOffset() : 0;
+                long remaining = row.getSegmentLength() != null ? row.getSegmentLength() : in.size();
+                while (remaining > 0) {
+                    long transferred = in.transferTo(position, remaining, out);
+                    if (transferred <= 0) {
+                        throw new EOFException("content of " + source + " truncated at " + position);
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+                out.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            fileStorage.syncDirectory(quarantineDir);
+        }
+        FileInfo quarantined = new FileInfo();
+        quarantined.setId(row.getId());
+        quarantined.setFileName(row.getFileName());
+        quarantined.setFilePath(target.toString());
+        quarantined.setFileSize(row.getFileSize());
+        quarantined.setStatus(row.getStatus());
+        quarantined.setUploadDate(row.getUploadDate());
+        quarantined.setContentEncoding(row.getContentEncoding());
+        quarantined.setEtag(row.getEtag());
+        log.info("content of dead letter row {} quarantined from {} to {}", row.getId(), source, target);
+        return quarantined;
+    }
+
+    /**
+     * 去掉已经入库的回放记录；ID相同但文件名不同的记录是ID冲突而不是回放，保留下来由插入失败转入死信
+     */
+    private List<FileInfo> excludeExisting(List<FileInfo> rows) {
+        Map<Long, String> existing = new HashMap<>();
+        for (List<FileInfo> subList : Lists.partition(rows, 500)) {
+            List<Long> ids = new ArrayList<>(subList.size());
+            subList.forEach(row -> ids.add(row.getId()));
+            fileInfoMapper.selectByIds(ids).forEach(row -> existing.put(row.getId(), row.getFileName()));
+        }
+        List<FileInfo> remaining = new ArrayList<>(rows.size());
+        int skipped = 0;
+        for (FileInfo row : rows) {
+            String storedName = existing.get(row.getId());
+            if (storedName == null) {
+                remaining.add(row);
+            } else if (storedName.equals(row.getFileName())) {
+                skipped++;
+            } else {
+                log.error("file info id {} already used by {}, conflicting row {}", row.getId(), storedName, row.getFileName());
+                remaining.add(row);
+            }
+        }
+        log.info("skip {} file info rows already inserted", skipped);
+        return remaining;
+    }
+
+    /**
+     * 更新各段的未入库计数，删除已全部入库、且没有正在追加的请求可能写入的非活动段
+     */
+    private void onFlushed(List<PendingRow> batch) {
+        for (PendingRow pending : batch) {
+            pending.done = true;
+            pendingByName.remove(pending.fileInfo.getFileName(), pending.fileInfo);
+        }
+        lock.lock();
+        try {
+            for (PendingRow pending : batch) {
+                unflushedBySegment.merge(pending.segment, -1, Integer::sum);
+            }
+            long floor = journal.getActiveSegment();
+            if (!appending.isEmpty()) {
+                floor = Math.min(floor, appending.firstKey());
+            }
+            Iterator<Map.Entry<Long, Integer>> iterator = unflushedBySegment.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Integer> entry = iterator.next();
+                if (entry.getValue() <= 0 && entry.getKey() < floor) {
+                    journal.release(entry.getKey());
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 失败后退避等待，关闭时不再重试
+     *
+     * @return false 表示已关闭
+     */
+    private boolean awaitRetry() {
+        lock.lock();
+        try {
+            if (running) {
+                closed.awaitNanos(retryBackoff.toNanos());
+            }
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long backlog() {
+        lock.lock();
+        try {
+            long rows = 0;
+            for (Integer count : unflushedBySegment.values()) {
+                rows += count;
+            }
+            return rows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class PendingRow {
+
+        private final FileInfo fileInfo;
+
+        // 所在日志段
+        private final long segment;
+
+        private final long enqueueTime;
+
+        // 已入库或已转入死信，仅刷写线程访问
+        private boolean done;
+
+        PendingRow(FileInfo fileInfo, long segment, long enqueueTime) {
+            this.fileInfo = fileInfo;
+            this.segment = segment;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.mini.batch;
+
+import com.mini.storage.AppendOnlyJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 持久化、去重的失效文件ID队列
+ * <p>
+ * 下载或对账发现物理文件缺失时将记录ID入队，由定时任务分批核实后删除记录。
+ * <ul>
+ *     <li>入队的ID先追加到本地日志再进入内存，重启后从日志恢复尚未确认的ID</li>
+ *     <li>同一ID在确认前重复入队会被忽略</li>
+ *     <li>{@link #peek(int)} 不移除元素，处理成功后调用 {@link #ack(Collection)} 确认；处理失败的ID留在队列中下次重试</li>
+ * </ul>
+ * 日志段中的ID全部确认后删除该段。重启时尚未删除的段中的ID（包括其中已确认的）会再次入队，消费方需保证幂等。
+ */
+@Slf4j
+@Component
+public class InvalidFileQueue {
+
+    @Value("${file.invalid-queue.journal-dir:/data/journal}")
+    private String journalDir;
+
+    @Value("${file.invalid-queue.segment-size:1048576}")
+    private long segmentSize;
+
+    @Value("${file.invalid-queue.max-size:1000000}")
+    private int maxSize;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private AppendOnlyJournal journal;
+
+    // ID -> 所在日志段，按入队顺序；以下字段受this保护
+    private final LinkedHashMap<Long, Long> pending = new LinkedHashMap<>();
+
+    // 段号 -> 该段中尚未确认的ID数
+    private final Map<Long, Integer> unackedBySegment = new HashMap<>();
+
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() throws IOException {
+        journal = new AppendOnlyJournal(Paths.get(journalDir), "invalidFile", segmentSize);
+        for (AppendOnlyJournal.Entry entry : journal.replay()) {
+            // 只含重复ID的段也要登记，才能在确认后删除
+            unackedBySegment.putIfAbsent(entry.getSegment(), 0);
+            add(ByteBuffer.wrap(entry.getPayload()).getLong(), entry.getSegment());
+        }
+        if (!pending.isEmpty()) {
+            log.info("recovered {} invalid file ids from journal", pending.size());
+        }
+        releaseSegments();
+        Gauge.builder("file.invalid.queue.size", this, InvalidFileQueue::size)
+                .description("invalid file ids waiting to be verified")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("file.invalid.queue.dropped")
+                .description("ids dropped because the queue was full")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+    }
+
+    /**
+     * 入队，已在队列中的ID直接返回
+     *
+     * @return false 表示队列已满或写日志失败
+     */
+    public synchronized boolean offer(Long id) {
+        if (id == null || pending.containsKey(id)) {
+            return true;
+        }
+        if (pending.size() >= maxSize) {
+            droppedCounter.increment();
+            log.warn("invalid file queue is full, drop id {}", id);
+            return false;
+        }
+        try {
+            long segment = journal.append(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+            add(id, segment);
+            return true;
+        } catch (IOException e) {
+            log.error("invalid file queue append error: {}", id, e);
+            return false;
+        }
+    }
+
+    /**
+     * 按入队顺序取出至多 max 个ID，不移除
+     */
+    public synchronized List<Long> peek(int max) {
+        List<Long> ids = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<Long> iterator = pending.keySet().iterator();
+        while (ids.size() < max && iterator.hasNext()) {
+            ids.add(iterator.next());
+        }
+        return ids;
+    }
+
+    /**
+     * 确认已处理的ID，并删除已全部确认的日志段
+     */
+    public synchronized void ack(Collection<Long> ids) {
+        for (Long id : ids) {
+            Long segment = pending.remove(id);
+            if (segment != null) {
+                unackedBySegment.merge(segment, -1, Integer::sum);
+            }
+        }
+        if (pending.isEmpty()) {
+            // 活动段中的ID也已全部确认，切换新段以便删除
+            try {
+                journal.roll();
+            } catch (IOException e) {
+                log.warn("invalid file queue roll journal error", e);
+            }
+        }
+        releaseSegments();
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    private void add(long id, long segment) {
+        if (pending.putIfAbsent(id, segment) == null) {
+            unackedBySegment.merge(segment, 1, Integer::sum);
+        }
+    }
+
+    private void releaseSegments() {
+        long active = journal.getActiveSegment();
+        Iterator<Map.Entry<Long, Integer>> iterator = unackedBySegment.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Integer> entry = iterator.next();
+            if (entry.getValue() <= 0 && entry.getKey() != active) {
+                journal.release(entry.getKey());
+                iterator.remove();
+            }
+        }
+    }
+}
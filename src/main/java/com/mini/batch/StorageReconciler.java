@@ -0,0 +1,506 @@
+package com.mini.batch;
+
+import com.mini.dto.ReconcileStatus;
+import com.mini.entity.FileInfo;
+import com.mini.executor.TaskExecutors;
+import com.mini.mapper.FileInfoMapper;
+import com.mini.storage.BlobStore;
+import com.mini.storage.FileStorage;
+import com.mini.storage.SegmentStore;
+import com.mini.storage.StorageMigrator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 存储目录与文件记录对账
+ * <p>
+ * 每个存储卷按顶层目录切分为若干扫描单元，在I/O线程池中并行执行。每个单元把磁盘上的文件与
+ * fileInfo 中同一路径区间内的有效记录按相同顺序流式归并：
+ * <ul>
+ *     <li>磁盘侧深度优先遍历，目录条目排序后展开，目录名追加分隔符后参与比较，输出顺序与完整路径的码点顺序一致</li>
+ *     <li>数据库侧按 (filePath, id) 键集分批读取，filePath 为二进制排序规则，顺序与磁盘侧相同</li>
+ * </ul>
+ * 两侧都不整体加载到内存：数据库侧只保留一批，磁盘侧只保留当前路径上各级目录的列表。
+ * <p>
+ * 只在磁盘上存在、且修改时间早于 {@code file.reconcile.orphan-grace} 的文件记为孤儿文件，开启
+ * {@code file.reconcile.delete-orphans} 后再次确认没有记录引用时删除；只在数据库中存在的记录再次确认文件缺失后
+ * 提交到 {@link InvalidFileQueue}，由失效文件任务删除记录。以 "." 开头的临时文件、会话目录、小文件段目录以及去重内容块目录不参与对账。
+ */
+@Slf4j
+@Component
+public class StorageReconciler {
+
+    @Value("${file.reconcile.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${file.reconcile.parallelism:4}")
+    private int parallelism;
+
+    @Value("${file.reconcile.orphan-grace:1h}")
+    private Duration orphanGrace;
+
+    @Value("${file.reconcile.delete-orphans:false}")
+    private boolean deleteOrphans;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private BlobStore blobStore;
+
+    @Resource
+    private StorageMigrator storageMigrator;
+
+    @Resource
+    private FileInfoWriteBehind fileInfoWriteBehind;
+
+    @Resource
+    private FileInfoMapper fileInfoMapper;
+
+    @Resource
+    private InvalidFileQueue invalidFileQueue;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Path blobRoot;
+
+    private String blobPrefix;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 受this保护
+    private final ReconcileStatus status = new ReconcileStatus();
+
+    // 上一次完成的对账结果
+    private final AtomicLong lastOrphans = new AtomicLong();
+
+    private final AtomicLong lastMissing = new AtomicLong();
+
+    private Timer durationTimer;
+
+    @PostConstruct
+    public void init() {
+        blobRoot = blobStore.getRoot().toAbsolutePath().normalize();
+        blobPrefix = blobRoot.toString() + blobRoot.getFileSystem().getSeparator();
+        Gauge.builder("file.reconcile.orphans", lastOrphans, AtomicLong::get)
+                .description("orphan files found by the last reconciliation")
+                .register(meterRegistry);
+        Gauge.builder("file.reconcile.missing", lastMissing, AtomicLong::get)
+                .description("rows with missing files found by the last reconciliation")
+                .register(meterRegistry);
+        durationTimer = Timer.builder("file.reconcile.duration")
+                .description("time to reconcile all storage volumes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在I/O线程池中启动对账
+     *
+     * @return false 表示已有对账或存储迁移在进行
+     */
+    public boolean start() {
+        if (!begin()) {
+            return false;
+        }
+        try {
+            taskExecutors.io().execute(() -> {
+                try {
+                    reconcile();
+                } finally {
+                    finish();
+                }
+            });
+        } catch (RuntimeException e) {
+            finish();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * 在当前线程执行一次对账
+     *
+     * @return false 表示已有对账或存储迁移在进行
+     */
+    public boolean run() {
+        if (!begin()) {
+            log.info("storage reconciliation skipped, reconciliation or migration is running");
+            return false;
+        }
+        try {
+            reconcile();
+        } finally {
+            finish();
+        }
+        return true;
+    }
+
+    public synchronized ReconcileStatus getStatus() {
+        ReconcileStatus copy = new ReconcileStatus();
+        BeanUtils.copyProperties(status, copy);
+        return copy;
+    }
+
+    private boolean begin() {
+        // 迁移期间同一文件的新旧路径同时存在，对账结果不可信
+        if (storageMigrator.getStatus().isRunning() || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (this) {
+            BeanUtils.copyProperties(new ReconcileStatus(), status);
+            status.setRunning(true);
+            status.setStartTime(LocalDateTime.now());
+        }
+        return true;
+    }
+
+    private void finish() {
+        synchronized (this) {
+            status.setRunning(false);
+            status.setFinishTime(LocalDateTime.now());
+        }
+        running.set(false);
+    }
+
+    private void reconcile() {
+        long start = System.nanoTime();
+        Queue<Unit> units = new ConcurrentLinkedQueue<>();
+        for (Path volume : fileStorage.getVolumes()) {
+            try {
+                units.addAll(split(volume));
+            } catch (IOException e) {
+                log.error("list storage volume error: {}", volume, e);
+                merge(new Counts(1));
+            }
+        }
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, parallelism); i++) {
+            workers.add(taskExecutors.io().submit(() -> {
+                Unit unit;
+                while ((unit = units.poll()) != null) {
+                    scan(unit);
+                }
+            }));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).join();
+        durationTimer.record(Duration.ofNanos(System.nanoTime() - start));
+
+        ReconcileStatus result = getStatus();
+        lastOrphans.set(result.getOrphanFiles());
+        lastMissing.set(result.getMissingFiles());
+        log.info("storage reconciliation finished: {}", result);
+    }
+
+    /**
+     * 按顶层目录切分扫描单元
+     * <p>
+     * 每个顶层目录对应路径区间 [目录/, 目录0)（'0' 是分隔符的下一个字符）。相邻目录之间的区间也各为一个单元，
+     * 包含平铺在卷根目录下的历史文件，以及父目录已不存在的记录。
+     */
+    private List<Unit> split(Path volume) throws IOException {
+        String separator = volume.getFileSystem().getSeparator();
+        String after = String.valueOf((char) (separator.charAt(0) + 1));
+        List<Unit> units = new ArrayList<>();
+        String lower = volume + separator;
+        List<Entry> files = new ArrayList<>();
+        for (Entry entry : list(volume)) {
+            if (!entry.directory) {
+                files.add(entry);
+                continue;
+            }
+            String dir = entry.path.toString();
+            units.add(new Unit(lower, dir + separator, files));
+            units.add(new Unit(dir + separator, dir + after, Collections.singletonList(entry)));
+            lower = dir + after;
+            files = new ArrayList<>();
+        }
+        units.add(new Unit(lower, volume + after, files));
+        return units;
+    }
+
+    private void scan(Unit unit) {
+        Counts counts = new Counts(0);
+        try {
+            DiskWalker disk = new DiskWalker(unit.entries);
+            RowCursor rows = new RowCursor(unit.lower, unit.upper);
+            Path file = disk.next();
+            FileInfo row = rows.next();
+            while (file != null || row != null) {
+                int cmp = file == null ? 1 : row == null ? -1 : compare(file.toString(), row.getFilePath());
+                if (cmp <= 0) {
+                    counts.files++;
+                    if (cmp < 0) {
+                        orphan(file, counts);
+                    }
+                    file = disk.next();
+                }
+                if (cmp >= 0) {
+                    counts.rows++;
+                    if (cmp > 0) {
+                        missing(row, counts);
+                    }
+                    row = rows.next();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("reconcile storage error: [{}, {})", unit.lower, unit.upper, e);
+            counts.failedUnits++;
+        }
+        merge(counts);
+    }
+
+    private void orphan(Path file, Counts counts) throws IOException {
+        Instant modified;
+        try {
+            modified = Files.getLastModifiedTime(file).toInstant();
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (modified.isAfter(Instant.now().minus(orphanGrace))) {
+            // 刚写入的文件，记录可能仍在写回缓冲中
+            return;
+        }
+        counts.orphans++;
+        if (!deleteOrphans) {
+            log.debug("orphan file: {}", file);
+            return;
+        }
+        if (fileInfoMapper.selectCountByFilePath(file.toString()) > 0
+                || fileInfoWriteBehind.findPending(file.getFileName().toString()) != null) {
+            return;
+        }
+        if (Files.deleteIfExists(file)) {
+            counts.deletedOrphans++;
+            log.info("delete orphan file: {}", file);
+        }
+    }
+
+    private void missing(FileInfo row, Counts counts) {
+        // 遍历目录之后写入的文件
+        if (Files.exists(Paths.get(row.getFilePath()))) {
+            return;
+        }
+        counts.missing++;
+        invalidFileQueue.offer(row.getId());
+    }
+
+    private synchronized void merge(Counts counts) {
+        status.setScannedFiles(status.getScannedFiles() + counts.files);
+        status.setScannedRows(status.getScannedRows() + counts.rows);
+        status.setOrphanFiles(status.getOrphanFiles() + counts.orphans);
+        status.setDeletedOrphans(status.getDeletedOrphans() + counts.deletedOrphans);
+        status.setMissingFiles(status.getMissingFiles() + counts.missing);
+        status.setFailedUnits(status.getFailedUnits() + counts.failedUnits);
+    }
+
+    /**
+     * 列出目录下的普通文件与子目录，按排序键升序
+     */
+    private List<Entry> list(Path dir) throws IOException {
+        String separator = dir.getFileSystem().getSeparator();
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (attributes.isDirectory() && !path.equals(blobRoot)) {
+                    entries.add(new Entry(name + separator, path, true));
+                } else if (attributes.isRegularFile()) {
+                    entries.add(new Entry(name, path, false));
+                }
+            }
+        }
+        entries.sort((a, b) -> compare(a.key, b.key));
+        return entries;
+    }
+
+    /**
+     * 按码点比较，与 utf8mb4_0900_bin 的顺序一致（String.compareTo 按UTF-16代码单元比较，增补字符的顺序不同）
+     */
+    static int compare(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * 深度优先按完整路径顺序输出普通文件
+     */
+    private final class DiskWalker {
+
+        private final Deque<Iterator<Entry>> stack = new ArrayDeque<>();
+
+        DiskWalker(List<Entry> entries) {
+            stack.push(entries.iterator());
+        }
+
+        Path next() throws IOException {
+            while (!stack.isEmpty()) {
+                Iterator<Entry> iterator = stack.peek();
+                if (!iterator.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Entry entry = iterator.next();
+                if (!entry.directory) {
+                    return entry.path;
+                }
+                try {
+                    stack.push(list(entry.path).iterator());
+                } catch (NoSuchFileException e) {
+                    // 遍历期间被删除的目录
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 按 (filePath, id) 键集分批读取路径区间内的有效记录，跳过去重内容块
+     */
+    private final class RowCursor {
+
+        private final String lower;
+
+        private final String upper;
+
+        private String afterPath;
+
+        private Long afterId;
+
+        private Iterator<FileInfo> batch = Collections.emptyIterator();
+
+        private boolean exhausted;
+
+        RowCursor(String lower, String upper) {
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        FileInfo next() {
+            while (true) {
+                while (batch.hasNext()) {
+                    FileInfo row = batch.next();
+                    if (!row.getFilePath().startsWith(blobPrefix) && !SegmentStore.isSegmentFile(row.getFilePath())) {
+                        return row;
+                    }
+                }
+                if (exhausted) {
+                    return null;
+                }
+                List<FileInfo> rows = fileInfoMapper.selectFilePathRange(lower, upper, afterPath, afterId, batchSize);
+                exhausted = rows.size() < batchSize;
+                if (!rows.isEmpty()) {
+                    FileInfo last = rows.get(rows.size() - 1);
+                    afterPath = last.getFilePath();
+                    afterId = last.getId();
+                }
+                batch = rows.iterator();
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        // 排序键，目录追加分隔符
+        private final String key;
+
+        private final Path path;
+
+        private final boolean directory;
+
+        Entry(String key, Path path, boolean directory) {
+            this.key = key;
+            this.path = path;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * 扫描单元：磁盘侧的起始条目与数据库侧的路径区间 [lower, upper)
+     */
+    private static final class Unit {
+
+        private final String lower;
+
+        private final String upper;
+
+        private final List<Entry> entries;
+
+        Unit(String lower, String upper, List<Entry> entries) {
+            this.lower = lower;
+            this.upper = upper;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Counts {
+
+        private long files;
+
+        private long rows;
+
+        private long orphans;
+
+        private long deletedOrphans;
+
+        private long missing;
+
+        private long failedUnits;
+
+        Counts(long failedUnits) {
+            this.failedUnits = failedUnits;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.mini.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mini.dto.DownloadFile;
+import com.mini.entity.FileInfo;
+import com.mini.mapper.FileInfoChangeListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 热点小文件内容的堆外缓存
+ * <p>
+ * 文件内容保存在直接内存 ByteBuffer 中，命中时直接写入响应，不再打开文件读取，也不经过堆内数组。
+ * <ul>
+ *     <li>容量按字节计算（max-bytes），超过 max-file-size 的文件不缓存</li>
+ *     <li>准入：文件在 admission-window 内被下载 admit-after 次后才加载，一次性访问不占用容量；
+ *     缓存已满时由 Caffeine 的 W-TinyLFU 按访问频率决定新内容能否替换已有内容</li>
+ *     <li>按记录ID缓存，记录更新、删除（包括过期清理）时由 {@link com.mini.mapper.FileInfoChangeInterceptor} 回调失效；
+ *     命中时再核对路径、位置、长度与修改时间</li>
+ * </ul>
+ * 淘汰的缓冲区在不再被引用后由GC回收，正在输出的响应不受影响；-XX:MaxDirectMemorySize 需在 max-bytes 之外留出余量。
+ */
+@Slf4j
+@Component
+public class FileContentCache implements FileInfoChangeListener {
+
+    @Value("${file.download.cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.download.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${file.download.cache.max-file-size:1048576}")
+    private long maxFileSize;
+
+    @Value("${file.download.cache.admit-after:2}")
+    private int admitAfter;
+
+    @Value("${file.download.cache.admission-window:10m}")
+    private Duration admissionWindow;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<Long, CachedContent> contents;
+
+    // 尚未准入的文件在窗口内的下载次数
+    private Cache<Long, AtomicInteger> candidates;
+
+    private Counter hitCounter;
+
+    private Counter missCounter;
+
+    private Counter servedBytesCounter;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        contents = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long id, CachedContent content) -> content.buffer.capacity())
+                .recordStats()
+                .build();
+        candidates = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(admissionWindow)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, contents, "fileContent");
+        hitCounter = Counter.builder("file.content.cache.requests").tag("result", "hit")
+                .description("cacheable downloads served from the content cache")
+                .register(meterRegistry);
+        missCounter = Counter.builder("file.content.cache.requests").tag("result", "miss")
+                .description("cacheable downloads read from disk")
+                .register(meterRegistry);
+        servedBytesCounter = Counter.builder("file.content.cache.bytes.served")
+                .description("response bytes written from the content cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.content.cache.hit.ratio", this, FileContentCache::hitRatio)
+                .description("share of cacheable downloads served from the content cache")
+                .register(meterRegistry);
+        Gauge.builder("file.content.cache.bytes", contents,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("off-heap bytes held by the content cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查询文件内容，未命中且达到准入条件时从磁盘加载
+     *
+     * @return 只读缓冲区，每次调用返回独立的读取位置；不可缓存或未准入时返回null
+     */
+    public ByteBuffer get(DownloadFile file) {
+        if (!enabled || file.getId() == null || file.getLength() > maxFileSize) {
+            return null;
+        }
+        Long id = file.getId();
+        CachedContent content = contents.getIfPresent(id);
+        if (content != null && content.matches(file)) {
+            hitCounter.increment();
+            return content.buffer.duplicate();
+        }
+        missCounter.increment();
+        if (content != null) {
+            // 文件已被替换或迁移
+            contents.invalidate(id);
+        }
+        if (candidates.get(id, key -> new AtomicInteger()).incrementAndGet() < admitAfter) {
+            return null;
+        }
+        candidates.invalidate(id);
+        ByteBuffer buffer;
+        try {
+            buffer = load(file);
+        } catch (IOException e) {
+            log.debug("load file content error: {}, {}", file.getPath(), e.getMessage());
+            return null;
+        }
+        contents.put(id, new CachedContent(file, buffer));
+        return buffer.duplicate();
+    }
+
+    /**
+     * 记录从缓存写出的响应字节数
+     */
+    public void recordServed(long bytes) {
+        servedBytesCounter.increment(bytes);
+    }
+
+    public void invalidate(Long id) {
+        if (enabled && id != null) {
+            contents.invalidate(id);
+            candidates.invalidate(id);
+        }
+    }
+
+    @Override
+    public void onUpdated(FileInfo fileInfo) {
+        invalidate(fileInfo.getId());
+    }
+
+    @Override
+    public void onDeleted(Long id) {
+        invalidate(id);
+    }
+
+    private ByteBuffer load(DownloadFile file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) file.getLength());
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, file.getOffset() + buffer.position()) < 0) {
+                    throw new IOException("file truncated during load");
+                }
+            }
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private double hitRatio() {
+        double hits = hitCounter.count();
+        double total = hits + missCounter.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    private static final class CachedContent {
+
+        private final String path;
+
+        private final long offset;
+
+        private final long lastModified;
+
+        private final ByteBuffer buffer;
+
+        CachedContent(DownloadFile file, ByteBuffer buffer) {
+            this.path = file.getPath().toString();
+            this.offset = file.getOffset();
+            this.lastModified = file.getLastModified();
+            this.buffer = buffer;
+        }
+
+        boolean matches(DownloadFile file) {
+            return buffer.capacity() == file.getLength()
+                    && lastModified == file.getLastModified()
+                    && offset == file.getOffset()
+                    && path.equals(file.getPath().toString());
+        }
+    }
+}
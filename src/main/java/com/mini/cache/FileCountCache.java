@@ -0,0 +1,59 @@
+package com.mini.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * 文件列表总数缓存，按过滤条件缓存 COUNT(*) 结果，过期前返回的总数可能略有滞后
+ */
+@Component
+public class FileCountCache {
+
+    // 无过滤条件时的缓存键
+    private static final String ALL = "";
+
+    @Value("${file.list.count-cache-ttl:30s}")
+    private Duration ttl;
+
+    @Value("${file.list.count-cache-size:1000}")
+    private long maxSize;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, Long> counts;
+
+    @PostConstruct
+    public void init() {
+        counts = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, counts, "fileCount");
+    }
+
+    /**
+     * 获取总数
+     *
+     * @param exact true 时绕过缓存执行精确计数，并刷新缓存
+     */
+    public long count(String fileName, boolean exact, Function<String, Long> loader) {
+        String key = fileName == null ? ALL : fileName;
+        if (exact) {
+            Long total = loader.apply(fileName);
+            counts.put(key, total);
+            return total;
+        }
+        return counts.get(key, k -> loader.apply(fileName));
+    }
+}
@@ -0,0 +1,174 @@
+package com.mini.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.mini.entity.FileInfo;
+import com.mini.mapper.FileInfoChangeListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 文件元数据本地缓存，按文件名与ID两个维度缓存有效（status = 0）的 {@link FileInfo}
+ * <p>
+ * 使用 Caffeine 的 W-TinyLFU 淘汰策略，一次性的大量扫描不会冲掉热点文件；
+ * 文件名不存在的查询结果以较短的过期时间做负缓存。
+ * 写操作的失效由 {@link com.mini.mapper.FileInfoChangeInterceptor} 在 SQL 执行后统一回调。
+ */
+@Component
+public class FileInfoCache implements FileInfoChangeListener {
+
+    @Value("${file.cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${file.cache.ttl:10m}")
+    private Duration ttl;
+
+    @Value("${file.cache.negative-ttl:30s}")
+    private Duration negativeTtl;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, Optional<FileInfo>> byName;
+
+    private Cache<Long, FileInfo> byId;
+
+    // ID到文件名的反查表，用于仅知道ID时失效文件名维度的缓存
+    private final Map<Long, String> idToName = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        byName = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Optional<FileInfo>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<FileInfo> value, long currentTime) {
+                        return (value.isPresent() ? ttl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<FileInfo> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<FileInfo> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .removalListener((String key, Optional<FileInfo> value, RemovalCause cause) -> {
+                    if (value != null && value.isPresent()) {
+                        idToName.remove(value.get().getId(), key);
+                    }
+                })
+                .recordStats()
+                .build();
+        byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byName, "fileInfoByName");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "fileInfoById");
+    }
+
+    /**
+     * 按文件名查询，未命中时调用loader加载（结果为null时写入负缓存）
+     */
+    public FileInfo getByFileName(String fileName, Function<String, FileInfo> loader) {
+        Optional<FileInfo> cached = byName.get(fileName, key -> {
+            FileInfo fileInfo = loader.apply(key);
+            if (fileInfo != null && fileInfo.getId() != null) {
+                idToName.put(fileInfo.getId(), key);
+            }
+            return Optional.ofNullable(fileInfo);
+        });
+        return cached.orElse(null);
+    }
+
+    /**
+     * 按ID查询，未命中时调用loader加载，不存在的ID不缓存
+     */
+    public FileInfo getById(Long id, Function<Long, FileInfo> loader) {
+        return byId.get(id, loader);
+    }
+
+    /**
+     * 按ID批量查询，未命中的ID一次交给loader加载，返回结果只包含存在的记录
+     */
+    public Map<Long, FileInfo> getByIds(Collection<Long> ids, Function<Set<? extends Long>, Map<Long, FileInfo>> loader) {
+        return byId.getAll(ids, loader);
+    }
+
+    /**
+     * 失效单条记录在两个维度上的缓存
+     */
+    public void invalidate(FileInfo fileInfo) {
+        if (fileInfo == null) {
+            return;
+        }
+        if (fileInfo.getFileName() != null) {
+            byName.invalidate(fileInfo.getFileName());
+        }
+        if (fileInfo.getId() != null) {
+            invalidateId(fileInfo.getId());
+        }
+    }
+
+    public void invalidateFileName(String fileName) {
+        if (fileName != null) {
+            byName.invalidate(fileName);
+        }
+    }
+
+    public void invalidateId(Long id) {
+        if (id == null) {
+            return;
+        }
+        byId.invalidate(id);
+        String fileName = idToName.get(id);
+        if (fileName != null) {
+            byName.invalidate(fileName);
+        }
+    }
+
+    public void invalidateIds(Collection<Long> ids) {
+        if (ids == null) {
+            return;
+        }
+        ids.stream().filter(Objects::nonNull).forEach(this::invalidateId);
+    }
+
+    @Override
+    public void onInserted(FileInfo fileInfo) {
+        // 清除可能存在的负缓存
+        invalidate(fileInfo);
+    }
+
+    @Override
+    public void onUpdated(FileInfo fileInfo) {
+        // 文件名可能被修改，按ID反查旧文件名一并失效
+        invalidateId(fileInfo.getId());
+        invalidateFileName(fileInfo.getFileName());
+    }
+
+    @Override
+    public void onDeleted(Long id) {
+        invalidateId(id);
+    }
+}
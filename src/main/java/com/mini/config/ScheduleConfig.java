@@ -1,6 +1,11 @@
 package com.mini.config;
 
+import com.google.common.collect.Lists;
+import com.mini.batch.InvalidFileQueue;
+import com.mini.batch.StorageReconciler;
+import com.mini.executor.TaskExecutors;
 import com.mini.service.FileService;
+import com.mini.storage.SegmentStore;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
@@ -9,10 +14,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 
 import jakarta.annotation.Resource;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
  * 定时任务配置
@@ -25,37 +27,62 @@ public class ScheduleConfig {
     @Resource
     private FileService fileService;
 
-    @Resource(name = "invalidFileIdQueue")
-    private LinkedBlockingDeque<Long> invalidFileIdQueue;
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private InvalidFileQueue invalidFileQueue;
+
+    @Resource
+    private StorageReconciler storageReconciler;
+
+    @Resource
+    private SegmentStore segmentStore;
 
     @PostConstruct
     public void init() {
-        cleanExpiredFiles();
+        // 启动时续跑上次中断的清理，不阻塞启动；清理以数据库读写为主，文件删除再分发到I/O线程池
+        taskExecutors.db().execute(this::cleanExpiredFiles);
     }
 
     /**
      * 使用fixedDelay属性，单位是毫秒（5分钟=300000毫秒）
+     * <p>
+     * 每批核实后只确认处理完毕的ID，处理失败或出错时剩余的ID留在队列中等待下次执行
      */
     @Scheduled(fixedDelay = 5 * 60 * 1000)
     public void cleanInvalidFiles() {
-        if (invalidFileIdQueue.isEmpty()) {
+        if (invalidFileQueue.size() == 0) {
             log.info("no invalid files");
             return;
         }
-        log.info("delete invalid files start");
-        List<Long> idList = new ArrayList<>(invalidFileIdQueue.size());
-        while (!invalidFileIdQueue.isEmpty()) {
-            Long fileId = invalidFileIdQueue.poll();
-            if (Objects.isNull(fileId)) {
-                continue;
+        log.info("delete invalid files start, queued = {}", invalidFileQueue.size());
+        int count = 0;
+        try {
+            // 本次只处理开始时的快照，失败的ID不会在同一轮被反复取出
+            for (List<Long> idList : Lists.partition(invalidFileQueue.peek(invalidFileQueue.size()), 500)) {
+                List<Long> processed = fileService.deleteMissingFiles(idList);
+                invalidFileQueue.ack(processed);
+                count += processed.size();
             }
-            idList.add(fileId);
+            log.info("delete invalid files finish, nAck = {}, remaining = {}", count, invalidFileQueue.size());
+        } catch (Exception e) {
+            log.error("delete invalid files error, nAck = {}", count, e);
         }
+    }
+
+    /**
+     * 回收长时间未活动的分片上传会话，默认每10分钟一次
+     */
+    @Scheduled(fixedDelayString = "${file.upload.chunked.gc-interval:600000}")
+    public void cleanAbandonedUploads() {
         try {
-            int count = fileService.deleteFilesByIds(idList);
-            log.info("delete invalid files finish, nDelete =  {}", count);
+            int count = fileService.cleanAbandonedUploads();
+            if (count > 0) {
+                log.info("clean abandoned uploads finish, nClean = {}", count);
+            }
         } catch (Exception e) {
-            log.error("delete invalid files error", e);
+            log.error("clean abandoned uploads error", e);
         }
     }
 
@@ -72,4 +99,32 @@ public class ScheduleConfig {
             log.error("delete expired files error", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 定期对账存储目录与文件记录，默认每天凌晨4点，配置为 "-" 时关闭
+     */
+    @Scheduled(cron = "${file.reconcile.cron:0 0 4 * * ?}")
+    public void reconcileStorage() {
+        log.info("storage reconciliation start");
+        try {
+            storageReconciler.run();
+        } catch (Exception e) {
+            log.error("storage reconciliation error", e);
+        }
+    }
+
+    /**
+     * 整理垃圾比例过高的小文件段，默认每10分钟一次
+     */
+    @Scheduled(fixedDelayString = "${file.storage.segment.compact-interval:600000}")
+    public void compactSegments() {
+        try {
+            int count = segmentStore.compact();
+            if (count > 0) {
+                log.info("compact segments finish, nCompacted = {}", count);
+            }
+        } catch (Exception e) {
+            log.error("compact segments error", e);
+        }
+    }
+}
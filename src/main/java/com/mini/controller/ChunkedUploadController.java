@@ -0,0 +1,101 @@
+package com.mini.controller;
+
+import com.mini.dto.FileInfoDTO;
+import com.mini.dto.UploadSessionDTO;
+import com.mini.service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.annotation.Resource;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * 分片上传控制器
+ * <p>
+ * 创建会话 → 并行 PUT 各分片（请求体为分片原始内容）→ 查询缺失分片并补传 → 完成。
+ */
+@Slf4j
+@RestController
+@RequestMapping("/uploads")
+public class ChunkedUploadController {
+
+    @Resource
+    private FileService fileService;
+
+    /**
+     * 创建分片上传会话
+     */
+    @PostMapping
+    public ResponseEntity<?> initiate(@RequestParam("file_name") String fileName,
+                                      @RequestParam("file_size") long fileSize,
+                                      @RequestParam(value = "chunk_size", required = false) Integer chunkSize) {
+        return handle("initiate upload failed", () -> {
+            UploadSessionDTO session = fileService.initiateUpload(fileName, fileSize, chunkSize);
+            return ResponseEntity.status(HttpStatus.CREATED).body(session);
+        });
+    }
+
+    /**
+     * 上传一个分片，重复上传同一分片会覆盖，同一分片正在被其他请求写入时返回409
+     */
+    @PutMapping("/{uploadId}/chunks/{index}")
+    public ResponseEntity<?> uploadChunk(@PathVariable String uploadId, @PathVariable int index,
+                                         HttpServletRequest request) {
+        return handle("upload chunk failed", () -> {
+            fileService.uploadChunk(uploadId, index, request);
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    /**
+     * 查询会话状态与缺失的分片
+     */
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<?> status(@PathVariable String uploadId) {
+        return handle("query upload failed", () -> ResponseEntity.ok(fileService.getUploadStatus(uploadId)));
+    }
+
+    /**
+     * 完成上传
+     */
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<?> complete(@PathVariable String uploadId) {
+        return handle("complete upload failed", () -> {
+            FileInfoDTO fileInfo = fileService.completeUpload(uploadId);
+            return ResponseEntity.ok(new FileController.ResultMsg("upload success", fileInfo));
+        });
+    }
+
+    /**
+     * 放弃上传
+     */
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<?> abort(@PathVariable String uploadId) {
+        return handle("abort upload failed", () -> {
+            fileService.abortUpload(uploadId);
+            return ResponseEntity.noContent().build();
+        });
+    }
+
+    /**
+     * 会话不存在返回404，参数或分片内容不合法返回400，会话状态不允许该操作返回409
+     */
+    private ResponseEntity<?> handle(String failure, Supplier<ResponseEntity<?>> action) {
+        try {
+            return action.get();
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new FileController.ResultMsg(failure + ": " + e.getMessage(), null));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new FileController.ResultMsg(failure + ": " + e.getMessage(), null));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new FileController.ResultMsg(failure + ": " + e.getMessage(), null));
+        } catch (Exception e) {
+            log.error(failure, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new FileController.ResultMsg(failure + ": " + e.getMessage(), null));
+        }
+    }
+}
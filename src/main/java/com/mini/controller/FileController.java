@@ -1,22 +1,29 @@
 package com.mini.controller;
 
+import com.mini.dto.DownloadFile;
 import com.mini.dto.FileInfoDTO;
 import com.mini.dto.PageResult;
+import com.mini.dto.UploadFileResult;
+import com.mini.metrics.StageTimers;
+import com.mini.nio.FileRangeWriter;
+import com.mini.nio.ZipStreamWriter;
 import com.mini.service.FileService;
+import com.mini.upload.UploadAdmission;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.Resource;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.NoSuchElementException;
 
 /**
  * 文件控制器
@@ -28,13 +35,33 @@ public class FileController {
     @Resource
     private FileService fileService;
 
+    @Resource
+    private FileRangeWriter fileRangeWriter;
+
+    @Resource
+    private ZipStreamWriter zipStreamWriter;
+
+    @Resource
+    private StageTimers stageTimers;
+
+    @Resource
+    private UploadAdmission uploadAdmission;
+
     /**
-     * 批量上传文件，兼容前端index.html
+     * 批量上传文件，兼容前端index.html；读取请求体之前先经过准入控制，被拒绝时返回429/503与 Retry-After
      */
     @PostMapping("/upload/")
-    public ResponseEntity<?> uploadFiles(@RequestParam("files") List<MultipartFile> files) {
+    public ResponseEntity<?> uploadFiles(HttpServletRequest request) {
+        UploadAdmission.Permit permit;
         try {
-            List<FileInfoDTO> fileInfos = fileService.uploadFiles(files);
+            permit = uploadAdmission.admit(request);
+        } catch (UploadAdmission.RejectedException e) {
+            return ResponseEntity.status(e.getStatus())
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(new ResultMsg("upload rejected: " + e.getMessage(), null));
+        }
+        try (permit) {
+            List<UploadFileResult> fileInfos = fileService.uploadFiles(request);
             return ResponseEntity.ok().body(new ResultMsg("upload success", fileInfos));
         } catch (Exception e) {
             log.error("upload files failed", e);
@@ -43,33 +70,90 @@ public class FileController {
     }
 
     /**
-     * 下载文件，兼容前端index.html
+     * 下载文件，兼容前端index.html，支持 Range 断点续传与分段下载；
+     * 只查询一次元数据，条件请求命中时响应304、HEAD 请求能由元数据得出长度时均不访问磁盘
      */
     @GetMapping("/download/{fileName}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable String fileName) {
+    public void downloadFile(@PathVariable String fileName, HttpServletRequest request, HttpServletResponse response) {
+        DownloadFile downloadFile;
         try {
-            byte[] fileData = fileService.downloadFile(fileName);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", URLEncoder.encode(fileName, StandardCharsets.UTF_8));
-            return ResponseEntity.ok().headers(headers).body(fileData);
+            downloadFile = fileService.describeFile(fileName);
+            if (fileRangeWriter.checkNotModified(downloadFile, request, response)) {
+                return;
+            }
+            if (!HttpMethod.HEAD.matches(request.getMethod()) || downloadFile.getLength() == 0) {
+                downloadFile = fileService.statFile(downloadFile);
+            }
         } catch (Exception e) {
             log.error("download file failed: {}", fileName, e);
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        long readStart = System.nanoTime();
+        try {
+            fileRangeWriter.write(downloadFile, request, response);
+        } catch (IOException e) {
+            // 多为客户端中断连接
+            log.warn("download file interrupted: {}, {}", fileName, e.getMessage());
+        } finally {
+            stageTimers.record(StageTimers.Stage.FILE_READ, readStart);
+        }
+    }
+
+    /**
+     * 查询下载响应头，用于客户端低成本重新校验
+     */
+    @RequestMapping(value = "/download/{fileName}", method = RequestMethod.HEAD)
+    public void headFile(@PathVariable String fileName, HttpServletRequest request, HttpServletResponse response) {
+        downloadFile(fileName, request, response);
+    }
+
+    /**
+     * 将多个文件打包为 ZIP 流式下载，ids 与 names 可同时指定
+     */
+    @RequestMapping(value = "/download/zip", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<?> downloadZip(@RequestParam(value = "ids", required = false) List<Long> ids,
+                                         @RequestParam(value = "names", required = false) List<String> names,
+                                         HttpServletResponse response) {
+        List<DownloadFile> files;
+        try {
+            files = fileService.resolveFiles(ids, names);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResultMsg("download zip failed: " + e.getMessage(), null));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResultMsg("download zip failed: " + e.getMessage(), null));
+        } catch (Exception e) {
+            log.error("resolve zip files failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResultMsg("download zip failed: " + e.getMessage(), null));
+        }
+        String archiveName = "files-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss")) + ".zip";
+        long readStart = System.nanoTime();
+        try {
+            zipStreamWriter.write(files, archiveName, response);
+        } catch (IOException e) {
+            // 多为客户端中断连接，响应已开始输出，无法再返回错误
+            log.warn("download zip interrupted: {}", e.getMessage());
+        } finally {
+            stageTimers.record(StageTimers.Stage.FILE_READ, readStart);
         }
+        return null;
     }
 
     /**
-     * 分页查询文件列表，兼容前端index.html
+     * 分页查询文件列表，兼容前端index.html；传入cursor时按游标翻页
      */
     @GetMapping("/files/")
     public ResponseEntity<?> getFileList(
             @RequestParam(value = "page", defaultValue = "1") Integer page,
             @RequestParam(value = "page_size", defaultValue = "10") Integer pageSize,
-            @RequestParam(value = "filename_filter", required = false) String fileName) {
+            @RequestParam(value = "filename_filter", required = false) String fileName,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "exact_count", defaultValue = "false") boolean exactCount) {
         try {
-            PageResult<FileInfoDTO> result = fileService.getFileList(page, pageSize, fileName);
+            PageResult<FileInfoDTO> result = fileService.getFileList(page, pageSize, fileName, cursor, exactCount);
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResultMsg("query file list failed: " + e.getMessage(), null));
         } catch (Exception e) {
             log.error("query file list failed", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResultMsg("query file list failed: " + e.getMessage(), null));
@@ -0,0 +1,71 @@
+package com.mini.controller;
+
+import com.mini.image.ImageDerivativeService;
+import com.mini.image.ImageVariant;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 图片预览接口
+ */
+@Slf4j
+@RestController
+public class ImageController {
+
+    // 派生图片响应的 Cache-Control，为空时不输出
+    @Value("${file.image.cache-control:no-cache}")
+    private String cacheControl;
+
+    @Resource
+    private ImageDerivativeService imageDerivativeService;
+
+    /**
+     * 返回按 w、h 等比缩小并以 format 编码的图片，首次请求时生成并缓存
+     */
+    @GetMapping("/image/{fileName}")
+    public ResponseEntity<?> getImage(@PathVariable String fileName,
+                                      @RequestParam(value = "w", required = false) Integer width,
+                                      @RequestParam(value = "h", required = false) Integer height,
+                                      @RequestParam(value = "format", required = false) String format,
+                                      HttpServletRequest request, HttpServletResponse response) {
+        ImageDerivativeService.Derivative derivative;
+        try {
+            ImageVariant variant = imageDerivativeService.variant(fileName, width, height, format);
+            derivative = imageDerivativeService.derive(fileName, variant);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new FileController.ResultMsg("get image failed: " + e.getMessage(), null));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new FileController.ResultMsg("get image failed: " + e.getMessage(), null));
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new FileController.ResultMsg("image service busy, retry later", null));
+        } catch (Exception e) {
+            log.error("get image failed: {}", fileName, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new FileController.ResultMsg("get image failed: " + e.getMessage(), null));
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(derivative.etag())) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(derivative.mediaType());
+        if (StringUtils.hasText(cacheControl)) {
+            builder.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        return builder.body(new FileSystemResource(derivative.path()));
+    }
+}
@@ -0,0 +1,52 @@
+package com.mini.controller;
+
+import com.mini.dto.IndexCheckResult;
+import com.mini.executor.TaskExecutors;
+import com.mini.search.FileNameIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.annotation.Resource;
+
+/**
+ * 文件名索引运维接口
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/search-index")
+public class SearchIndexController {
+
+    @Resource
+    private FileNameIndex fileNameIndex;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    /**
+     * 后台重建索引，重建期间旧索引继续提供查询
+     */
+    @PostMapping("/rebuild")
+    public ResponseEntity<?> rebuild() {
+        taskExecutors.db().submit(fileNameIndex::rebuild);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new FileController.ResultMsg("rebuild submitted", null));
+    }
+
+    /**
+     * 与数据库比对索引一致性
+     */
+    @GetMapping("/check")
+    public ResponseEntity<?> check() {
+        try {
+            IndexCheckResult result = fileNameIndex.check();
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("check search index failed", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new FileController.ResultMsg("check search index failed: " + e.getMessage(), null));
+        }
+    }
+}
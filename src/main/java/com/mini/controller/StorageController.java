@@ -0,0 +1,64 @@
+package com.mini.controller;
+
+import com.mini.batch.StorageReconciler;
+import com.mini.storage.StorageMigrator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.annotation.Resource;
+
+/**
+ * 存储运维接口
+ */
+@RestController
+@RequestMapping("/admin/storage")
+public class StorageController {
+
+    @Resource
+    private StorageMigrator storageMigrator;
+
+    @Resource
+    private StorageReconciler storageReconciler;
+
+    /**
+     * 后台将平铺目录中的历史文件迁移到分片目录，迁移期间服务正常读写
+     */
+    @PostMapping("/migrate")
+    public ResponseEntity<?> migrate() {
+        if (!storageMigrator.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new FileController.ResultMsg("migration is running or layout is not sharded", storageMigrator.getStatus()));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new FileController.ResultMsg("migration submitted", storageMigrator.getStatus()));
+    }
+
+    /**
+     * 查询迁移进度
+     */
+    @GetMapping("/migration")
+    public ResponseEntity<?> migration() {
+        return ResponseEntity.ok(storageMigrator.getStatus());
+    }
+
+    /**
+     * 后台对账存储目录与文件记录
+     */
+    @PostMapping("/reconcile")
+    public ResponseEntity<?> reconcile() {
+        if (!storageReconciler.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new FileController.ResultMsg("reconciliation or migration is running", storageReconciler.getStatus()));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new FileController.ResultMsg("reconciliation submitted", storageReconciler.getStatus()));
+    }
+
+    /**
+     * 查询对账进度与结果
+     */
+    @GetMapping("/reconciliation")
+    public ResponseEntity<?> reconciliation() {
+        return ResponseEntity.ok(storageReconciler.getStatus());
+    }
+}
@@ -0,0 +1,57 @@
+package com.mini.dto;
+
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * 文件下载描述，只携带定位信息，文件内容由调用方按需以通道方式读取
+ */
+@Data
+public class DownloadFile {
+
+    /**
+     * 记录ID，用于内容缓存
+     */
+    private Long id;
+
+    /**
+     * 文件名
+     */
+    private String fileName;
+
+    /**
+     * 物理文件路径，合并存储时为段文件路径
+     */
+    private Path path;
+
+    /**
+     * 内容在物理文件中的起始位置，独立文件为0；合并存储时为段文件中数据的起点（位于条目头之后，总是大于0）
+     */
+    private long offset;
+
+    /**
+     * 内容长度（字节），压缩存储时为压缩后的长度
+     */
+    private long length;
+
+    /**
+     * 存储压缩算法（HTTP内容编码名），未压缩为null
+     */
+    private String contentEncoding;
+
+    /**
+     * 原始内容长度（字节），未压缩时与 length 相同
+     */
+    private long originalLength;
+
+    /**
+     * 原始内容SHA-256，旧记录为null
+     */
+    private String etag;
+
+    /**
+     * 最后修改时间（毫秒），取上传时间
+     */
+    private long lastModified;
+}
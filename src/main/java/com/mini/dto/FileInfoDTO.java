@@ -11,7 +11,7 @@ public class FileInfoDTO {
     private Long id;
     private String fileName;
     private String filePath;
-    private Integer fileSize;
+    private Long fileSize;
     private Integer status;
     private LocalDateTime uploadDate;
 } 
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.mini.dto;
+
+import lombok.Data;
+
+/**
+ * 文件名索引一致性检查结果DTO
+ */
+@Data
+public class IndexCheckResult {
+
+    /**
+     * 索引是否已构建完成并可用于查询
+     */
+    private Boolean ready;
+
+    /**
+     * 数据库中的有效记录数
+     */
+    private Long databaseCount;
+
+    /**
+     * 索引中的有效记录数
+     */
+    private Long indexedCount;
+
+    /**
+     * 数据库中存在但索引中缺失的记录数
+     */
+    private Long missingInIndex;
+
+    /**
+     * 索引中存在但数据库中已无效的记录数
+     */
+    private Long staleInIndex;
+
+    /**
+     * 不同三元组（倒排表）数量
+     */
+    private Long trigramCount;
+}
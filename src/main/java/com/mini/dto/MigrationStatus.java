@@ -0,0 +1,51 @@
+package com.mini.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 存储布局迁移进度
+ */
+@Data
+public class MigrationStatus {
+
+    /**
+     * 是否正在迁移
+     */
+    private boolean running;
+
+    /**
+     * 已扫描的记录数
+     */
+    private long scanned;
+
+    /**
+     * 已迁移到分片目录的文件数
+     */
+    private long migrated;
+
+    /**
+     * 无需迁移或无法迁移而跳过的记录数
+     */
+    private long skipped;
+
+    /**
+     * 迁移失败的记录数
+     */
+    private long failed;
+
+    /**
+     * 等待宽限期结束后删除的旧路径数
+     */
+    private long pendingUnlinks;
+
+    /**
+     * 已处理到的记录ID
+     */
+    private Long lastId;
+
+    private LocalDateTime startTime;
+
+    private LocalDateTime finishTime;
+}
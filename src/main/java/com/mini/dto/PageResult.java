@@ -33,6 +33,21 @@ public class PageResult<T> {
      * 总页数
      */
     private Integer totalPages;
+
+    /**
+     * 总记录数是否为精确值，false 表示来自缓存，可能略有滞后
+     */
+    private Boolean totalExact;
+
+    /**
+     * 下一页（更早的记录）游标，没有更多记录时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 上一页（更新的记录）游标，已是第一页时为null
+     */
+    private String prevCursor;
     
     public PageResult() {}
     
@@ -0,0 +1,51 @@
+package com.mini.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 存储对账进度
+ */
+@Data
+public class ReconcileStatus {
+
+    /**
+     * 是否正在对账
+     */
+    private boolean running;
+
+    /**
+     * 已扫描的磁盘文件数
+     */
+    private long scannedFiles;
+
+    /**
+     * 已扫描的有效记录数
+     */
+    private long scannedRows;
+
+    /**
+     * 磁盘上存在但没有有效记录的文件数（已超过宽限期）
+     */
+    private long orphanFiles;
+
+    /**
+     * 已删除的孤儿文件数
+     */
+    private long deletedOrphans;
+
+    /**
+     * 物理文件缺失、已提交到失效文件队列的记录数
+     */
+    private long missingFiles;
+
+    /**
+     * 因I/O或数据库错误未完成的扫描单元数
+     */
+    private long failedUnits;
+
+    private LocalDateTime startTime;
+
+    private LocalDateTime finishTime;
+}
@@ -0,0 +1,30 @@
+package com.mini.dto;
+
+import lombok.Data;
+
+/**
+ * 单个文件上传结果DTO
+ */
+@Data
+public class UploadFileResult {
+
+    /**
+     * 原始文件名
+     */
+    private String originalFileName;
+
+    /**
+     * 是否已落盘成功
+     */
+    private Boolean success;
+
+    /**
+     * 失败原因
+     */
+    private String message;
+
+    /**
+     * 文件信息，失败时为null
+     */
+    private FileInfoDTO fileInfo;
+}
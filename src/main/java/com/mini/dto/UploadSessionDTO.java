@@ -0,0 +1,52 @@
+package com.mini.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 分片上传会话状态
+ */
+@Data
+public class UploadSessionDTO {
+
+    /**
+     * 会话ID
+     */
+    private String uploadId;
+
+    /**
+     * 客户端提交的原始文件名
+     */
+    private String fileName;
+
+    /**
+     * 文件总大小（字节）
+     */
+    private Long fileSize;
+
+    /**
+     * 分片大小（字节），最后一个分片可能更小
+     */
+    private Integer chunkSize;
+
+    /**
+     * 分片总数，分片序号从0开始
+     */
+    private Integer chunkCount;
+
+    /**
+     * 已接收的分片数
+     */
+    private Integer receivedCount;
+
+    /**
+     * 尚未接收的分片序号
+     */
+    private List<Integer> missingChunks;
+
+    /**
+     * 不再活动时会话的回收时间（毫秒时间戳）
+     */
+    private Long expireTime;
+}
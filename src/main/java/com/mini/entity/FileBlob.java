@@ -0,0 +1,16 @@
+package com.mini.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 去重存储内容块实体类
+ */
+@Data
+public class FileBlob {
+    private String digest;
+    private String filePath;
+    private Long fileSize;
+    private Integer refCount;
+    private LocalDateTime createDate;
+}
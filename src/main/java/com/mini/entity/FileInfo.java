@@ -11,7 +11,16 @@ public class FileInfo {
     private Long id;
     private String fileName;
     private String filePath;
-    private Integer fileSize;
+    private Long fileSize;
     private Integer status;
     private LocalDateTime uploadDate;
+    // 去重存储模式下内容的SHA-256，普通模式为null
+    private String contentHash;
+    // 存储压缩算法（HTTP内容编码名），fileSize为压缩前大小；未压缩为null
+    private String contentEncoding;
+    // 原始内容的SHA-256，作为下载的强校验器；旧记录为null
+    private String etag;
+    // 合并存储在段文件（filePath）中时内容的起始位置与长度；独立文件为null
+    private Long segmentOffset;
+    private Long segmentLength;
 } 
\ No newline at end of file
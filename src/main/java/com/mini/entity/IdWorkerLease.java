@@ -0,0 +1,15 @@
+package com.mini.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * ID生成器工作节点租约实体类
+ */
+@Data
+public class IdWorkerLease {
+    private Integer workerId;
+    private String owner;
+    private Long lastTimestamp;
+    private LocalDateTime expireTime;
+}
@@ -0,0 +1,101 @@
+package com.mini.executor;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 后台任务线程池配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "executor")
+public class ExecutorProperties {
+
+    /**
+     * 阻塞磁盘I/O任务（文件写入、删除）
+     */
+    private Pool io = new Pool(Mode.VIRTUAL, 64, 10000, RejectionPolicy.BLOCK);
+
+    /**
+     * 以数据库读写为主的后台任务（过期记录清理、索引重建），并发数不宜超过连接池大小
+     */
+    private Pool db = new Pool(Mode.PLATFORM, 8, 10000, RejectionPolicy.CALLER_RUNS);
+
+    /**
+     * CPU密集任务（图片解码与缩放），并发数不宜超过CPU核数，队列满时直接拒绝
+     */
+    private Pool image = new Pool(Mode.PLATFORM, Runtime.getRuntime().availableProcessors(), 64, RejectionPolicy.ABORT);
+
+    /**
+     * 关闭时等待队列排空的最长时间（每个线程池）
+     */
+    private Duration shutdownTimeout = Duration.ofSeconds(30);
+
+    @Data
+    public static class Pool {
+
+        /**
+         * 线程模型
+         */
+        private Mode mode;
+
+        /**
+         * 最大并发执行任务数
+         */
+        private int maxConcurrency;
+
+        /**
+         * 等待执行的任务数上限
+         */
+        private int queueCapacity;
+
+        /**
+         * 队列满时的处理策略
+         */
+        private RejectionPolicy rejectionPolicy;
+
+        /**
+         * BLOCK策略下提交方最长等待时间，超时后拒绝
+         */
+        private Duration blockTimeout = Duration.ofSeconds(5);
+
+        public Pool() {
+        }
+
+        public Pool(Mode mode, int maxConcurrency, int queueCapacity, RejectionPolicy rejectionPolicy) {
+            this.mode = mode;
+            this.maxConcurrency = maxConcurrency;
+            this.queueCapacity = queueCapacity;
+            this.rejectionPolicy = rejectionPolicy;
+        }
+    }
+
+    public enum Mode {
+        /**
+         * 固定大小的平台线程池
+         */
+        PLATFORM,
+        /**
+         * 每任务一个虚拟线程，并发数由信号量限制
+         */
+        VIRTUAL
+    }
+
+    public enum RejectionPolicy {
+        /**
+         * 直接拒绝，抛出RejectedExecutionException
+         */
+        ABORT,
+        /**
+         * 由提交线程执行
+         */
+        CALLER_RUNS,
+        /**
+         * 阻塞提交线程直到有空位（背压），超时后拒绝
+         */
+        BLOCK
+    }
+}
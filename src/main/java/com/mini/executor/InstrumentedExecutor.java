@@ -0,0 +1,223 @@
+package com.mini.executor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带容量限制与指标的任务执行器
+ * <p>
+ * 在途任务（执行中 + 排队中）由准入信号量限制为 maxConcurrency + queueCapacity，超出时按拒绝策略处理；
+ * 排队数、执行数、等待时间、执行时间与拒绝次数以 {@code pool} 标签导出到 Micrometer。
+ */
+@Slf4j
+public class InstrumentedExecutor implements Executor {
+
+    private final String name;
+
+    private final ExecutorProperties.Pool config;
+
+    private final ExecutorService delegate;
+
+    // 在途任务上限
+    private final Semaphore admission;
+
+    // 虚拟线程模式下的并发执行上限，平台线程模式由线程数保证
+    private final Semaphore runPermits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Timer waitTimer;
+
+    private final Timer runTimer;
+
+    private final Counter rejectedCounter;
+
+    public InstrumentedExecutor(String name, ExecutorProperties.Pool config, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.config = config;
+        this.admission = new Semaphore(config.getMaxConcurrency() + config.getQueueCapacity());
+        if (config.getMode() == ExecutorProperties.Mode.VIRTUAL) {
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+            this.runPermits = new Semaphore(config.getMaxConcurrency());
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(config.getMaxConcurrency(), config.getMaxConcurrency(),
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> new Thread(runnable, name + "-" + threadIndex.incrementAndGet()));
+            executor.allowCoreThreadTimeOut(true);
+            this.delegate = executor;
+            this.runPermits = null;
+        }
+
+        Gauge.builder("file.executor.queued", queued, AtomicInteger::get)
+                .description("tasks waiting to run")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("file.executor.active", active, AtomicInteger::get)
+                .description("tasks currently running")
+                .tag("pool", name)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("file.executor.wait")
+                .description("time between submission and start")
+                .tag("pool", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("file.executor.run")
+                .description("task execution time")
+                .tag("pool", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("file.executor.rejected")
+                .description("tasks rejected because the pool was saturated")
+                .tag("pool", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admit()) {
+            // CALLER_RUNS
+            task.run();
+            return;
+        }
+        dispatch(task);
+    }
+
+    /**
+     * 有空闲名额时提交任务，否则立即返回false，不按拒绝策略阻塞或由提交线程执行；
+     * 供事件循环等不能阻塞的线程使用
+     *
+     * @throws RejectedExecutionException 线程池已关闭
+     */
+    public boolean tryExecute(Runnable task) {
+        if (!admission.tryAcquire()) {
+            rejectedCounter.increment();
+            return false;
+        }
+        dispatch(task);
+        return true;
+    }
+
+    public CompletableFuture<Void> submit(Runnable task) {
+        return CompletableFuture.runAsync(task, this);
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> callable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 申请在途名额
+     *
+     * @return true 已获得名额；false 由提交线程直接执行
+     */
+    private boolean admit() {
+        if (admission.tryAcquire()) {
+            return true;
+        }
+        switch (config.getRejectionPolicy()) {
+            case CALLER_RUNS:
+                rejectedCounter.increment();
+                return false;
+            case BLOCK:
+                try {
+                    Duration timeout = config.getBlockTimeout();
+                    if (admission.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                break;
+            default:
+                break;
+        }
+        rejectedCounter.increment();
+        throw new RejectedExecutionException("executor " + name + " is saturated");
+    }
+
+    /**
+     * 已获得在途名额的任务交给底层线程池
+     */
+    private void dispatch(Runnable task) {
+        long submitTime = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> runTask(task, submitTime));
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭
+            queued.decrementAndGet();
+            admission.release();
+            rejectedCounter.increment();
+            throw e;
+        }
+    }
+
+    private void runTask(Runnable task, long submitTime) {
+        if (runPermits != null) {
+            runPermits.acquireUninterruptibly();
+        }
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        long startTime = System.nanoTime();
+        waitTimer.record(startTime - submitTime, TimeUnit.NANOSECONDS);
+        try {
+            task.run();
+        } catch (Throwable e) {
+            log.error("executor {} task error", name, e);
+        } finally {
+            runTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            active.decrementAndGet();
+            if (runPermits != null) {
+                runPermits.release();
+            }
+            admission.release();
+        }
+    }
+
+    /**
+     * 停止接收新任务并等待已提交任务执行完毕，超时后中断
+     */
+    public void shutdown(Duration timeout) {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("executor {} did not drain in {}, {} tasks still queued", name, timeout, queued.get());
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            delegate.shutdownNow();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+}
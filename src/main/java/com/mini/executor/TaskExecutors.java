@@ -0,0 +1,69 @@
+package com.mini.executor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * 分级后台任务执行层：磁盘I/O与数据库任务使用相互隔离的线程池，慢SQL不会阻塞写盘
+ */
+@Slf4j
+@Component
+public class TaskExecutors {
+
+    @Resource
+    private ExecutorProperties executorProperties;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private InstrumentedExecutor ioExecutor;
+
+    private InstrumentedExecutor dbExecutor;
+
+    private InstrumentedExecutor imageExecutor;
+
+    @PostConstruct
+    public void init() {
+        ioExecutor = new InstrumentedExecutor("io", executorProperties.getIo(), meterRegistry);
+        dbExecutor = new InstrumentedExecutor("db", executorProperties.getDb(), meterRegistry);
+        imageExecutor = new InstrumentedExecutor("image", executorProperties.getImage(), meterRegistry);
+    }
+
+    /**
+     * 阻塞磁盘I/O线程池
+     */
+    public InstrumentedExecutor io() {
+        return ioExecutor;
+    }
+
+    /**
+     * 数据库线程池
+     */
+    public InstrumentedExecutor db() {
+        return dbExecutor;
+    }
+
+    /**
+     * 图片处理线程池
+     */
+    public InstrumentedExecutor image() {
+        return imageExecutor;
+    }
+
+    /**
+     * 按依赖顺序关闭：数据库任务（过期清理）会向I/O线程池提交文件删除，因此先排空数据库线程池，再排空I/O线程池；
+     * 图片任务不向其他线程池提交任务，最先关闭
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("draining executors");
+        imageExecutor.shutdown(executorProperties.getShutdownTimeout());
+        dbExecutor.shutdown(executorProperties.getShutdownTimeout());
+        ioExecutor.shutdown(executorProperties.getShutdownTimeout());
+        log.info("executors drained");
+    }
+}
@@ -0,0 +1,204 @@
+package com.mini.id;
+
+import com.mini.mapper.IdWorkerLeaseMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 集群唯一ID服务
+ * <p>
+ * 每个实例启动时通过 idWorkerLease 表租用一个工作节点ID（0-1023），由独立线程定期续约，
+ * 关闭时释放。租约过期后其他实例才能接管该ID，并从表中记录的最近时间戳之后继续发号，
+ * 因此同一工作节点ID先后发出的ID不会重复（要求实例间的时钟偏差小于 lease-ttl 与 renew-interval 之差）。
+ * <p>
+ * 本地以最近一次成功续约的发起时刻加 lease-ttl 减 lease-margin 作为租约截止时间（单调时钟）。
+ * 续约失败时在截止时间之前继续使用当前ID发号（数据库短暂不可用时上传仍可写入本地日志），
+ * 超过截止时间后 {@link #nextId()} 抛出 {@link IllegalStateException}，直到续约成功或租到新的ID，
+ * 避免与接管了同一ID的实例发出相同的ID；发现租约已被接管时重新租用。
+ * 配置 {@code file.id.worker-id} 时使用固定ID，不访问数据库，也没有截止时间。
+ */
+@Slf4j
+@Component
+public class IdGenerator {
+
+    @Value("${file.id.worker-id:-1}")
+    private int fixedWorkerId;
+
+    @Value("${file.id.lease-ttl:60s}")
+    private Duration leaseTtl;
+
+    @Value("${file.id.renew-interval:10s}")
+    private Duration renewInterval;
+
+    @Value("${file.id.lease-margin:5s}")
+    private Duration leaseMargin;
+
+    @Value("${server.port:8080}")
+    private int port;
+
+    @Resource
+    private IdWorkerLeaseMapper idWorkerLeaseMapper;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private String owner;
+
+    private volatile Lease lease;
+
+    private ScheduledExecutorService renewer;
+
+    @PostConstruct
+    public void init() {
+        if (fixedWorkerId >= 0) {
+            lease = new Lease(new SnowflakeIdWorker(fixedWorkerId, 0), Long.MAX_VALUE, false);
+            log.info("id generator uses fixed worker id {}", fixedWorkerId);
+        } else {
+            owner = hostName() + ":" + port + ":" + UUID.randomUUID().toString().substring(0, 8);
+            if (!leaseTtl.minus(leaseMargin).minus(renewInterval).isPositive()) {
+                throw new IllegalStateException("file.id.lease-ttl must be greater than lease-margin + renew-interval");
+            }
+            lease = acquire(0);
+            renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "id-lease-renewer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = renewInterval.toMillis();
+            renewer.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        Gauge.builder("id.worker", this, generator -> generator.lease.worker().getWorkerId())
+                .description("worker id currently used by this instance")
+                .register(meterRegistry);
+        Gauge.builder("id.clock.offset", this, generator -> generator.lease.worker().getClockOffset())
+                .description("id clock minus wall clock, positive after the wall clock moved backwards")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (renewer == null) {
+            return;
+        }
+        renewer.shutdownNow();
+        SnowflakeIdWorker current = lease.worker();
+        try {
+            idWorkerLeaseMapper.release(current.getWorkerId(), owner, current.getLastTimestamp());
+            log.info("released id worker {}", current.getWorkerId());
+        } catch (RuntimeException e) {
+            log.warn("release id worker error: {}", current.getWorkerId(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException 租约已超过本地截止时间且尚未续约成功
+     */
+    public long nextId() {
+        return activeWorker().nextId();
+    }
+
+    public int getWorkerId() {
+        return lease.worker().getWorkerId();
+    }
+
+    private SnowflakeIdWorker activeWorker() {
+        Lease current = lease;
+        if (current.expired()) {
+            throw new IllegalStateException("id worker " + current.worker().getWorkerId() + " lease expired, waiting for renewal");
+        }
+        return current.worker();
+    }
+
+    /**
+     * 租用一个工作节点ID：优先从未分配过的ID，其次已过期的租约，起点随机以减少多实例同时启动时的冲突
+     */
+    private Lease acquire(long minTimestamp) {
+        long ttlSeconds = leaseTtl.toSeconds();
+        Set<Integer> used = new HashSet<>(idWorkerLeaseMapper.selectWorkerIds());
+        int size = SnowflakeIdWorker.MAX_WORKER_ID + 1;
+        int offset = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            int workerId = (offset + i) % size;
+            long started = System.nanoTime();
+            if (!used.contains(workerId) && idWorkerLeaseMapper.insert(workerId, owner, ttlSeconds) > 0) {
+                log.info("leased new id worker {}, owner = {}", workerId, owner);
+                return new Lease(new SnowflakeIdWorker(workerId, minTimestamp), deadline(started), true);
+            }
+        }
+        List<Integer> expired = idWorkerLeaseMapper.selectExpiredWorkerIds();
+        Collections.shuffle(expired);
+        for (int workerId : expired) {
+            long started = System.nanoTime();
+            if (idWorkerLeaseMapper.acquireExpired(workerId, owner, ttlSeconds) > 0) {
+                // 从上一个持有者最近发出的ID之后继续
+                long lastTimestamp = idWorkerLeaseMapper.selectById(workerId).getLastTimestamp();
+                log.info("took over expired id worker {}, owner = {}, lastTimestamp = {}", workerId, owner, lastTimestamp);
+                return new Lease(new SnowflakeIdWorker(workerId, Math.max(minTimestamp, lastTimestamp)), deadline(started), true);
+            }
+        }
+        throw new IllegalStateException("no free id worker, all " + size + " leases are held");
+    }
+
+    private void renew() {
+        Lease current = lease;
+        SnowflakeIdWorker worker = current.worker();
+        try {
+            // 以发起续约的时刻计算截止时间：数据库中的到期时间不早于该时刻加租期
+            long started = System.nanoTime();
+            if (idWorkerLeaseMapper.renew(worker.getWorkerId(), owner, worker.getLastTimestamp(), leaseTtl.toSeconds()) > 0) {
+                if (current.expired()) {
+                    log.info("id worker {} lease renewed after expiry", worker.getWorkerId());
+                }
+                lease = new Lease(worker, deadline(started), true);
+                return;
+            }
+            // 续约中断超过租期，租约已被接管
+            log.warn("id worker {} lease lost, acquiring a new one", worker.getWorkerId());
+            lease = acquire(worker.getLastTimestamp());
+        } catch (RuntimeException e) {
+            log.error("renew id worker lease error: {}", worker.getWorkerId(), e);
+        }
+    }
+
+    private long deadline(long startedNanos) {
+        return startedNanos + leaseTtl.minus(leaseMargin).toNanos();
+    }
+
+    /**
+     * 当前使用的工作节点ID及其本地截止时间（System.nanoTime），两者一起替换
+     */
+    private record Lease(SnowflakeIdWorker worker, long deadlineNanos, boolean bounded) {
+
+        boolean expired() {
+            return bounded && System.nanoTime() - deadlineNanos > 0;
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.mini.id;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁雪花算法ID生成器
+ * <p>
+ * ID布局：41位毫秒时间戳（相对 {@link #EPOCH}）| 10位工作节点ID | 12位序列号。
+ * <ul>
+ *     <li>最近发出的 (时间戳, 序列号) 保存在一个 AtomicLong 中，各线程通过CAS推进，不持有锁</li>
+ *     <li>时间取自单调时钟（启动时以墙上时间为起点），系统时间回拨或跳变不影响发号，不会抛出异常</li>
+ *     <li>同一毫秒的序列号用尽时自旋等待下一毫秒</li>
+ * </ul>
+ */
+public class SnowflakeIdWorker {
+
+    /**
+     * 时间戳起点，与历史ID保持一致
+     */
+    public static final long EPOCH = 1288834974657L;
+
+    public static final int MAX_WORKER_ID = (1 << 10) - 1;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + 10;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final int workerId;
+
+    private final long workerBits;
+
+    // 单调时钟起点
+    private final long originMillis;
+
+    private final long originNanos;
+
+    // 最近发出的 (时间戳 << 12 | 序列号)，时间戳相对EPOCH
+    private final AtomicLong state;
+
+    /**
+     * @param minTimestamp 时间戳下界（毫秒），用于接续同一工作节点ID此前发出的ID，墙上时间落后于它时从它开始计时
+     */
+    public SnowflakeIdWorker(int workerId, long minTimestamp) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException(String.format("worker Id can't be greater than %d or less than 0", MAX_WORKER_ID));
+        }
+        this.workerId = workerId;
+        this.workerBits = (long) workerId << SEQUENCE_BITS;
+        this.originMillis = Math.max(System.currentTimeMillis(), minTimestamp + 1);
+        this.originNanos = System.nanoTime();
+        this.state = new AtomicLong((originMillis - EPOCH) << SEQUENCE_BITS);
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public long nextId() {
+        while (true) {
+            long current = state.get();
+            long now = currentMillis() - EPOCH;
+            long next;
+            if (now > current >>> SEQUENCE_BITS) {
+                next = now << SEQUENCE_BITS;
+            } else if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = current + 1;
+            } else {
+                // 本毫秒序列号已用尽
+                Thread.onSpinWait();
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                return toId(next);
+            }
+        }
+    }
+
+    /**
+     * 最近发出的ID的时间戳（毫秒）
+     */
+    public long getLastTimestamp() {
+        return (state.get() >>> SEQUENCE_BITS) + EPOCH;
+    }
+
+    /**
+     * 发号时钟与墙上时间之差（毫秒），为正表示启动后墙上时间被回拨，或启动时接续了更晚的时间戳
+     */
+    public long getClockOffset() {
+        return currentMillis() - System.currentTimeMillis();
+    }
+
+    private long currentMillis() {
+        return originMillis + (System.nanoTime() - originNanos) / 1_000_000;
+    }
+
+    private long toId(long value) {
+        return (value >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT | workerBits | (value & SEQUENCE_MASK);
+    }
+}
@@ -0,0 +1,224 @@
+package com.mini.image;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.mini.executor.TaskExecutors;
+import com.mini.mapper.FileInfoChangeListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 图片派生文件的磁盘缓存
+ * <p>
+ * 目录结构为 {@code <dir>/<记录ID散列的两位十六进制>/<记录ID>/<规格>}，同一原图的所有派生文件在一个目录中，整体淘汰与删除。
+ * <ul>
+ *     <li>总字节数超过 max-bytes 时按原图的访问频率与时间（W-TinyLFU）淘汰整个目录</li>
+ *     <li>原图记录删除（包括按ID删除、过期清理与失效文件核实）时由 {@link com.mini.mapper.FileInfoChangeInterceptor} 回调删除</li>
+ *     <li>启动时在后台扫描已有目录重建容量统计，扫描完成前命中的文件也会登记</li>
+ * </ul>
+ * 派生文件先写临时文件再原子改名，读取方不会看到不完整的内容。
+ */
+@Slf4j
+@Component
+public class DerivativeCache implements FileInfoChangeListener {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${file.image.derivative.dir:/data/derivatives}")
+    private String dir;
+
+    @Value("${file.image.derivative.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Path root;
+
+    // 记录ID -> 该原图已有的派生文件及大小
+    private Cache<Long, Entry> entries;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+        entries = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long id, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.bytes))
+                .removalListener((Long id, Entry entry, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && id != null) {
+                        deleteDirectory(id);
+                    }
+                })
+                .build();
+        Gauge.builder("file.image.derivative.bytes", entries,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L))
+                .description("bytes held by the image derivative cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        taskExecutors.io().execute(this::load);
+    }
+
+    /**
+     * 查询派生文件并记录一次访问
+     *
+     * @return 派生文件路径，不存在时返回null
+     */
+    public Path lookup(long id, String key) {
+        Path path = path(id, key);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        Entry entry = entries.getIfPresent(id);
+        if (entry == null || !entry.sizes.containsKey(key)) {
+            register(id, key, path);
+        }
+        return path;
+    }
+
+    /**
+     * 写入派生文件，已存在时覆盖
+     */
+    public Path store(long id, String key, ContentWriter writer) throws IOException {
+        Path path = path(id, key);
+        Files.createDirectories(path.getParent());
+        Path temp = path.resolveSibling(key + "." + Thread.currentThread().threadId() + TEMP_SUFFIX);
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writer.write(out);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        register(id, key, path);
+        return path;
+    }
+
+    @Override
+    public void onDeleted(Long id) {
+        if (id == null) {
+            return;
+        }
+        entries.invalidate(id);
+        deleteDirectory(id);
+    }
+
+    private void register(long id, String key, Path path) {
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (IOException e) {
+            return;
+        }
+        entries.asMap().compute(id, (ignored, entry) -> (entry == null ? new Entry() : entry).with(key, size));
+    }
+
+    private Path directory(long id) {
+        // 雪花ID的低位是毫秒内序列号，多数为0，先乘法散列再取高8位作为分片
+        int shard = (int) ((id * 0x9E3779B97F4A7C15L) >>> 56);
+        return root.resolve(String.format("%02x", shard)).resolve(Long.toString(id));
+    }
+
+    private Path path(long id, String key) {
+        return directory(id).resolve(key);
+    }
+
+    private void deleteDirectory(long id) {
+        Path directory = directory(id);
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            log.warn("delete image derivatives error: {}", directory, e);
+        }
+    }
+
+    /**
+     * 扫描已有派生文件，清理中断写入留下的临时文件
+     */
+    private void load() {
+        long files = 0;
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> directories = Files.newDirectoryStream(shard, Files::isDirectory)) {
+                    for (Path directory : directories) {
+                        long id;
+                        try {
+                            id = Long.parseLong(directory.getFileName().toString());
+                        } catch (NumberFormatException e) {
+                            continue;
+                        }
+                        try (DirectoryStream<Path> derivatives = Files.newDirectoryStream(directory)) {
+                            for (Path derivative : derivatives) {
+                                String key = derivative.getFileName().toString();
+                                if (key.endsWith(TEMP_SUFFIX)) {
+                                    Files.deleteIfExists(derivative);
+                                } else {
+                                    register(id, key, derivative);
+                                    files++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.warn("scan image derivatives error: {}", root, e);
+        }
+        log.info("image derivative cache loaded {} files from {}", files, root);
+    }
+
+    @FunctionalInterface
+    public interface ContentWriter {
+
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * 不可变，修改时整体替换以便缓存重新计算权重
+     */
+    private static final class Entry {
+
+        private final Map<String, Long> sizes;
+
+        private final long bytes;
+
+        Entry() {
+            this(Map.of());
+        }
+
+        private Entry(Map<String, Long> sizes) {
+            this.sizes = sizes;
+            this.bytes = sizes.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        Entry with(String key, long size) {
+            Map<String, Long> updated = new HashMap<>(sizes);
+            updated.put(key, size);
+            return new Entry(Map.copyOf(updated));
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.mini.image;
+
+import com.mini.dto.DownloadFile;
+import com.mini.executor.TaskExecutors;
+import com.mini.service.FileService;
+import com.mini.storage.ContentCodec;
+import com.mini.storage.SegmentStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 按需生成图片的缩略图或转码版本
+ * <p>
+ * 派生文件首次请求时在 image 线程池中生成并写入 {@link DerivativeCache}，之后直接读取缓存文件。
+ * <ul>
+ *     <li>同一原图同一规格的并发请求只生成一次，其余请求等待同一结果</li>
+ *     <li>线程池队列已满时立即拒绝，等待超过 timeout 时返回超时，生成任务继续执行，结果仍会缓存</li>
+ *     <li>先只读取图片头部得到尺寸，像素数超过 max-source-pixels 的原图不解码；大幅缩小时按比例跳行列解码，
+ *     只保留约两倍目标尺寸的像素再插值缩放，降低解码的内存与CPU开销</li>
+ * </ul>
+ * GIF 只取第一帧。
+ */
+@Slf4j
+@Component
+public class ImageDerivativeService {
+
+    @Value("${file.image.types:jpg,jpeg,png,gif}")
+    private String imageTypes;
+
+    @Value("${file.image.formats:jpg,png}")
+    private String outputFormats;
+
+    @Value("${file.image.max-dimension:2048}")
+    private int maxDimension;
+
+    @Value("${file.image.max-source-pixels:50000000}")
+    private long maxSourcePixels;
+
+    @Value("${file.image.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    @Value("${file.image.timeout:30s}")
+    private Duration timeout;
+
+    @Resource
+    private FileService fileService;
+
+    @Resource
+    private DerivativeCache derivativeCache;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Set<String> imageExtensions;
+
+    private Set<String> formats;
+
+    // 记录ID/规格 -> 生成中的任务
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private Counter hitCounter;
+
+    private Counter generatedCounter;
+
+    private Counter sharedCounter;
+
+    private Timer generateTimer;
+
+    @PostConstruct
+    public void init() {
+        imageExtensions = toSet(imageTypes);
+        formats = toSet(outputFormats);
+        // 解码的输入流缓存在内存中，不写临时文件
+        ImageIO.setUseCache(false);
+        hitCounter = Counter.builder("file.image.derivatives").tag("result", "hit")
+                .description("derivative requests served from the derivative cache")
+                .register(meterRegistry);
+        generatedCounter = Counter.builder("file.image.derivatives").tag("result", "generated")
+                .description("derivative requests that generated a new derivative")
+                .register(meterRegistry);
+        sharedCounter = Counter.builder("file.image.derivatives").tag("result", "shared")
+                .description("derivative requests that waited for an in-flight generation")
+                .register(meterRegistry);
+        generateTimer = Timer.builder("file.image.generate")
+                .description("time to decode, resize and encode one derivative")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 解析并校验请求的规格，未指定格式时 png/gif 原图输出 png，其余输出 jpg
+     */
+    public ImageVariant variant(String fileName, Integer width, Integer height, String format) {
+        int w = width == null ? 0 : width;
+        int h = height == null ? 0 : height;
+        if (w < 0 || h < 0 || w > maxDimension || h > maxDimension) {
+            throw new IllegalArgumentException("width and height must be between 0 and " + maxDimension);
+        }
+        if (w == 0 && h == 0) {
+            throw new IllegalArgumentException("width or height is required");
+        }
+        String extension = extension(fileName);
+        if (extension == null || !imageExtensions.contains(extension)) {
+            throw new IllegalArgumentException("not an image: " + fileName);
+        }
+        String output;
+        if (StringUtils.hasText(format)) {
+            output = format.toLowerCase(Locale.ROOT);
+            if ("jpeg".equals(output)) {
+                output = "jpg";
+            }
+            if (!formats.contains(output)) {
+                throw new IllegalArgumentException("unsupported format: " + format + ", allowed: " + formats);
+            }
+        } else {
+            output = ("png".equals(extension) || "gif".equals(extension)) && formats.contains("png") ? "png" : "jpg";
+        }
+        return new ImageVariant(w, h, output);
+    }
+
+    /**
+     * 返回派生文件，不存在时生成
+     *
+     * @throws NoSuchElementException     原图不存在
+     * @throws RejectedExecutionException 图片线程池已满
+     * @throws TimeoutException           等待生成超时
+     */
+    public Derivative derive(String fileName, ImageVariant variant) throws IOException, TimeoutException {
+        DownloadFile source;
+        try {
+            source = fileService.describeFile(fileName);
+        } catch (RuntimeException e) {
+            throw new NoSuchElementException(e.getMessage());
+        }
+        if (source.getId() == null) {
+            throw new NoSuchElementException("file not found: " + fileName);
+        }
+        long id = source.getId();
+        Path path = derivativeCache.lookup(id, variant.key());
+        if (path != null) {
+            hitCounter.increment();
+            return new Derivative(path, source, variant);
+        }
+
+        String flightKey = id + "/" + variant.key();
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> future = inFlight.putIfAbsent(flightKey, created);
+        if (future == null) {
+            future = created;
+            try {
+                taskExecutors.image().execute(() -> {
+                    try {
+                        created.complete(generate(fileName, id, variant));
+                    } catch (Throwable e) {
+                        created.completeExceptionally(e);
+                    } finally {
+                        inFlight.remove(flightKey, created);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(flightKey, created);
+                throw e;
+            }
+        } else {
+            sharedCounter.increment();
+        }
+
+        try {
+            return new Derivative(future.get(timeout.toMillis(), TimeUnit.MILLISECONDS), source, variant);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while generating derivative", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("generate derivative error: " + fileName, cause);
+        }
+    }
+
+    private Path generate(String fileName, long id, ImageVariant variant) throws IOException {
+        // 排队期间可能已由先完成的任务生成
+        Path existing = derivativeCache.lookup(id, variant.key());
+        if (existing != null) {
+            return existing;
+        }
+        long start = System.nanoTime();
+        DownloadFile file = fileService.downloadFile(fileName);
+        BufferedImage image = resize(read(file, variant), variant);
+        Path path = derivativeCache.store(id, variant.key(), out -> write(image, variant.format(), out));
+        generateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        generatedCounter.increment();
+        return path;
+    }
+
+    /**
+     * 读取图片头部校验尺寸，需要大幅缩小时跳行列解码
+     */
+    private BufferedImage read(DownloadFile file, ImageVariant variant) throws IOException {
+        try (InputStream raw = SegmentStore.newInputStream(file);
+             InputStream in = file.getContentEncoding() == null ? raw : ContentCodec.of(file.getContentEncoding()).decode(raw);
+             ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("unsupported image: " + file.getFileName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxSourcePixels) {
+                    throw new IllegalArgumentException("image too large: " + width + "x" + height);
+                }
+                int[] size = variant.fit(width, height);
+                int step = Math.max(1, Math.min(width / (size[0] * 2), height / (size[1] * 2)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage resize(BufferedImage source, ImageVariant variant) {
+        int[] size = variant.fit(source.getWidth(), source.getHeight());
+        // JPEG 不支持透明通道，以白色背景合成
+        boolean alpha = "png".equals(variant.format()) && source.getColorModel().hasAlpha();
+        BufferedImage target = new BufferedImage(size[0], size[1], alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!alpha) {
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, size[0], size[1]);
+            }
+            graphics.drawImage(source, 0, 0, size[0], size[1], null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private void write(BufferedImage image, String format, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg".equals(format) ? "jpeg" : format).next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String extension(String fileName) {
+        String extension = StringUtils.getFilenameExtension(fileName);
+        return extension == null ? null : extension.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> toSet(String values) {
+        return Arrays.stream(values.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .map(value -> value.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * 派生文件及其校验器
+     */
+    public record Derivative(Path path, DownloadFile source, ImageVariant variant) {
+
+        public MediaType mediaType() {
+            return "png".equals(variant.format()) ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG;
+        }
+
+        /**
+         * 由原图 ETag 与规格组成，原图无摘要时使用上传时间
+         */
+        public String etag() {
+            if (source.getEtag() != null) {
+                return "\"" + source.getEtag() + "-" + variant.key() + "\"";
+            }
+            return "W/\"" + Long.toHexString(source.getLastModified()) + "-" + variant.key() + "\"";
+        }
+    }
+}
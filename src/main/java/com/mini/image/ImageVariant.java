@@ -0,0 +1,35 @@
+package com.mini.image;
+
+/**
+ * 图片派生规格：在 width × height 范围内等比缩放（0 表示该方向不限制），不放大，以 format 编码
+ *
+ * @param width  最大宽度（像素）
+ * @param height 最大高度（像素）
+ * @param format 输出格式，jpg 或 png
+ */
+public record ImageVariant(int width, int height, String format) {
+
+    /**
+     * 派生文件名，同一原图的不同规格互不冲突
+     */
+    public String key() {
+        return width + "x" + height + "." + format;
+    }
+
+    /**
+     * 按原图尺寸计算输出尺寸
+     *
+     * @return {宽, 高}
+     */
+    public int[] fit(int sourceWidth, int sourceHeight) {
+        double scale = 1;
+        if (width > 0) {
+            scale = Math.min(scale, (double) width / sourceWidth);
+        }
+        if (height > 0) {
+            scale = Math.min(scale, (double) height / sourceHeight);
+        }
+        return new int[]{Math.max(1, (int) Math.round(sourceWidth * scale)),
+                Math.max(1, (int) Math.round(sourceHeight * scale))};
+    }
+}
@@ -0,0 +1,36 @@
+package com.mini.mapper;
+
+import com.mini.entity.FileBlob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 去重内容块Mapper接口
+ */
+@Mapper
+public interface FileBlobMapper {
+
+    /**
+     * 根据摘要查询内容块
+     */
+    FileBlob selectByDigest(@Param("digest") String digest);
+
+    /**
+     * 新增引用：不存在时插入引用数为1的记录，已存在时引用数加1；在事务中调用时持有该记录的行锁直到提交
+     *
+     * @return 0 表示记录被并发删除、引用未计入，需要重试
+     */
+    int addReference(FileBlob fileBlob);
+
+    /**
+     * 引用数减1
+     */
+    int removeReference(@Param("digest") String digest);
+
+    /**
+     * 删除已无引用的内容块记录
+     *
+     * @return 1 表示已删除，调用方可以删除物理文件
+     */
+    int deleteUnreferenced(@Param("digest") String digest);
+}
@@ -0,0 +1,82 @@
+package com.mini.mapper;
+
+import com.mini.entity.FileInfo;
+import jakarta.annotation.Resource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * MyBatis 插件：fileInfo 表的写操作执行成功后通知 {@link FileInfoChangeListener}
+ * <p>
+ * 在 SQL 层统一拦截，任何调用方通过 {@link FileInfoMapper} 修改元数据，缓存、索引等派生数据都不会遗漏更新。
+ */
+@Component
+@Intercepts(@Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}))
+public class FileInfoChangeInterceptor implements Interceptor {
+
+    private static final String NAMESPACE = FileInfoMapper.class.getName() + ".";
+
+    // 监听者可能依赖 FileInfoMapper，延迟获取以避免循环依赖
+    @Resource
+    private ObjectProvider<FileInfoChangeListener> listeners;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        String statementId = statement.getId();
+        if (!statementId.startsWith(NAMESPACE)) {
+            return result;
+        }
+        Object parameter = invocation.getArgs()[1];
+        switch (statementId.substring(NAMESPACE.length())) {
+            case "update":
+                FileInfo updated = (FileInfo) parameter;
+                listeners.forEach(listener -> listener.onUpdated(updated));
+                break;
+            case "relocate":
+                FileInfo relocated = new FileInfo();
+                relocated.setId((Long) param(parameter, "id"));
+                relocated.setFilePath((String) param(parameter, "filePath"));
+                listeners.forEach(listener -> listener.onUpdated(relocated));
+                break;
+            case "insert":
+                FileInfo inserted = (FileInfo) parameter;
+                listeners.forEach(listener -> listener.onInserted(inserted));
+                break;
+            case "batchInsert":
+                for (Object fileInfo : (Collection<?>) param(parameter, "fileInfos")) {
+                    listeners.forEach(listener -> listener.onInserted((FileInfo) fileInfo));
+                }
+                break;
+            case "deleteById":
+                Long id = (Long) param(parameter, "id");
+                listeners.forEach(listener -> listener.onDeleted(id));
+                break;
+            case "batchDeleteByIds":
+                for (Object deletedId : (Collection<?>) param(parameter, "ids")) {
+                    listeners.forEach(listener -> listener.onDeleted((Long) deletedId));
+                }
+                break;
+            default:
+                break;
+        }
+        return result;
+    }
+
+    private Object param(Object parameter, String name) {
+        if (parameter instanceof Map<?, ?> paramMap) {
+            return paramMap.get(name);
+        }
+        return parameter;
+    }
+}
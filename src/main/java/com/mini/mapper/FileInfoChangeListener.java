@@ -0,0 +1,27 @@
+package com.mini.mapper;
+
+import com.mini.entity.FileInfo;
+
+/**
+ * fileInfo 表变更监听，由 {@link FileInfoChangeInterceptor} 在 SQL 执行成功后回调
+ */
+public interface FileInfoChangeListener {
+
+    /**
+     * 新增记录
+     */
+    default void onInserted(FileInfo fileInfo) {
+    }
+
+    /**
+     * 更新记录，参数中只有非空字段被修改
+     */
+    default void onUpdated(FileInfo fileInfo) {
+    }
+
+    /**
+     * 逻辑删除记录
+     */
+    default void onDeleted(Long id) {
+    }
+}
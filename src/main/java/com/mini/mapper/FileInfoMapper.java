@@ -1,14 +1,17 @@
 package com.mini.mapper;
 
 import com.mini.entity.FileInfo;
-import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * 文件信息Mapper接口
+ * <p>
+ * 实现由 {@code file.metadata.store} 选择（见 {@link com.mini.metadata.MetadataStoreConfig}）：
+ * mysql 为 FileInfoMapper.xml 的 MyBatis 映射，embedded 为本地的 {@link com.mini.metadata.EmbeddedFileInfoMapper}。
  */
-@Mapper
 public interface FileInfoMapper {
     
     /**
@@ -33,20 +36,78 @@ public interface FileInfoMapper {
     
     /**
      * 分页查询文件列表
+     *
+     * @param ids 文件名索引给出的候选ID，为null时不限制
      */
     List<FileInfo> selectPage(@Param("offset") Integer offset, 
                              @Param("pageSize") Integer pageSize,
-                             @Param("fileName") String fileName);
+                             @Param("fileName") String fileName,
+                             @Param("ids") List<Long> ids);
     
+    /**
+     * 游标分页查询文件列表
+     *
+     * @param uploadDate 游标位置的上传时间，为null时从最新的记录开始
+     * @param id         游标位置的ID
+     * @param backward   true 查询游标之前（更新）的记录，结果按时间升序
+     * @param ids        文件名索引给出的候选ID，为null时不限制
+     */
+    List<FileInfo> selectPageByCursor(@Param("uploadDate") LocalDateTime uploadDate,
+                                      @Param("id") Long id,
+                                      @Param("backward") boolean backward,
+                                      @Param("limit") Integer limit,
+                                      @Param("fileName") String fileName,
+                                      @Param("ids") List<Long> ids);
+
     /**
      * 查询总记录数
+     *
+     * @param ids 候选ID，为null时不限制
+     */
+    Long selectCount(@Param("fileName") String fileName, @Param("ids") List<Long> ids);
+
+    /**
+     * 按ID顺序分批查询有效记录的ID与文件名
      */
-    Long selectCount(@Param("fileName") String fileName);
+    List<FileInfo> selectLiveAfterId(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    /**
+     * 按ID顺序分批查询有效记录
+     */
+    List<FileInfo> selectAfterId(@Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    /**
+     * 按 (filePath, id) 升序分批查询路径在 [lower, upper) 内的有效记录的ID与路径
+     *
+     * @param afterPath 上一批最后一条的路径，为null时从 lower 开始
+     * @param afterId   上一批最后一条的ID
+     */
+    List<FileInfo> selectFilePathRange(@Param("lower") String lower,
+                                       @Param("upper") String upper,
+                                       @Param("afterPath") String afterPath,
+                                       @Param("afterId") Long afterId,
+                                       @Param("limit") int limit);
+
+    /**
+     * 统计指向该物理路径的有效记录数
+     */
+    long selectCountByFilePath(@Param("filePath") String filePath);
     
     /**
      * 更新文件信息
      */
     int update(FileInfo fileInfo);
+
+    /**
+     * 段文件整理时移动合并存储的内容：记录仍有效且仍位于 (fromPath, fromOffset) 时改为新位置
+     *
+     * @return 0 表示记录已删除或已被移动
+     */
+    int relocate(@Param("id") Long id,
+                 @Param("fromPath") String fromPath,
+                 @Param("fromOffset") Long fromOffset,
+                 @Param("filePath") String filePath,
+                 @Param("segmentOffset") Long segmentOffset);
     
     /**
      * 根据ID删除文件信息（逻辑删除）
@@ -54,15 +115,31 @@ public interface FileInfoMapper {
     int deleteById(@Param("id") Long id);
     
     /**
-     * 查询7天前的文件
+     * 按 (uploadDate, id) 升序分批查询上传时间早于 cutoff 的有效记录
+     *
+     * @param uploadDate 上一批最后一条的上传时间，为null时从头开始
+     * @param id         上一批最后一条的ID
      */
-    List<FileInfo> selectExpiredFiles();
+    List<FileInfo> selectExpiredAfter(@Param("cutoff") LocalDateTime cutoff,
+                                      @Param("uploadDate") LocalDateTime uploadDate,
+                                      @Param("id") Long id,
+                                      @Param("limit") int limit);
 
     /**
-     * 批量查询文件信息
+     * 统计上传时间早于 cutoff 的有效记录数
+     */
+    long selectExpiredCount(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * 批量查询文件信息（不区分状态）
      */
     List<FileInfo> selectByIds(@Param("ids") List<Long> ids);
 
+    /**
+     * 按文件名批量查询有效记录
+     */
+    List<FileInfo> selectByFileNames(@Param("fileNames") List<String> fileNames);
+
     /**
      * 批量逻辑删除
      */
@@ -0,0 +1,57 @@
+package com.mini.mapper;
+
+import com.mini.entity.IdWorkerLease;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * ID生成器工作节点租约Mapper接口，过期判断统一使用数据库时间
+ */
+@Mapper
+public interface IdWorkerLeaseMapper {
+
+    /**
+     * 根据工作节点ID查询租约
+     */
+    IdWorkerLease selectById(@Param("workerId") int workerId);
+
+    /**
+     * 查询所有已分配过的工作节点ID
+     */
+    List<Integer> selectWorkerIds();
+
+    /**
+     * 查询租约已过期的工作节点ID
+     */
+    List<Integer> selectExpiredWorkerIds();
+
+    /**
+     * 占用从未分配过的工作节点ID
+     *
+     * @return 1 表示占用成功，0 表示已被其他节点抢先
+     */
+    int insert(@Param("workerId") int workerId, @Param("owner") String owner, @Param("ttlSeconds") long ttlSeconds);
+
+    /**
+     * 接管已过期的租约
+     *
+     * @return 1 表示接管成功
+     */
+    int acquireExpired(@Param("workerId") int workerId, @Param("owner") String owner, @Param("ttlSeconds") long ttlSeconds);
+
+    /**
+     * 续约并记录最近发出的ID的时间戳
+     *
+     * @return 0 表示租约已被其他节点接管
+     */
+    int renew(@Param("workerId") int workerId, @Param("owner") String owner,
+              @Param("lastTimestamp") long lastTimestamp, @Param("ttlSeconds") long ttlSeconds);
+
+    /**
+     * 释放租约，其他节点可以立即接管
+     */
+    int release(@Param("workerId") int workerId, @Param("owner") String owner,
+                @Param("lastTimestamp") long lastTimestamp);
+}
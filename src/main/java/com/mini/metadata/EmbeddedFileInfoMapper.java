@@ -0,0 +1,548 @@
+package com.mini.metadata;
+
+import com.mini.entity.FileInfo;
+import com.mini.mapper.FileInfoChangeListener;
+import com.mini.mapper.FileInfoMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.LongDataType;
+import org.h2.mvstore.type.StringDataType;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 基于 H2 MVStore 的单机嵌入式元数据存储，实现 {@link FileInfoMapper} 的全部查询，语义与 FileInfoMapper.xml 一致
+ * <p>
+ * 主表以ID为键保存完整记录，另有三个只收录有效记录（status = 0）的二级索引，对应 MySQL 表上的索引：
+ * <ul>
+ *     <li>(uploadDate, id)：列表分页、游标分页、过期扫描与计数，计数与深分页按键的序号直接定位，不逐条扫描</li>
+ *     <li>(fileName, id)：按文件名查询</li>
+ *     <li>(filePath, id)：存储对账的路径区间扫描与路径引用计数</li>
+ * </ul>
+ * 写操作串行执行，每次调用的主表与索引修改作为一个版本提交，sync 开启时提交后强制刷盘；
+ * MVStore 为追加写入，崩溃后恢复到最后一个完整提交的版本，调用返回前的写入不会丢失。
+ * 读操作不加锁，读到索引与主表之间的中间状态时以主表为准过滤。
+ * <p>
+ * 文件名模糊查询不区分大小写，与 MySQL 默认排序规则的 LIKE 一致；变更回调与 {@link com.mini.mapper.FileInfoChangeInterceptor} 相同。
+ */
+@Slf4j
+public class EmbeddedFileInfoMapper implements FileInfoMapper {
+
+    private static final String MARKER = "";
+
+    // 列表顺序：uploadDate DESC, id DESC
+    private static final Comparator<FileInfo> NEWEST_FIRST = Comparator
+            .comparing(FileInfo::getUploadDate, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(FileInfo::getId)
+            .reversed();
+
+    private final MVStore store;
+
+    private final boolean sync;
+
+    private final ObjectProvider<FileInfoChangeListener> listeners;
+
+    private final MVMap<Long, FileInfo> files;
+
+    private final MVMap<String, String> dateIndex;
+
+    private final MVMap<String, String> nameIndex;
+
+    private final MVMap<String, String> pathIndex;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * @param file        数据文件路径
+     * @param sync        每次写操作提交后是否强制刷盘
+     * @param cacheSizeMb 页缓存大小（MB）
+     */
+    public EmbeddedFileInfoMapper(Path file, boolean sync, int cacheSizeMb,
+                                  ObjectProvider<FileInfoChangeListener> listeners) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.store = new MVStore.Builder()
+                .fileName(file.toString())
+                .cacheSize(cacheSizeMb)
+                // 只在每次写操作结束时提交，后台不会提交主表与索引之间的中间状态
+                .autoCommitDisabled()
+                .open();
+        this.sync = sync;
+        this.listeners = listeners;
+        this.files = store.openMap("fileInfo", new MVMap.Builder<Long, FileInfo>()
+                .keyType(LongDataType.INSTANCE)
+                .valueType(FileInfoDataType.INSTANCE));
+        this.dateIndex = openIndex("idx_uploadDate_id");
+        this.nameIndex = openIndex("idx_fileName");
+        this.pathIndex = openIndex("idx_filePath");
+        log.info("embedded metadata store opened: {}, rows = {}, live = {}", file, files.sizeAsLong(), dateIndex.sizeAsLong());
+    }
+
+    public void close() {
+        store.close();
+    }
+
+    @Override
+    public int insert(FileInfo fileInfo) {
+        return batchInsert(List.of(fileInfo));
+    }
+
+    @Override
+    public int batchInsert(List<FileInfo> fileInfos) {
+        if (fileInfos.isEmpty()) {
+            return 0;
+        }
+        write(() -> {
+            // 与单条多行 INSERT 一致：任一主键冲突时整批不写入
+            Set<Long> ids = new HashSet<>();
+            for (FileInfo fileInfo : fileInfos) {
+                Objects.requireNonNull(fileInfo.getId(), "id");
+                if (!ids.add(fileInfo.getId()) || files.containsKey(fileInfo.getId())) {
+                    throw new DuplicateKeyException("Duplicate entry '" + fileInfo.getId() + "' for key 'fileInfo.PRIMARY'");
+                }
+            }
+            for (FileInfo fileInfo : fileInfos) {
+                FileInfo row = copy(fileInfo);
+                if (row.getStatus() == null) {
+                    row.setStatus(0);
+                }
+                files.put(row.getId(), row);
+                index(row);
+            }
+        });
+        for (FileInfo fileInfo : fileInfos) {
+            listeners.forEach(listener -> listener.onInserted(fileInfo));
+        }
+        return fileInfos.size();
+    }
+
+    @Override
+    public FileInfo selectById(Long id) {
+        FileInfo fileInfo = live(id);
+        return fileInfo == null ? null : copy(fileInfo);
+    }
+
+    @Override
+    public FileInfo selectByFileName(String fileName) {
+        List<FileInfo> matches = selectByFileNames(List.of(fileName));
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    @Override
+    public List<FileInfo> selectPage(Integer offset, Integer pageSize, String fileName, List<Long> ids) {
+        if (ids != null) {
+            List<FileInfo> candidates = liveByIds(ids, nameFilter(fileName));
+            candidates.sort(NEWEST_FIRST);
+            int from = Math.min(offset, candidates.size());
+            return candidates.subList(from, Math.min(from + pageSize, candidates.size()));
+        }
+        Cursor<String, String> cursor = dateIndex.cursor(null, null, true);
+        Predicate<FileInfo> filter = nameFilter(fileName);
+        if (filter == null) {
+            // 无过滤条件时按序号直接跳过 offset 条
+            cursor.skip(offset);
+            return collect(cursor, null, pageSize, 0);
+        }
+        return collect(cursor, filter, pageSize, offset);
+    }
+
+    @Override
+    public List<FileInfo> selectPageByCursor(LocalDateTime uploadDate, Long id, boolean backward, Integer limit,
+                                             String fileName, List<Long> ids) {
+        String position = uploadDate == null ? null : MetadataKeys.dateKey(uploadDate, id);
+        if (ids != null) {
+            List<FileInfo> candidates = liveByIds(ids, nameFilter(fileName));
+            candidates.removeIf(fileInfo -> position != null && compare(fileInfo, position) * (backward ? 1 : -1) <= 0);
+            candidates.sort(backward ? NEWEST_FIRST.reversed() : NEWEST_FIRST);
+            return candidates.subList(0, Math.min(limit, candidates.size()));
+        }
+        // 向后翻页沿时间升序读取游标之后（更新）的记录，向前翻页沿降序读取游标之前的记录
+        String start = null;
+        if (position != null) {
+            start = backward ? dateIndex.higherKey(position) : dateIndex.lowerKey(position);
+            if (start == null) {
+                return new ArrayList<>();
+            }
+        }
+        Cursor<String, String> cursor = dateIndex.cursor(start, null, !backward);
+        return collect(cursor, nameFilter(fileName), limit, 0);
+    }
+
+    @Override
+    public Long selectCount(String fileName, List<Long> ids) {
+        if (ids != null) {
+            return (long) liveByIds(ids, nameFilter(fileName)).size();
+        }
+        Predicate<FileInfo> filter = nameFilter(fileName);
+        if (filter == null) {
+            return dateIndex.sizeAsLong();
+        }
+        long count = 0;
+        Cursor<String, String> cursor = dateIndex.cursor(null);
+        while (cursor.hasNext()) {
+            FileInfo fileInfo = live(MetadataKeys.idOf(cursor.next()));
+            if (fileInfo != null && filter.test(fileInfo)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<FileInfo> selectLiveAfterId(Long afterId, int limit) {
+        return selectAfterId(afterId, limit);
+    }
+
+    @Override
+    public List<FileInfo> selectAfterId(Long afterId, int limit) {
+        List<FileInfo> result = new ArrayList<>(Math.min(limit, 1024));
+        Long start = afterId == null ? null : files.higherKey(afterId);
+        if (afterId != null && start == null) {
+            return result;
+        }
+        Cursor<Long, FileInfo> cursor = files.cursor(start);
+        while (result.size() < limit && cursor.hasNext()) {
+            cursor.next();
+            FileInfo fileInfo = cursor.getValue();
+            if (isLive(fileInfo)) {
+                result.add(copy(fileInfo));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<FileInfo> selectFilePathRange(String lower, String upper, String afterPath, Long afterId, int limit) {
+        List<FileInfo> result = new ArrayList<>(Math.min(limit, 1024));
+        String start = afterPath != null
+                ? pathIndex.higherKey(MetadataKeys.stringKey(afterPath, afterId))
+                : pathIndex.ceilingKey(lower);
+        if (start == null) {
+            return result;
+        }
+        Cursor<String, String> cursor = pathIndex.cursor(start);
+        while (result.size() < limit && cursor.hasNext()) {
+            String key = cursor.next();
+            if (MetadataKeys.stringValue(key).compareTo(upper) >= 0) {
+                break;
+            }
+            FileInfo fileInfo = live(MetadataKeys.idOf(key));
+            if (fileInfo != null) {
+                result.add(copy(fileInfo));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long selectCountByFilePath(String filePath) {
+        return rank(pathIndex, MetadataKeys.stringUpper(filePath)) - rank(pathIndex, MetadataKeys.stringLower(filePath));
+    }
+
+    @Override
+    public int update(FileInfo fileInfo) {
+        boolean[] found = new boolean[1];
+        write(() -> {
+            FileInfo current = files.get(fileInfo.getId());
+            if (current == null) {
+                return;
+            }
+            found[0] = true;
+            // 与 FileInfoMapper.xml 的 update 一致，只修改这五个字段中的非空字段
+            FileInfo updated = copy(current);
+            if (fileInfo.getFileName() != null) {
+                updated.setFileName(fileInfo.getFileName());
+            }
+            if (fileInfo.getFilePath() != null) {
+                updated.setFilePath(fileInfo.getFilePath());
+            }
+            if (fileInfo.getFileSize() != null) {
+                updated.setFileSize(fileInfo.getFileSize());
+            }
+            if (fileInfo.getStatus() != null) {
+                updated.setStatus(fileInfo.getStatus());
+            }
+            if (fileInfo.getUploadDate() != null) {
+                updated.setUploadDate(fileInfo.getUploadDate());
+            }
+            replace(current, updated);
+        });
+        listeners.forEach(listener -> listener.onUpdated(fileInfo));
+        return found[0] ? 1 : 0;
+    }
+
+    @Override
+    public int relocate(Long id, String fromPath, Long fromOffset, String filePath, Long segmentOffset) {
+        boolean[] moved = new boolean[1];
+        write(() -> {
+            FileInfo current = live(id);
+            if (current == null || !Objects.equals(current.getFilePath(), fromPath)
+                    || !Objects.equals(current.getSegmentOffset(), fromOffset)) {
+                return;
+            }
+            moved[0] = true;
+            FileInfo updated = copy(current);
+            updated.setFilePath(filePath);
+            updated.setSegmentOffset(segmentOffset);
+            replace(current, updated);
+        });
+        if (moved[0]) {
+            FileInfo relocated = new FileInfo();
+            relocated.setId(id);
+            relocated.setFilePath(filePath);
+            listeners.forEach(listener -> listener.onUpdated(relocated));
+        }
+        return moved[0] ? 1 : 0;
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        return batchDeleteByIds(List.of(id));
+    }
+
+    @Override
+    public List<FileInfo> selectExpiredAfter(LocalDateTime cutoff, LocalDateTime uploadDate, Long id, int limit) {
+        List<FileInfo> result = new ArrayList<>(Math.min(limit, 1024));
+        String end = MetadataKeys.datePrefix(cutoff);
+        String start = uploadDate == null ? dateIndex.firstKey() : dateIndex.higherKey(MetadataKeys.dateKey(uploadDate, id));
+        if (start == null) {
+            return result;
+        }
+        Cursor<String, String> cursor = dateIndex.cursor(start);
+        while (result.size() < limit && cursor.hasNext()) {
+            String key = cursor.next();
+            if (key.compareTo(end) >= 0) {
+                break;
+            }
+            FileInfo fileInfo = live(MetadataKeys.idOf(key));
+            if (fileInfo != null) {
+                result.add(copy(fileInfo));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long selectExpiredCount(LocalDateTime cutoff) {
+        return rank(dateIndex, MetadataKeys.datePrefix(cutoff));
+    }
+
+    @Override
+    public List<FileInfo> selectByIds(List<Long> ids) {
+        List<FileInfo> result = new ArrayList<>(ids.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            FileInfo fileInfo = files.get(id);
+            if (fileInfo != null) {
+                result.add(copy(fileInfo));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<FileInfo> selectByFileNames(List<String> fileNames) {
+        List<FileInfo> result = new ArrayList<>(fileNames.size());
+        for (String fileName : new LinkedHashSet<>(fileNames)) {
+            String lower = MetadataKeys.stringLower(fileName);
+            String key = nameIndex.ceilingKey(lower);
+            while (key != null && key.startsWith(lower) && key.length() == lower.length() + 16) {
+                FileInfo fileInfo = live(MetadataKeys.idOf(key));
+                if (fileInfo != null && fileName.equals(fileInfo.getFileName())) {
+                    result.add(copy(fileInfo));
+                }
+                key = nameIndex.higherKey(key);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int batchDeleteByIds(List<Long> ids) {
+        int[] count = new int[1];
+        write(() -> {
+            for (Long id : new LinkedHashSet<>(ids)) {
+                FileInfo current = files.get(id);
+                if (current == null) {
+                    continue;
+                }
+                count[0]++;
+                FileInfo deleted = copy(current);
+                deleted.setStatus(1);
+                replace(current, deleted);
+            }
+        });
+        for (Long id : ids) {
+            listeners.forEach(listener -> listener.onDeleted(id));
+        }
+        return count[0];
+    }
+
+    /**
+     * 串行执行一次写操作并提交，失败时回滚到上一个版本
+     */
+    private void write(Runnable mutation) {
+        writeLock.lock();
+        try {
+            try {
+                mutation.run();
+            } catch (RuntimeException e) {
+                store.rollback();
+                throw e;
+            }
+            store.commit();
+            if (sync) {
+                store.sync();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void replace(FileInfo current, FileInfo updated) {
+        unindex(current);
+        files.put(updated.getId(), updated);
+        index(updated);
+    }
+
+    private void index(FileInfo fileInfo) {
+        if (!isLive(fileInfo)) {
+            return;
+        }
+        long id = fileInfo.getId();
+        if (fileInfo.getUploadDate() != null) {
+            dateIndex.put(MetadataKeys.dateKey(fileInfo.getUploadDate(), id), MARKER);
+        }
+        if (fileInfo.getFileName() != null) {
+            nameIndex.put(MetadataKeys.stringKey(fileInfo.getFileName(), id), MARKER);
+        }
+        if (fileInfo.getFilePath() != null) {
+            pathIndex.put(MetadataKeys.stringKey(fileInfo.getFilePath(), id), MARKER);
+        }
+    }
+
+    private void unindex(FileInfo fileInfo) {
+        if (!isLive(fileInfo)) {
+            return;
+        }
+        long id = fileInfo.getId();
+        if (fileInfo.getUploadDate() != null) {
+            dateIndex.remove(MetadataKeys.dateKey(fileInfo.getUploadDate(), id));
+        }
+        if (fileInfo.getFileName() != null) {
+            nameIndex.remove(MetadataKeys.stringKey(fileInfo.getFileName(), id));
+        }
+        if (fileInfo.getFilePath() != null) {
+            pathIndex.remove(MetadataKeys.stringKey(fileInfo.getFilePath(), id));
+        }
+    }
+
+    /**
+     * 沿 (uploadDate, id) 索引读取有效记录
+     *
+     * @param filter 为null时不过滤
+     * @param skip   跳过的匹配记录数
+     */
+    private List<FileInfo> collect(Cursor<String, String> cursor, Predicate<FileInfo> filter, int limit, int skip) {
+        List<FileInfo> result = new ArrayList<>(Math.min(limit, 1024));
+        int skipped = 0;
+        while (result.size() < limit && cursor.hasNext()) {
+            FileInfo fileInfo = live(MetadataKeys.idOf(cursor.next()));
+            if (fileInfo == null || (filter != null && !filter.test(fileInfo))) {
+                continue;
+            }
+            if (skipped < skip) {
+                skipped++;
+                continue;
+            }
+            result.add(copy(fileInfo));
+        }
+        return result;
+    }
+
+    private List<FileInfo> liveByIds(List<Long> ids, Predicate<FileInfo> filter) {
+        List<FileInfo> result = new ArrayList<>(ids.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            FileInfo fileInfo = live(id);
+            if (fileInfo != null && (filter == null || filter.test(fileInfo))) {
+                result.add(copy(fileInfo));
+            }
+        }
+        return result;
+    }
+
+    private FileInfo live(Long id) {
+        FileInfo fileInfo = id == null ? null : files.get(id);
+        return isLive(fileInfo) ? fileInfo : null;
+    }
+
+    /**
+     * 比较记录与索引位置的先后，记录在前时返回负数
+     */
+    private static int compare(FileInfo fileInfo, String position) {
+        return MetadataKeys.dateKey(fileInfo.getUploadDate(), fileInfo.getId()).compareTo(position);
+    }
+
+    private static boolean isLive(FileInfo fileInfo) {
+        return fileInfo != null && Objects.equals(fileInfo.getStatus(), 0);
+    }
+
+    /**
+     * LIKE '%keyword%'，不区分大小写；关键字为空时返回null
+     */
+    private static Predicate<FileInfo> nameFilter(String fileName) {
+        if (!StringUtils.hasText(fileName)) {
+            return null;
+        }
+        String keyword = fileName.toLowerCase(Locale.ROOT);
+        return fileInfo -> fileInfo.getFileName() != null && fileInfo.getFileName().toLowerCase(Locale.ROOT).contains(keyword);
+    }
+
+    private static long rank(MVMap<String, String> index, String key) {
+        long position = index.getKeyIndex(key);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * MVStore 中的对象被页缓存共享，读写时都复制，调用方可以自由修改返回的记录
+     */
+    private static FileInfo copy(FileInfo source) {
+        FileInfo target = new FileInfo();
+        target.setId(source.getId());
+        target.setFileName(source.getFileName());
+        target.setFilePath(source.getFilePath());
+        target.setFileSize(source.getFileSize());
+        target.setStatus(source.getStatus());
+        target.setUploadDate(source.getUploadDate());
+        target.setContentHash(source.getContentHash());
+        target.setContentEncoding(source.getContentEncoding());
+        target.setEtag(source.getEtag());
+        target.setSegmentOffset(source.getSegmentOffset());
+        target.setSegmentLength(source.getSegmentLength());
+        return target;
+    }
+
+    private MVMap<String, String> openIndex(String name) {
+        return store.openMap(name, new MVMap.Builder<String, String>()
+                .keyType(StringDataType.INSTANCE)
+                .valueType(StringDataType.INSTANCE));
+    }
+}
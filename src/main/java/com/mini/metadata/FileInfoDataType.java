@@ -0,0 +1,144 @@
+package com.mini.metadata;
+
+import com.mini.entity.FileInfo;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * {@link FileInfo} 在 MVStore 中的紧凑二进制格式，避免默认的 Java 序列化
+ * <p>
+ * 格式：空值标志字节，其后依次为各非空字段；字符串为 变长长度 + UTF-8 字节，时间为 UTC 纪元微秒。
+ * 新增字段只能追加在末尾并占用新的标志位。
+ */
+final class FileInfoDataType extends BasicDataType<FileInfo> {
+
+    static final FileInfoDataType INSTANCE = new FileInfoDataType();
+
+    private static final int ID = 1;
+    private static final int FILE_SIZE = 1 << 1;
+    private static final int STATUS = 1 << 2;
+    private static final int UPLOAD_DATE = 1 << 3;
+    private static final int FILE_NAME = 1 << 4;
+    private static final int FILE_PATH = 1 << 5;
+    private static final int CONTENT_HASH = 1 << 6;
+    private static final int CONTENT_ENCODING = 1 << 7;
+    private static final int ETAG = 1 << 8;
+    private static final int SEGMENT_OFFSET = 1 << 9;
+    private static final int SEGMENT_LENGTH = 1 << 10;
+
+    private FileInfoDataType() {
+    }
+
+    @Override
+    public int getMemory(FileInfo fileInfo) {
+        return 96 + 2 * (length(fileInfo.getFileName()) + length(fileInfo.getFilePath()) + length(fileInfo.getContentHash())
+                + length(fileInfo.getContentEncoding()) + length(fileInfo.getEtag()));
+    }
+
+    @Override
+    public void write(WriteBuffer buffer, FileInfo fileInfo) {
+        int present = (fileInfo.getId() != null ? ID : 0)
+                | (fileInfo.getFileSize() != null ? FILE_SIZE : 0)
+                | (fileInfo.getStatus() != null ? STATUS : 0)
+                | (fileInfo.getUploadDate() != null ? UPLOAD_DATE : 0)
+                | (fileInfo.getFileName() != null ? FILE_NAME : 0)
+                | (fileInfo.getFilePath() != null ? FILE_PATH : 0)
+                | (fileInfo.getContentHash() != null ? CONTENT_HASH : 0)
+                | (fileInfo.getContentEncoding() != null ? CONTENT_ENCODING : 0)
+                | (fileInfo.getEtag() != null ? ETAG : 0)
+                | (fileInfo.getSegmentOffset() != null ? SEGMENT_OFFSET : 0)
+                | (fileInfo.getSegmentLength() != null ? SEGMENT_LENGTH : 0);
+        buffer.putVarInt(present);
+        if (fileInfo.getId() != null) {
+            buffer.putLong(fileInfo.getId());
+        }
+        if (fileInfo.getFileSize() != null) {
+            buffer.putVarLong(fileInfo.getFileSize());
+        }
+        if (fileInfo.getStatus() != null) {
+            buffer.putVarInt(fileInfo.getStatus());
+        }
+        if (fileInfo.getUploadDate() != null) {
+            buffer.putLong(MetadataKeys.toMicros(fileInfo.getUploadDate()));
+        }
+        putString(buffer, fileInfo.getFileName());
+        putString(buffer, fileInfo.getFilePath());
+        putString(buffer, fileInfo.getContentHash());
+        putString(buffer, fileInfo.getContentEncoding());
+        putString(buffer, fileInfo.getEtag());
+        if (fileInfo.getSegmentOffset() != null) {
+            buffer.putVarLong(fileInfo.getSegmentOffset());
+        }
+        if (fileInfo.getSegmentLength() != null) {
+            buffer.putVarLong(fileInfo.getSegmentLength());
+        }
+    }
+
+    @Override
+    public FileInfo read(ByteBuffer buffer) {
+        int present = DataUtils.readVarInt(buffer);
+        FileInfo fileInfo = new FileInfo();
+        if ((present & ID) != 0) {
+            fileInfo.setId(buffer.getLong());
+        }
+        if ((present & FILE_SIZE) != 0) {
+            fileInfo.setFileSize(DataUtils.readVarLong(buffer));
+        }
+        if ((present & STATUS) != 0) {
+            fileInfo.setStatus(DataUtils.readVarInt(buffer));
+        }
+        if ((present & UPLOAD_DATE) != 0) {
+            LocalDateTime uploadDate = MetadataKeys.fromMicros(buffer.getLong());
+            fileInfo.setUploadDate(uploadDate);
+        }
+        if ((present & FILE_NAME) != 0) {
+            fileInfo.setFileName(getString(buffer));
+        }
+        if ((present & FILE_PATH) != 0) {
+            fileInfo.setFilePath(getString(buffer));
+        }
+        if ((present & CONTENT_HASH) != 0) {
+            fileInfo.setContentHash(getString(buffer));
+        }
+        if ((present & CONTENT_ENCODING) != 0) {
+            fileInfo.setContentEncoding(getString(buffer));
+        }
+        if ((present & ETAG) != 0) {
+            fileInfo.setEtag(getString(buffer));
+        }
+        if ((present & SEGMENT_OFFSET) != 0) {
+            fileInfo.setSegmentOffset(DataUtils.readVarLong(buffer));
+        }
+        if ((present & SEGMENT_LENGTH) != 0) {
+            fileInfo.setSegmentLength(DataUtils.readVarLong(buffer));
+        }
+        return fileInfo;
+    }
+
+    @Override
+    public FileInfo[] createStorage(int size) {
+        return new FileInfo[size];
+    }
+
+    private static void putString(WriteBuffer buffer, String value) {
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putVarInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[DataUtils.readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,83 @@
+package com.mini.metadata;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 二级索引键的编码：字段拼接为字符串，字符串的字典序与 SQL 中的多列排序一致
+ * <ul>
+ *     <li>数值编码为16位十六进制并翻转符号位，负数排在正数之前</li>
+ *     <li>字符串字段后接 '\0' 分隔，前缀相同时较短的值排在前面，与按列比较一致</li>
+ * </ul>
+ */
+final class MetadataKeys {
+
+    static final char SEPARATOR = '\0';
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private MetadataKeys() {
+    }
+
+    /**
+     * (uploadDate, id) 索引键
+     */
+    static String dateKey(LocalDateTime uploadDate, long id) {
+        return hex(toMicros(uploadDate)) + hex(id);
+    }
+
+    /**
+     * uploadDate 早于该值的键都小于返回值
+     */
+    static String datePrefix(LocalDateTime uploadDate) {
+        return hex(toMicros(uploadDate));
+    }
+
+    /**
+     * (字符串字段, id) 索引键
+     */
+    static String stringKey(String value, long id) {
+        return value + SEPARATOR + hex(id);
+    }
+
+    /**
+     * 字段值等于 value 的键都不小于返回值
+     */
+    static String stringLower(String value) {
+        return value + SEPARATOR;
+    }
+
+    /**
+     * 字段值等于 value 的键都小于返回值
+     */
+    static String stringUpper(String value) {
+        return value + (char) (SEPARATOR + 1);
+    }
+
+    static String stringValue(String key) {
+        return key.substring(0, key.length() - 17);
+    }
+
+    static long idOf(String key) {
+        return Long.parseUnsignedLong(key.substring(key.length() - 16), 16) ^ Long.MIN_VALUE;
+    }
+
+    static long toMicros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + dateTime.getNano() / 1000;
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                Math.floorMod(micros, 1_000_000) * 1000, ZoneOffset.UTC);
+    }
+
+    private static String hex(long value) {
+        long flipped = value ^ Long.MIN_VALUE;
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (flipped & 0xf)];
+            flipped >>>= 4;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,43 @@
+package com.mini.metadata;
+
+import com.mini.mapper.FileInfoChangeListener;
+import com.mini.mapper.FileInfoMapper;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.mapper.MapperFactoryBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * 文件元数据存储配置，按 {@code file.metadata.store} 注册唯一的 {@link FileInfoMapper}
+ * <ul>
+ *     <li>mysql（默认）：FileInfoMapper.xml 的 MyBatis 映射，写操作由 {@link com.mini.mapper.FileInfoChangeInterceptor} 通知监听者</li>
+ *     <li>embedded：本地磁盘上的 {@link EmbeddedFileInfoMapper}，适用于单实例部署；去重（fileBlob）与工作节点租约（idWorkerLease）仍使用数据库</li>
+ * </ul>
+ */
+@Configuration
+public class MetadataStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "file.metadata.store", havingValue = "mysql", matchIfMissing = true)
+    public MapperFactoryBean<FileInfoMapper> fileInfoMapper(SqlSessionFactory sqlSessionFactory) {
+        MapperFactoryBean<FileInfoMapper> factoryBean = new MapperFactoryBean<>(FileInfoMapper.class);
+        factoryBean.setSqlSessionFactory(sqlSessionFactory);
+        return factoryBean;
+    }
+
+    @Bean(name = "fileInfoMapper", destroyMethod = "close")
+    @ConditionalOnProperty(name = "file.metadata.store", havingValue = "embedded")
+    public EmbeddedFileInfoMapper embeddedFileInfoMapper(
+            @Value("${file.metadata.embedded.path:/data/metadata/fileInfo.mv.db}") String path,
+            @Value("${file.metadata.embedded.sync:true}") boolean sync,
+            @Value("${file.metadata.embedded.cache-size:64}") int cacheSizeMb,
+            ObjectProvider<FileInfoChangeListener> listeners) throws IOException {
+        return new EmbeddedFileInfoMapper(Paths.get(path), sync, cacheSizeMb, listeners);
+    }
+}
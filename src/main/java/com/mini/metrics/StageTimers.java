@@ -0,0 +1,69 @@
+package com.mini.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求内部各阶段的耗时，导出为 {@code file.service.stage} 计时器，以 stage 标签区分
+ * <p>
+ * 计时器在启动时创建，记录时只需一次 {@link System#nanoTime()} 与一次查表。
+ */
+@Component
+public class StageTimers {
+
+    /**
+     * 请求阶段
+     */
+    public enum Stage {
+        // 文件名、类型与大小校验
+        VALIDATE("validate"),
+        // 写盘、fsync 与提交到最终位置，不含等待网络数据的时间
+        DISK_WRITE("disk_write"),
+        // 元数据写入（写后合并日志）
+        METADATA_INSERT("metadata_insert"),
+        // 元数据查询（缓存或数据库）
+        METADATA_LOOKUP("metadata_lookup"),
+        // 读取文件并写出响应
+        FILE_READ("file_read");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+
+    @PostConstruct
+    public void init() {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("file.service.stage")
+                    .description("time spent in a request stage")
+                    .tag("stage", stage.tag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 记录从 startNanos（{@link System#nanoTime()}）到现在的耗时
+     */
+    public void record(Stage stage, long startNanos) {
+        recordNanos(stage, System.nanoTime() - startNanos);
+    }
+
+    public void recordNanos(Stage stage, long nanos) {
+        timers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,152 @@
+package com.mini.netty;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 独立端口的下载数据面
+ * <p>
+ * 只提供 {@code GET/HEAD /download/{fileName}}，与 MVC 下载接口共用 {@link com.mini.service.FileService} 的查询、
+ * 缓存失效与失效文件入队逻辑，响应语义（校验器、条件请求、Range、压缩表示）与 {@link com.mini.nio.FileRangeWriter} 一致。
+ * <ul>
+ *     <li>文件内容以 {@link io.netty.channel.DefaultFileRegion} 发送，Linux 上使用 epoll 原生传输（sendfile），
+ *     否则回退到 NIO（transferTo）</li>
+ *     <li>发送过程不占用线程，下载并发数取决于连接数而不是 Tomcat 线程数；元数据查询与解压在I/O线程池中执行，不阻塞事件循环</li>
+ *     <li>支持 keep-alive，连接在 idle-timeout 内没有任何读写进展时关闭</li>
+ * </ul>
+ * 默认关闭，开启后与 Tomcat 端口并存。
+ */
+@Slf4j
+@Component
+public class DataPlaneServer {
+
+    @Value("${file.data-plane.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.data-plane.host:0.0.0.0}")
+    private String host;
+
+    @Value("${file.data-plane.port:8081}")
+    private int port;
+
+    @Value("${file.data-plane.event-loops:0}")
+    private int eventLoops;
+
+    @Value("${file.data-plane.native:true}")
+    private boolean preferNative;
+
+    @Value("${file.data-plane.idle-timeout:60s}")
+    private Duration idleTimeout;
+
+    @Value("${file.data-plane.max-header-size:8192}")
+    private int maxHeaderSize;
+
+    @Resource
+    private DownloadHandler downloadHandler;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private EventLoopGroup bossGroup;
+
+    private EventLoopGroup workerGroup;
+
+    private ChannelGroup channels;
+
+    private Channel serverChannel;
+
+    @PostConstruct
+    public void start() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        boolean epoll = preferNative && Epoll.isAvailable();
+        Class<? extends ServerChannel> channelClass;
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(1, new DefaultThreadFactory("data-plane-boss"));
+            workerGroup = new EpollEventLoopGroup(eventLoops, new DefaultThreadFactory("data-plane-worker"));
+            channelClass = EpollServerSocketChannel.class;
+        } else {
+            bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("data-plane-boss"));
+            workerGroup = new NioEventLoopGroup(eventLoops, new DefaultThreadFactory("data-plane-worker"));
+            channelClass = NioServerSocketChannel.class;
+        }
+        channels = new DefaultChannelGroup("data-plane", GlobalEventExecutor.INSTANCE);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(channelClass)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        channels.add(ch);
+                        ch.pipeline()
+                                .addLast(new HttpServerCodec(4096, maxHeaderSize, 8192))
+                                .addLast(new HttpServerKeepAliveHandler())
+                                // 下载请求没有请求体，聚合只为得到完整的请求对象
+                                .addLast(new HttpObjectAggregator(8192))
+                                // 观察输出缓冲区的进展，大文件发送期间不会被判定为空闲
+                                .addLast(new IdleStateHandler(true, 0, 0, idleTimeout.toMillis(), TimeUnit.MILLISECONDS))
+                                .addLast(downloadHandler);
+                    }
+                });
+        try {
+            serverChannel = bootstrap.bind(host, port).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            stop();
+            throw e;
+        }
+        Gauge.builder("file.data.plane.connections", channels, ChannelGroup::size)
+                .description("open connections on the download data plane")
+                .register(meterRegistry);
+        log.info("download data plane listening on {}:{}, transport = {}", host, port, epoll ? "epoll" : "nio");
+    }
+
+    /**
+     * 停止接受新连接，关闭现有连接后释放事件循环
+     */
+    @PreDestroy
+    public void stop() {
+        if (bossGroup == null) {
+            return;
+        }
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        channels.close().awaitUninterruptibly();
+        bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS);
+        workerGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).awaitUninterruptibly();
+        bossGroup = null;
+        log.info("download data plane stopped");
+    }
+}
@@ -0,0 +1,520 @@
+package com.mini.netty;
+
+import com.mini.cache.FileContentCache;
+import com.mini.dto.DownloadFile;
+import com.mini.executor.TaskExecutors;
+import com.mini.metrics.StageTimers;
+import com.mini.nio.DownloadValidators;
+import com.mini.service.FileService;
+import com.mini.storage.ContentCodec;
+import com.mini.storage.SegmentStore;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据面的下载请求处理，所有连接共用一个实例
+ * <p>
+ * 元数据查询与打开文件在I/O线程池中执行，期间暂停读取该连接；同一次读取中已解码出的流水线请求暂存在连接上，
+ * 前一个响应写完后再处理，保证按顺序响应。没有暂存的请求时恢复读取，非 keep-alive 请求由 {@link io.netty.handler.codec.http.HttpServerKeepAliveHandler} 关闭连接。
+ * 事件循环只以非阻塞方式向I/O线程池提交任务，线程池已满时立即返回503。
+ * 多段 Range 以 multipart/byteranges 输出，各段仍以 FileRegion 发送；需要解压的内容在I/O线程池中逐块读取解压后写回。
+ */
+@Slf4j
+@Component
+@ChannelHandler.Sharable
+public class DownloadHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final String PATH_PREFIX = "/download/";
+
+    private static final String CRLF = "\r\n";
+
+    private static final int CHUNK_SIZE = 65536;
+
+    private static final AttributeKey<Connection> CONNECTION = AttributeKey.valueOf("dataPlaneConnection");
+
+    // 解压输出时I/O线程池已满的重试间隔
+    private static final long RESUME_RETRY_MILLIS = 10;
+
+    // 下载响应的 Cache-Control，为空时不输出
+    @Value("${file.download.cache-control:no-cache}")
+    private String cacheControl;
+
+    @Resource
+    private FileService fileService;
+
+    @Resource
+    private FileContentCache fileContentCache;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private StageTimers stageTimers;
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        Connection connection = connection(ctx);
+        if (connection.busy) {
+            // 暂停读取前已解码出的流水线请求，等前一个响应写完
+            connection.pending.add(request.retain());
+            return;
+        }
+        handle(ctx, request);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Connection connection = ctx.channel().attr(CONNECTION).get();
+        if (connection != null) {
+            FullHttpRequest pending;
+            while ((pending = connection.pending.poll()) != null) {
+                pending.release();
+            }
+        }
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 处理一个请求，响应写完之前同一连接上的其他请求暂存，在事件循环中执行
+     */
+    private void handle(ChannelHandlerContext ctx, FullHttpRequest request) {
+        connection(ctx).busy = true;
+        if (!request.decoderResult().isSuccess()) {
+            sendStatus(ctx, request.protocolVersion(), HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+        HttpMethod method = request.method();
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            sendStatus(ctx, request.protocolVersion(), HttpResponseStatus.METHOD_NOT_ALLOWED);
+            return;
+        }
+        String fileName = fileName(request.uri());
+        if (fileName == null) {
+            sendStatus(ctx, request.protocolVersion(), HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+        ctx.channel().config().setAutoRead(false);
+        // 请求对象在本方法返回后释放，只保留所需的请求头
+        DownloadRequest download = new DownloadRequest(fileName, request.protocolVersion(),
+                HttpMethod.HEAD.equals(method), request.headers().copy());
+        boolean submitted;
+        try {
+            // 不能使用 execute：BLOCK 策略会在线程池满时阻塞事件循环上的所有连接
+            submitted = taskExecutors.io().tryExecute(() -> serve(ctx, download));
+        } catch (RuntimeException e) {
+            submitted = false;
+        }
+        if (!submitted) {
+            log.warn("data plane download rejected, io executor is saturated: {}", fileName);
+            sendStatus(ctx, request.protocolVersion(), HttpResponseStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            ctx.close();
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        // 多为客户端中断连接
+        log.debug("data plane connection error: {}", cause.getMessage());
+        ctx.close();
+    }
+
+    /**
+     * 在I/O线程池中执行，响应写入由 Netty 转交到连接所属的事件循环
+     */
+    private void serve(ChannelHandlerContext ctx, DownloadRequest request) {
+        HttpHeaders headers = request.headers();
+        DownloadFile file;
+        try {
+            DownloadFile described = fileService.describeFile(request.fileName());
+            boolean encoded = isEncoded(described, headers);
+            String etag = DownloadValidators.etag(described, encoded);
+            if (DownloadValidators.isNotModified(described, etag, headers.get(HttpHeaderNames.IF_NONE_MATCH),
+                    headers.get(HttpHeaderNames.IF_MODIFIED_SINCE))) {
+                FullHttpResponse response = new DefaultFullHttpResponse(request.version(), HttpResponseStatus.NOT_MODIFIED);
+                writeValidators(described, etag, response.headers());
+                if (!encoded) {
+                    // 304 没有响应体，携带与200一致的长度才能保持连接；压缩表示的长度需访问磁盘，此时由 keep-alive 处理器关闭连接
+                    HttpUtil.setContentLength(response, described.getOriginalLength());
+                }
+                finish(ctx, ctx.writeAndFlush(response));
+                return;
+            }
+            // 沿用已查询的元数据，HEAD 请求能由元数据得出长度时不访问磁盘
+            file = request.head() && described.getLength() > 0 ? described : fileService.statFile(described);
+        } catch (Exception e) {
+            log.warn("data plane download failed: {}, {}", request.fileName(), e.getMessage());
+            sendStatus(ctx, request.version(), HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+        long readStart = System.nanoTime();
+        ChannelFuture future;
+        try {
+            future = write(ctx, file, request);
+        } catch (IOException e) {
+            log.warn("data plane download error: {}, {}", request.fileName(), e.getMessage());
+            stageTimers.record(StageTimers.Stage.FILE_READ, readStart);
+            ctx.close();
+            return;
+        }
+        future.addListener(f -> stageTimers.record(StageTimers.Stage.FILE_READ, readStart));
+        finish(ctx, future);
+    }
+
+    /**
+     * 与 {@link com.mini.nio.FileRangeWriter#write} 相同的响应规则：完整内容（200）、单段或多段（206）、不可满足（416），
+     * HEAD 请求只输出响应头
+     *
+     * @return 最后一次写入的结果
+     */
+    private ChannelFuture write(ChannelHandlerContext ctx, DownloadFile file, DownloadRequest request) throws IOException {
+        HttpHeaders requestHeaders = request.headers();
+        long length = file.getLength();
+        boolean encoded = isEncoded(file, requestHeaders);
+        String etag = DownloadValidators.etag(file, encoded);
+
+        HttpResponse response = new DefaultHttpResponse(request.version(), HttpResponseStatus.OK);
+        HttpHeaders headers = response.headers();
+        writeValidators(file, etag, headers);
+        headers.set(HttpHeaderNames.CONTENT_DISPOSITION, ContentDisposition.formData()
+                .name("attachment")
+                .filename(URLEncoder.encode(file.getFileName(), StandardCharsets.UTF_8))
+                .build()
+                .toString());
+        headers.set(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        if (file.getContentEncoding() != null && !encoded) {
+            return writeDecoded(ctx, file, response, request.head());
+        }
+        if (encoded) {
+            headers.set(HttpHeaderNames.CONTENT_ENCODING, file.getContentEncoding());
+        }
+        headers.set(HttpHeaderNames.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges = DownloadValidators.matchesIfRange(file, etag, requestHeaders.get(HttpHeaderNames.IF_RANGE))
+                ? DownloadValidators.parseRanges(requestHeaders.get(HttpHeaderNames.RANGE)) : List.of();
+        if (ranges.isEmpty()) {
+            HttpUtil.setContentLength(response, length);
+            ctx.write(response);
+            return writeRegions(ctx, file, new long[][]{{0, length - 1}}, null, null, request.head());
+        }
+
+        long[][] regions = DownloadValidators.toRegions(ranges, length);
+        if (regions == null) {
+            FullHttpResponse unsatisfiable = new DefaultFullHttpResponse(request.version(),
+                    HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            writeValidators(file, etag, unsatisfiable.headers());
+            unsatisfiable.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + length);
+            HttpUtil.setContentLength(unsatisfiable, 0);
+            return ctx.writeAndFlush(unsatisfiable);
+        }
+
+        response.setStatus(HttpResponseStatus.PARTIAL_CONTENT);
+        if (regions.length == 1) {
+            long start = regions[0][0];
+            long end = regions[0][1];
+            headers.set(HttpHeaderNames.CONTENT_RANGE, DownloadValidators.contentRange(start, end, length));
+            HttpUtil.setContentLength(response, end - start + 1);
+            ctx.write(response);
+            return writeRegions(ctx, file, regions, null, null, request.head());
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        byte[][] partHeaders = new byte[regions.length][];
+        long contentLength = 0;
+        for (int i = 0; i < regions.length; i++) {
+            partHeaders[i] = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaderNames.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + CRLF
+                    + HttpHeaderNames.CONTENT_RANGE + ": " + DownloadValidators.contentRange(regions[i][0], regions[i][1], length) + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            contentLength += partHeaders[i].length + regions[i][1] - regions[i][0] + 1;
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+        headers.set(HttpHeaderNames.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        HttpUtil.setContentLength(response, contentLength);
+        ctx.write(response);
+        return writeRegions(ctx, file, regions, partHeaders, closing, request.head());
+    }
+
+    /**
+     * 依次写出各区间：已缓存的内容直接包装堆外缓冲区，否则以 FileRegion 零拷贝发送
+     *
+     * @param partHeaders 多段响应中各段之前的分隔头，单段时为null
+     * @param closing     多段响应的结束分隔符，单段时为null
+     */
+    private ChannelFuture writeRegions(ChannelHandlerContext ctx, DownloadFile file, long[][] regions,
+                                       byte[][] partHeaders, byte[] closing, boolean headOnly) {
+        if (headOnly || file.getLength() == 0) {
+            return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        ByteBuffer cached = fileContentCache.get(file);
+        for (int i = 0; i < regions.length; i++) {
+            if (partHeaders != null) {
+                ctx.write(Unpooled.wrappedBuffer(partHeaders[i]));
+            }
+            long position = regions[i][0];
+            long count = regions[i][1] - regions[i][0] + 1;
+            if (cached != null) {
+                ctx.write(Unpooled.wrappedBuffer(cached.slice((int) position, (int) count)));
+                fileContentCache.recordServed(count);
+            } else {
+                // 每段独立打开文件，释放时关闭
+                ctx.write(new DefaultFileRegion(file.getPath().toFile(), file.getOffset() + position, count));
+            }
+        }
+        if (closing != null) {
+            ctx.write(Unpooled.wrappedBuffer(closing));
+        }
+        return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    /**
+     * 边读边解压输出完整的原始内容，忽略 Range；读盘与解压在I/O线程池中按块进行，不占用事件循环
+     *
+     * @return 最后一块写完后完成
+     */
+    private ChannelFuture writeDecoded(ChannelHandlerContext ctx, DownloadFile file, HttpResponse response,
+                                       boolean headOnly) throws IOException {
+        response.headers().set(HttpHeaderNames.ACCEPT_RANGES, "none");
+        HttpUtil.setContentLength(response, file.getOriginalLength());
+        if (headOnly) {
+            ctx.write(response);
+            return ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        InputStream in = ContentCodec.of(file.getContentEncoding()).decode(SegmentStore.newInputStream(file));
+        ctx.write(response);
+        DecodedBodyWriter writer = new DecodedBodyWriter(ctx, in);
+        writer.run();
+        return writer.promise;
+    }
+
+    /**
+     * 响应写完后处理暂存的下一个请求，没有暂存的请求时恢复读取；写入失败时关闭连接
+     */
+    private void finish(ChannelHandlerContext ctx, ChannelFuture future) {
+        future.addListener((ChannelFutureListener) f -> {
+            if (!f.isSuccess()) {
+                log.debug("data plane write error: {}", f.cause() == null ? null : f.cause().getMessage());
+                f.channel().close();
+                return;
+            }
+            Connection connection = connection(ctx);
+            connection.busy = false;
+            if (!f.channel().isActive()) {
+                return;
+            }
+            FullHttpRequest next = connection.pending.poll();
+            if (next == null) {
+                f.channel().config().setAutoRead(true);
+                return;
+            }
+            try {
+                handle(ctx, next);
+            } finally {
+                next.release();
+            }
+        });
+    }
+
+    private void writeValidators(DownloadFile file, String etag, HttpHeaders headers) {
+        headers.set(HttpHeaderNames.ETAG, etag);
+        if (file.getLastModified() > 0) {
+            headers.set(HttpHeaderNames.LAST_MODIFIED, new Date(file.getLastModified()));
+        }
+        if (StringUtils.hasText(cacheControl)) {
+            headers.set(HttpHeaderNames.CACHE_CONTROL, cacheControl);
+        }
+        if (file.getContentEncoding() != null) {
+            headers.set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        }
+    }
+
+    private void sendStatus(ChannelHandlerContext ctx, HttpVersion version, HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(version, status);
+        HttpUtil.setContentLength(response, 0);
+        finish(ctx, ctx.writeAndFlush(response));
+    }
+
+    private static Connection connection(ChannelHandlerContext ctx) {
+        Attribute<Connection> attribute = ctx.channel().attr(CONNECTION);
+        Connection connection = attribute.get();
+        if (connection == null) {
+            connection = new Connection();
+            attribute.set(connection);
+        }
+        return connection;
+    }
+
+    private static boolean isEncoded(DownloadFile file, HttpHeaders headers) {
+        return DownloadValidators.isEncoded(file, headers.get(HttpHeaderNames.ACCEPT_ENCODING));
+    }
+
+    /**
+     * 从请求路径中取出文件名，不是 /download/{fileName} 形式时返回null
+     */
+    private static String fileName(String uri) {
+        String path = new QueryStringDecoder(uri).path();
+        if (!path.startsWith(PATH_PREFIX)) {
+            return null;
+        }
+        String fileName = path.substring(PATH_PREFIX.length());
+        return !StringUtils.hasText(fileName) || fileName.contains("/") ? null : fileName;
+    }
+
+    /**
+     * 解压后的响应体：在I/O线程中读取一块写出，输出缓冲区写满时等上一块写完再提交下一次读取，
+     * 内存中最多保留高水位加一块的数据
+     */
+    private final class DecodedBodyWriter implements Runnable {
+
+        private final ChannelHandlerContext ctx;
+
+        private final InputStream in;
+
+        private final ChannelPromise promise;
+
+        DecodedBodyWriter(ChannelHandlerContext ctx, InputStream in) {
+            this.ctx = ctx;
+            this.in = in;
+            this.promise = ctx.newPromise();
+        }
+
+        @Override
+        public void run() {
+            try {
+                ChannelFuture last;
+                do {
+                    ByteBuf chunk = ctx.alloc().buffer(CHUNK_SIZE);
+                    try {
+                        // 解压流单次读取可能少于请求的字节数，填满一块或读到末尾再写出
+                        int read;
+                        do {
+                            read = chunk.writeBytes(in, chunk.writableBytes());
+                        } while (read >= 0 && chunk.isWritable());
+                    } catch (IOException | RuntimeException e) {
+                        chunk.release();
+                        throw e;
+                    }
+                    if (!chunk.isReadable()) {
+                        chunk.release();
+                        close();
+                        ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(this::complete);
+                        return;
+                    }
+                    last = ctx.writeAndFlush(new DefaultHttpContent(chunk));
+                } while (ctx.channel().isWritable());
+                last.addListener(this::resume);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * 上一块写完后继续，在事件循环中执行，只能以非阻塞方式提交
+         */
+        private void resume(Future<? super Void> written) {
+            if (!written.isSuccess()) {
+                fail(written.cause());
+                return;
+            }
+            boolean submitted;
+            try {
+                submitted = taskExecutors.io().tryExecute(this);
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            if (!submitted) {
+                // 线程池已满，稍后重试；已开始的响应不能再改为503
+                ctx.executor().schedule(() -> resume(written), RESUME_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void complete(Future<? super Void> written) {
+            if (written.isSuccess()) {
+                promise.trySuccess();
+            } else {
+                promise.tryFailure(written.cause());
+            }
+        }
+
+        private void fail(Throwable cause) {
+            close();
+            promise.tryFailure(cause);
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.debug("close decoded stream error: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 连接上的请求处理状态，只在连接所属的事件循环中访问
+     */
+    private static final class Connection {
+
+        // 有请求正在处理，响应尚未写完
+        private boolean busy;
+
+        private final Queue<FullHttpRequest> pending = new ArrayDeque<>();
+    }
+
+    private record DownloadRequest(String fileName, HttpVersion version, boolean head, HttpHeaders headers) {
+    }
+}
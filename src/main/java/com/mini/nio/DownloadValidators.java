@@ -0,0 +1,178 @@
+package com.mini.nio;
+
+import com.mini.dto.DownloadFile;
+import org.springframework.http.HttpRange;
+import org.springframework.util.StringUtils;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * 下载协商的公共规则：内容编码、实体标签、条件请求与 Range，只依赖请求头字符串，
+ * 由 Servlet 下载路径（{@link FileRangeWriter}）与 Netty 数据面共用
+ */
+public final class DownloadValidators {
+
+    private DownloadValidators() {
+    }
+
+    /**
+     * 判断 Accept-Encoding 是否接受指定编码：显式列出且 q 不为0，或未显式列出但 * 的 q 不为0
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] params = element.split(";");
+            String coding = params[0].trim();
+            boolean accepted = quality(params) > 0;
+            if (coding.equalsIgnoreCase(encoding)) {
+                return accepted;
+            }
+            if ("*".equals(coding)) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    /**
+     * 压缩存储的文件是否以压缩表示输出
+     */
+    public static boolean isEncoded(DownloadFile file, String acceptEncoding) {
+        return file.getContentEncoding() != null && acceptsEncoding(acceptEncoding, file.getContentEncoding());
+    }
+
+    /**
+     * 当前表示的实体标签：强标签为原始内容摘要，压缩表示附加编码名
+     */
+    public static String etag(DownloadFile file, boolean encoded) {
+        String suffix = encoded ? "-" + file.getContentEncoding() : "";
+        if (file.getEtag() != null) {
+            return "\"" + file.getEtag() + suffix + "\"";
+        }
+        return "W/\"" + Long.toHexString(file.getOriginalLength()) + "-" + Long.toHexString(file.getLastModified()) + suffix + "\"";
+    }
+
+    /**
+     * If-None-Match 存在时按弱比较判断，忽略 If-Modified-Since；否则按秒比较 If-Modified-Since
+     */
+    public static boolean isNotModified(DownloadFile file, String etag, String ifNoneMatch, String ifModifiedSince) {
+        if (StringUtils.hasText(ifNoneMatch)) {
+            String opaque = opaqueTag(etag);
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if ("*".equals(candidate) || opaque.equals(opaqueTag(candidate))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (file.getLastModified() <= 0) {
+            return false;
+        }
+        long since = parseDate(ifModifiedSince);
+        return since >= 0 && file.getLastModified() / 1000 * 1000 <= since;
+    }
+
+    /**
+     * If-Range 是否与当前表示匹配，未携带时视为匹配
+     */
+    public static boolean matchesIfRange(DownloadFile file, String etag, String ifRange) {
+        if (!StringUtils.hasText(ifRange)) {
+            return true;
+        }
+        // If-Range 要求强比较，弱标签一律视为不匹配
+        if (ifRange.startsWith("\"")) {
+            return !etag.startsWith("W/") && ifRange.trim().equals(etag);
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        // HTTP 日期精度为秒
+        return parseDate(ifRange) == file.getLastModified() / 1000 * 1000;
+    }
+
+    /**
+     * 解析 Range 头，格式非法时返回空列表（按完整下载处理）
+     */
+    public static List<HttpRange> parseRanges(String rangeHeader) {
+        if (!StringUtils.hasText(rangeHeader)) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return List.of();
+        }
+    }
+
+    /**
+     * 将 Range 转换为闭区间 [start, end]，任一区间不可满足或多段总长超过文件长度时返回 null
+     */
+    public static long[][] toRegions(List<HttpRange> ranges, long length) {
+        long[][] regions = new long[ranges.size()][];
+        long total = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            HttpRange range = ranges.get(i);
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (start > end) {
+                return null;
+            }
+            regions[i] = new long[]{start, end};
+            total += end - start + 1;
+        }
+        // 防止通过大量重叠区间放大输出
+        if (regions.length > 1 && total > length) {
+            return null;
+        }
+        return regions;
+    }
+
+    public static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * 解析 RFC 1123 格式的 HTTP 日期，缺失或非法时返回 -1
+     */
+    public static long parseDate(String value) {
+        if (!StringUtils.hasText(value)) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,275 @@
+package com.mini.nio;
+
+import com.mini.cache.FileContentCache;
+import com.mini.dto.DownloadFile;
+import com.mini.storage.ContentCodec;
+import com.mini.storage.SegmentStore;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以零拷贝方式输出文件内容，支持 Range / If-Range 断点续传与分段下载
+ * <p>
+ * 容器支持 sendfile 时（Tomcat NIO 连接器）直接交由容器发送，否则通过 {@link FileChannel#transferTo} 写出，
+ * 每次下载占用的堆内存与文件大小无关。已进入 {@link FileContentCache} 的小文件直接从堆外缓冲区写出。
+ * <p>
+ * 压缩存储的文件：请求的 Accept-Encoding 接受该编码时原样输出存储的压缩内容（附 Content-Encoding，
+ * Range 针对压缩后的表示），否则边读边解压输出完整内容，此时不支持 Range。
+ * <p>
+ * 校验器：ETag 为上传时计算的原始内容 SHA-256，压缩表示附加编码名以区分；无摘要的旧记录使用由长度与上传时间生成的弱 ETag。
+ * Last-Modified 取上传时间。条件请求由 {@link #checkNotModified} 只按元数据判断，不访问磁盘。
+ */
+@Slf4j
+@Component
+public class FileRangeWriter {
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_FILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String CRLF = "\r\n";
+
+    // 小文件走 sendfile 收益不大，低于该大小直接 transferTo
+    @Value("${file.download.sendfile-min-size:49152}")
+    private long sendfileMinSize;
+
+    // 下载响应的 Cache-Control，为空时不输出
+    @Value("${file.download.cache-control:no-cache}")
+    private String cacheControl;
+
+    @Resource
+    private FileContentCache fileContentCache;
+
+    /**
+     * 输出校验器并处理 If-None-Match / If-Modified-Since，文件描述只需元数据
+     *
+     * @return true 表示已响应304，无需再输出内容
+     */
+    public boolean checkNotModified(DownloadFile file, HttpServletRequest request, HttpServletResponse response) {
+        String etag = DownloadValidators.etag(file, isEncoded(file, request));
+        writeValidators(file, etag, response);
+        if (!DownloadValidators.isNotModified(file, etag, request.getHeader(HttpHeaders.IF_NONE_MATCH),
+                request.getHeader(HttpHeaders.IF_MODIFIED_SINCE))) {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * 按请求头输出文件：完整内容（200）、单段（206）、多段 multipart/byteranges（206）或不可满足（416）；
+     * HEAD 请求只输出响应头
+     */
+    public void write(DownloadFile file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length = file.getLength();
+        boolean encoded = isEncoded(file, request);
+        String etag = DownloadValidators.etag(file, encoded);
+        writeValidators(file, etag, response);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.formData()
+                .name("attachment")
+                .filename(URLEncoder.encode(file.getFileName(), StandardCharsets.UTF_8))
+                .build()
+                .toString());
+        if (file.getContentEncoding() != null && !encoded) {
+            writeDecoded(file, request, response);
+            return;
+        }
+        if (encoded) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, file.getContentEncoding());
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        List<HttpRange> ranges = DownloadValidators.matchesIfRange(file, etag, request.getHeader(HttpHeaders.IF_RANGE))
+                ? DownloadValidators.parseRanges(request.getHeader(HttpHeaders.RANGE)) : List.of();
+        if (ranges.isEmpty()) {
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setContentLengthLong(length);
+            transfer(file, cachedContent(file, request), 0, length, request, response);
+            return;
+        }
+
+        long[][] regions = DownloadValidators.toRegions(ranges, length);
+        if (regions == null) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (regions.length == 1) {
+            long start = regions[0][0];
+            long end = regions[0][1];
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, DownloadValidators.contentRange(start, end, length));
+            response.setContentLengthLong(end - start + 1);
+            transfer(file, cachedContent(file, request), start, end - start + 1, request, response);
+            return;
+        }
+        writeMultipart(file, cachedContent(file, request), regions, response, isHead(request));
+    }
+
+    /**
+     * HEAD 请求不读取内容，也不计入缓存准入
+     */
+    private ByteBuffer cachedContent(DownloadFile file, HttpServletRequest request) {
+        return isHead(request) ? null : fileContentCache.get(file);
+    }
+
+    private static boolean isEncoded(DownloadFile file, HttpServletRequest request) {
+        return DownloadValidators.isEncoded(file, request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    private void writeValidators(DownloadFile file, String etag, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        if (file.getLastModified() > 0) {
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.getLastModified());
+        }
+        if (StringUtils.hasText(cacheControl)) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        if (file.getContentEncoding() != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    private static boolean isHead(HttpServletRequest request) {
+        return "HEAD".equalsIgnoreCase(request.getMethod());
+    }
+
+    /**
+     * 边读边解压输出完整的原始内容，解压后的位置无法直接定位，忽略 Range
+     */
+    private void writeDecoded(DownloadFile file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setContentLengthLong(file.getOriginalLength());
+        if (isHead(request)) {
+            return;
+        }
+        ContentCodec codec = ContentCodec.of(file.getContentEncoding());
+        try (InputStream in = codec.decode(SegmentStore.newInputStream(file))) {
+            in.transferTo(response.getOutputStream());
+        }
+    }
+
+    /**
+     * @param cached   缓存的文件内容，为null时从文件读取
+     * @param headOnly 只输出响应头
+     */
+    private void writeMultipart(DownloadFile file, ByteBuffer cached, long[][] regions,
+                                HttpServletResponse response, boolean headOnly) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        long length = file.getLength();
+        List<byte[]> partHeaders = new ArrayList<>(regions.length);
+        long contentLength = 0;
+        for (long[] region : regions) {
+            byte[] header = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + DownloadValidators.contentRange(region[0], region[1], length) + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + region[1] - region[0] + 1;
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (headOnly) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        if (cached != null) {
+            for (int i = 0; i < regions.length; i++) {
+                out.write(partHeaders.get(i));
+                write(cached, regions[i][0], regions[i][1] - regions[i][0] + 1, out);
+            }
+            out.write(closing);
+            return;
+        }
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < regions.length; i++) {
+                out.write(partHeaders.get(i));
+                transferTo(channel, file.getOffset() + regions[i][0], regions[i][1] - regions[i][0] + 1, target);
+            }
+        }
+        out.write(closing);
+    }
+
+    /**
+     * 输出单个连续区间：优先使用缓存内容，其次容器支持时使用 sendfile
+     */
+    private void transfer(DownloadFile file, ByteBuffer cached, long position, long count,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (isHead(request)) {
+            return;
+        }
+        if (cached != null) {
+            write(cached, position, count, response.getOutputStream());
+            return;
+        }
+        if (count >= sendfileMinSize && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_FILE_START_ATTR, file.getOffset() + position);
+            request.setAttribute(SENDFILE_FILE_END_ATTR, file.getOffset() + position + count);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+            transferTo(channel, file.getOffset() + position, count, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+
+    private void transferTo(FileChannel channel, long position, long count, WritableByteChannel target) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("file truncated during transfer");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * 写出缓存内容的一个区间。Tomcat 的输出流直接接受 ByteBuffer，内容从堆外缓冲区复制到套接字缓冲区，不经过堆内数组
+     */
+    private void write(ByteBuffer cached, long position, long count, OutputStream out) throws IOException {
+        ByteBuffer region = cached.slice((int) position, (int) count);
+        if (out instanceof CoyoteOutputStream coyoteOutputStream) {
+            coyoteOutputStream.write(region);
+        } else {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (region.hasRemaining()) {
+                target.write(region);
+            }
+        }
+        fileContentCache.recordServed(count);
+    }
+}
@@ -0,0 +1,176 @@
+package com.mini.nio;
+
+import com.google.common.io.ByteStreams;
+import com.mini.batch.InvalidFileQueue;
+import com.mini.dto.DownloadFile;
+import com.mini.storage.ContentCodec;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 将多个文件边读边打包为 ZIP 直接写入响应
+ * <p>
+ * 不生成临时文件，也不缓冲整个压缩包：每个请求只占用一个固定大小的复制缓冲区和一个 Deflater，内存占用与压缩包大小无关。
+ * <ul>
+ *     <li>扩展名在 {@code stored-types} 中的文件本身已压缩，以 STORED 方式存入，只需预先读一遍计算 CRC，不消耗压缩 CPU</li>
+ *     <li>压缩存储的文件边读边解压后以 DEFLATED 方式存入</li>
+ *     <li>合并存储在段文件中的文件只读取其所在区间</li>
+ *     <li>响应开始后才发现文件缺失时跳过该文件并交由失效队列核实，已输出的内容无法撤回</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class ZipStreamWriter {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    @Value("${file.download.zip.stored-types:jpg,jpeg,png,gif,zip,rar,docx,xlsx,pdf}")
+    private String storedTypes;
+
+    @Value("${file.download.zip.level:1}")
+    private int level;
+
+    @Resource
+    private InvalidFileQueue invalidFileQueue;
+
+    private Set<String> storedExtensions;
+
+    @PostConstruct
+    public void init() {
+        storedExtensions = Arrays.stream(storedTypes.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .map(type -> type.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * 按顺序打包输出，重名文件追加序号
+     */
+    public void write(List<DownloadFile> files, String archiveName, HttpServletResponse response) throws IOException {
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(URLEncoder.encode(archiveName, StandardCharsets.UTF_8))
+                .build()
+                .toString());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Set<String> entryNames = new HashSet<>();
+        ZipOutputStream zip = new ZipOutputStream(response.getOutputStream(), StandardCharsets.UTF_8);
+        zip.setLevel(level);
+        for (DownloadFile file : files) {
+            try (FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ)) {
+                ZipEntry entry = new ZipEntry(uniqueName(file.getFileName(), entryNames));
+                if (file.getLastModified() > 0) {
+                    entry.setTime(file.getLastModified());
+                }
+                if (file.getContentEncoding() != null) {
+                    writeDecoded(zip, entry, file, channel, buffer);
+                } else if (isStored(file.getFileName())) {
+                    writeStored(zip, entry, file, channel, buffer);
+                } else {
+                    zip.putNextEntry(entry);
+                    copy(content(file, channel), zip, buffer);
+                }
+                zip.closeEntry();
+            } catch (NoSuchFileException e) {
+                log.warn("skip missing file in zip: {}", file.getPath());
+                invalidFileQueue.offer(file.getId());
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private void writeStored(ZipOutputStream zip, ZipEntry entry, DownloadFile file, FileChannel channel,
+                             byte[] buffer) throws IOException {
+        // STORED 条目需在写入前给出大小与CRC
+        long size = file.getOffset() == 0 ? channel.size() : file.getLength();
+        CRC32 crc = new CRC32();
+        ByteBuffer chunk = ByteBuffer.wrap(buffer);
+        long position = 0;
+        while (position < size) {
+            chunk.clear().limit((int) Math.min(buffer.length, size - position));
+            int read = channel.read(chunk, file.getOffset() + position);
+            if (read < 0) {
+                throw new IOException("file truncated during zip");
+            }
+            crc.update(buffer, 0, read);
+            position += read;
+        }
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        copy(content(file, channel), zip, buffer);
+    }
+
+    private void writeDecoded(ZipOutputStream zip, ZipEntry entry, DownloadFile file, FileChannel channel,
+                              byte[] buffer) throws IOException {
+        zip.putNextEntry(entry);
+        InputStream in = ContentCodec.of(file.getContentEncoding()).decode(content(file, channel));
+        try {
+            copy(in, zip, buffer);
+        } finally {
+            // 释放解压器，通道由调用方关闭
+            in.close();
+        }
+    }
+
+    /**
+     * 从文件内容起始位置读取，段文件中只读取该文件的区间
+     */
+    private static InputStream content(DownloadFile file, FileChannel channel) throws IOException {
+        channel.position(file.getOffset());
+        InputStream in = Channels.newInputStream(channel);
+        return file.getOffset() == 0 ? in : ByteStreams.limit(in, file.getLength());
+    }
+
+    private static void copy(InputStream in, ZipOutputStream zip, byte[] buffer) throws IOException {
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            zip.write(buffer, 0, read);
+        }
+    }
+
+    private boolean isStored(String fileName) {
+        String extension = StringUtils.getFilenameExtension(fileName);
+        return extension != null && storedExtensions.contains(extension.toLowerCase(Locale.ROOT));
+    }
+
+    private static String uniqueName(String fileName, Set<String> entryNames) {
+        String name = fileName;
+        String base = StringUtils.stripFilenameExtension(fileName);
+        String extension = StringUtils.getFilenameExtension(fileName);
+        for (int i = 1; !entryNames.add(name); i++) {
+            name = base + " (" + i + ")" + (extension == null ? "" : "." + extension);
+        }
+        return name;
+    }
+}
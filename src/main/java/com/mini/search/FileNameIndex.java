@@ -0,0 +1,381 @@
+package com.mini.search;
+
+import com.mini.dto.IndexCheckResult;
+import com.mini.entity.FileInfo;
+import com.mini.executor.TaskExecutors;
+import com.mini.mapper.FileInfoChangeListener;
+import com.mini.mapper.FileInfoMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 文件名子串搜索的三元组（trigram）倒排索引
+ * <p>
+ * 每个有效文件分配一个连续的 int 序号，倒排表以 RoaringBitmap 保存序号集合；
+ * 查询时对关键字的全部三元组求交集得到候选ID，再由数据库按主键取回并用 LIKE 精确过滤。
+ * <ul>
+ *     <li>启动后在I/O线程池中按ID分批全量构建，构建完成前查询回退到 LIKE 扫描</li>
+ *     <li>通过 {@link FileInfoChangeListener} 随上传、删除增量维护；删除只清除有效位，倒排表中的失效序号在定期重建时清理</li>
+ *     <li>关键字不足三个字符或候选过多时返回 null，由调用方回退到 LIKE 扫描</li>
+ * </ul>
+ * 索引只包含本节点可见的变更，多副本部署时依赖定期重建收敛。
+ */
+@Slf4j
+@Component
+public class FileNameIndex implements FileInfoChangeListener {
+
+    private static final int GRAM_LENGTH = 3;
+
+    @Value("${file.search.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.search.index.max-candidates:5000}")
+    private int maxCandidates;
+
+    @Value("${file.search.index.batch-size:5000}")
+    private int batchSize;
+
+    @Resource
+    private FileInfoMapper fileInfoMapper;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 受lock保护
+    private IndexData data = new IndexData();
+
+    // 重建期间的增量变更，重建完成后回放到新索引；不在重建时为null，受lock保护
+    private List<Consumer<IndexData>> pendingChanges;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile boolean ready;
+
+    private Counter indexQueries;
+
+    private Counter fallbackQueries;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("file.search.index.names", this, index -> index.read(d -> (long) d.live.getCardinality()))
+                .description("live file names in the trigram index")
+                .register(meterRegistry);
+        Gauge.builder("file.search.index.trigrams", this, index -> index.read(d -> (long) d.postings.size()))
+                .description("distinct trigrams in the index")
+                .register(meterRegistry);
+        indexQueries = Counter.builder("file.search.queries").tag("source", "index").register(meterRegistry);
+        fallbackQueries = Counter.builder("file.search.queries").tag("source", "scan").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (enabled) {
+            taskExecutors.db().submit(this::rebuild);
+        }
+    }
+
+    /**
+     * 每天定时重建，清理倒排表中已删除的序号并合并其他节点的变更
+     */
+    @Scheduled(cron = "${file.search.index.rebuild-cron:0 30 3 * * ?}")
+    public void scheduledRebuild() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 全量重建索引，重建期间旧索引继续提供查询
+     *
+     * @return false 表示已有重建在进行
+     */
+    public boolean rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            setPendingChanges(new ArrayList<>());
+            IndexData fresh = new IndexData();
+            long afterId = 0;
+            while (true) {
+                List<FileInfo> batch = fileInfoMapper.selectLiveAfterId(afterId, batchSize);
+                for (FileInfo fileInfo : batch) {
+                    fresh.add(fileInfo.getId(), fileInfo.getFileName());
+                }
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+            fresh.optimize();
+            lock.writeLock().lock();
+            try {
+                pendingChanges.forEach(change -> change.accept(fresh));
+                pendingChanges = null;
+                data = fresh;
+                log.info("file name index rebuilt, names = {}, trigrams = {}, bytes = {}, cost = {} ms",
+                        fresh.live.getCardinality(), fresh.postings.size(), fresh.sizeInBytes(),
+                        System.currentTimeMillis() - start);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready = true;
+            return true;
+        } catch (RuntimeException e) {
+            setPendingChanges(null);
+            log.error("file name index rebuild error", e);
+            return true;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 查询文件名包含关键字（不区分大小写）的候选ID，候选集可能包含误匹配，需由调用方精确过滤
+     *
+     * @return 候选ID列表；索引无法服务该查询时返回null
+     */
+    public List<Long> search(String keyword) {
+        if (!enabled || !ready) {
+            fallbackQueries.increment();
+            return null;
+        }
+        long[] grams = trigrams(normalize(keyword));
+        if (grams.length == 0) {
+            fallbackQueries.increment();
+            return null;
+        }
+        List<Long> ids = read(d -> d.candidates(grams, maxCandidates));
+        if (ids == null) {
+            fallbackQueries.increment();
+        } else {
+            indexQueries.increment();
+        }
+        return ids;
+    }
+
+    /**
+     * 与数据库对比一致性，按ID分批流式比较，不在内存中保留数据库全量数据
+     */
+    public IndexCheckResult check() {
+        RoaringBitmap seen = new RoaringBitmap();
+        long databaseCount = 0;
+        long missing = 0;
+        long afterId = 0;
+        while (true) {
+            List<FileInfo> batch = fileInfoMapper.selectLiveAfterId(afterId, batchSize);
+            databaseCount += batch.size();
+            missing += read(d -> {
+                long batchMissing = 0;
+                for (FileInfo fileInfo : batch) {
+                    int ordinal = d.idToOrdinal.get(fileInfo.getId());
+                    if (ordinal < 0 || !d.live.contains(ordinal)) {
+                        batchMissing++;
+                    } else {
+                        seen.add(ordinal);
+                    }
+                }
+                return batchMissing;
+            });
+            if (batch.size() < batchSize) {
+                break;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+        IndexCheckResult result = new IndexCheckResult();
+        result.setReady(ready);
+        result.setDatabaseCount(databaseCount);
+        result.setMissingInIndex(missing);
+        read(d -> {
+            result.setIndexedCount((long) d.live.getCardinality());
+            result.setStaleInIndex((long) RoaringBitmap.andNotCardinality(d.live, seen));
+            result.setTrigramCount((long) d.postings.size());
+            return null;
+        });
+        return result;
+    }
+
+    @Override
+    public void onInserted(FileInfo fileInfo) {
+        if (fileInfo.getStatus() != null && fileInfo.getStatus() != 0) {
+            return;
+        }
+        write(d -> d.add(fileInfo.getId(), fileInfo.getFileName()));
+    }
+
+    @Override
+    public void onUpdated(FileInfo fileInfo) {
+        if (fileInfo.getStatus() != null && fileInfo.getStatus() != 0) {
+            write(d -> d.remove(fileInfo.getId()));
+        } else if (fileInfo.getFileName() != null) {
+            write(d -> {
+                d.remove(fileInfo.getId());
+                d.add(fileInfo.getId(), fileInfo.getFileName());
+            });
+        }
+    }
+
+    @Override
+    public void onDeleted(Long id) {
+        write(d -> d.remove(id));
+    }
+
+    private void setPendingChanges(List<Consumer<IndexData>> changes) {
+        lock.writeLock().lock();
+        try {
+            pendingChanges = changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void write(Consumer<IndexData> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(data);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private <T> T read(Function<IndexData, T> query) {
+        lock.readLock().lock();
+        try {
+            return query.apply(data);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 拆分去重后的三元组，每个三元组的三个 UTF-16 字符编码进一个 long
+     */
+    private static long[] trigrams(String text) {
+        if (text.length() < GRAM_LENGTH) {
+            return new long[0];
+        }
+        long[] grams = new long[text.length() - GRAM_LENGTH + 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    /**
+     * 索引数据，非线程安全，由外层读写锁保护
+     */
+    private static final class IndexData {
+
+        private final Map<Long, RoaringBitmap> postings = new HashMap<>();
+
+        // 有效序号
+        private final RoaringBitmap live = new RoaringBitmap();
+
+        private final LongIntHashMap idToOrdinal = new LongIntHashMap();
+
+        private long[] ordinalToId = new long[1024];
+
+        private int nextOrdinal;
+
+        void add(Long id, String fileName) {
+            if (id == null || fileName == null) {
+                return;
+            }
+            int existing = idToOrdinal.get(id);
+            if (existing >= 0 && live.contains(existing)) {
+                return;
+            }
+            int ordinal = nextOrdinal++;
+            if (ordinal == ordinalToId.length) {
+                ordinalToId = Arrays.copyOf(ordinalToId, ordinalToId.length + (ordinalToId.length >> 1));
+            }
+            ordinalToId[ordinal] = id;
+            idToOrdinal.put(id, ordinal);
+            for (long gram : trigrams(normalize(fileName))) {
+                postings.computeIfAbsent(gram, key -> new RoaringBitmap()).add(ordinal);
+            }
+            live.add(ordinal);
+        }
+
+        void remove(Long id) {
+            if (id == null) {
+                return;
+            }
+            int ordinal = idToOrdinal.get(id);
+            if (ordinal >= 0) {
+                live.remove(ordinal);
+            }
+        }
+
+        /**
+         * 从最短的倒排表开始求交集
+         */
+        List<Long> candidates(long[] grams, int limit) {
+            RoaringBitmap[] lists = new RoaringBitmap[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = postings.get(grams[i]);
+                if (lists[i] == null) {
+                    return List.of();
+                }
+            }
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.getCardinality(), b.getCardinality()));
+            RoaringBitmap result = RoaringBitmap.and(lists[0], live);
+            for (int i = 1; i < lists.length && !result.isEmpty(); i++) {
+                result.and(lists[i]);
+            }
+            if (result.getCardinality() > limit) {
+                return null;
+            }
+            List<Long> ids = new ArrayList<>(result.getCardinality());
+            result.forEach((int ordinal) -> ids.add(ordinalToId[ordinal]));
+            return ids;
+        }
+
+        void optimize() {
+            postings.values().forEach(RoaringBitmap::runOptimize);
+            live.runOptimize();
+        }
+
+        long sizeInBytes() {
+            long bytes = live.getLongSizeInBytes() + (long) ordinalToId.length * Long.BYTES;
+            for (RoaringBitmap posting : postings.values()) {
+                bytes += posting.getLongSizeInBytes();
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mini.search;
+
+/**
+ * long -> int 的开放寻址哈希表，避免装箱，每个条目约占 16~24 字节
+ * <p>
+ * 键 0 作为空槽标记，雪花算法ID恒为正数；不支持删除。非线程安全。
+ */
+class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int size;
+
+    private int threshold;
+
+    LongIntHashMap() {
+        this(1024);
+    }
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return 键对应的值，不存在时返回-1
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            long current = keys[index];
+            if (current == key) {
+                return values[index];
+            }
+            if (current == 0) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    void put(long key, int value) {
+        if (key == 0) {
+            throw new IllegalArgumentException("key must not be 0");
+        }
+        if (size >= threshold) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            long current = keys[index];
+            if (current == 0) {
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return;
+            }
+            if (current == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
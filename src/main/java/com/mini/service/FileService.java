@@ -1,8 +1,11 @@
 package com.mini.service;
 
+import com.mini.dto.DownloadFile;
 import com.mini.dto.FileInfoDTO;
 import com.mini.dto.PageResult;
-import org.springframework.web.multipart.MultipartFile;
+import com.mini.dto.UploadFileResult;
+import com.mini.dto.UploadSessionDTO;
+import jakarta.servlet.http.HttpServletRequest;
 import java.util.List;
 
 /**
@@ -11,19 +14,73 @@ import java.util.List;
 public interface FileService {
     
     /**
-     * 批量上传文件
+     * 批量上传文件，流式解析multipart请求体，全部文件落盘后返回逐个文件的结果
      */
-    List<FileInfoDTO> uploadFiles(List<MultipartFile> files);
+    List<UploadFileResult> uploadFiles(HttpServletRequest request);
     
     /**
-     * 下载文件
+     * 创建分片上传会话
+     *
+     * @param chunkSize 分片大小，为null时使用默认值
      */
-    byte[] downloadFile(String fileName);
+    UploadSessionDTO initiateUpload(String fileName, long fileSize, Integer chunkSize);
+
+    /**
+     * 上传一个分片，请求体为分片内容，同一会话的分片可以并行上传
+     */
+    void uploadChunk(String uploadId, int index, HttpServletRequest request);
+
+    /**
+     * 查询分片上传会话状态
+     */
+    UploadSessionDTO getUploadStatus(String uploadId);
+
+    /**
+     * 全部分片到齐后完成上传，返回入库的文件信息
+     */
+    FileInfoDTO completeUpload(String uploadId);
+
+    /**
+     * 放弃分片上传会话并删除已上传的分片
+     */
+    void abortUpload(String uploadId);
+
+    /**
+     * 回收长时间未活动的分片上传会话
+     */
+    int cleanAbandonedUploads();
     
     /**
-     * 分页查询文件列表
+     * 只按元数据返回文件描述，不访问磁盘，用于条件请求校验；压缩存储的独立文件物理长度未知，为0
      */
-    PageResult<FileInfoDTO> getFileList(Integer page, Integer pageSize, String fileName);
+    DownloadFile describeFile(String fileName);
+
+    /**
+     * 下载文件，返回文件描述，内容由调用方以通道方式流式输出
+     */
+    DownloadFile downloadFile(String fileName);
+
+    /**
+     * 检查 {@link #describeFile} 得到的描述对应的物理文件并补全长度，需要输出内容时调用；
+     * 文件已被迁移或整理移动时按ID重新查询后重试一次
+     */
+    DownloadFile statFile(DownloadFile file);
+    
+    /**
+     * 批量解析待打包下载的文件，按ID一次查询、按文件名一次查询，结果按请求顺序去重，只含元数据
+     *
+     * @throws IllegalArgumentException 未指定文件或数量超过上限
+     * @throws java.util.NoSuchElementException 存在找不到的文件
+     */
+    List<DownloadFile> resolveFiles(List<Long> ids, List<String> fileNames);
+
+    /**
+     * 分页查询文件列表，cursor 不为空时按游标翻页并忽略 page
+     *
+     * @param exactCount true 时执行精确计数，否则返回缓存的总数
+     */
+    PageResult<FileInfoDTO> getFileList(Integer page, Integer pageSize, String fileName,
+                                        String cursor, boolean exactCount);
     
     /**
      * 清理过期文件
@@ -34,4 +91,11 @@ public interface FileService {
      * 批量删除文件（数据库记录和物理文件）
      */
     int deleteFilesByIds(List<Long> ids);
+
+    /**
+     * 删除物理文件已缺失的记录，文件仍存在或记录已删除的ID直接跳过
+     *
+     * @return 已处理完毕的ID（含跳过的），释放内容块失败的ID不包含在内，需要稍后重试
+     */
+    List<Long> deleteMissingFiles(List<Long> ids);
 }
\ No newline at end of file
@@ -1,31 +1,56 @@
 package com.mini.service.impl;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.mini.annotation.ControllerCommonAnnotation;
+import com.mini.batch.ExpiredFileCleaner;
+import com.mini.batch.FileInfoWriteBehind;
+import com.mini.batch.InvalidFileQueue;
+import com.mini.cache.FileCountCache;
+import com.mini.cache.FileInfoCache;
+import com.mini.dto.DownloadFile;
 import com.mini.dto.FileInfoDTO;
 import com.mini.dto.PageResult;
+import com.mini.dto.UploadFileResult;
+import com.mini.dto.UploadSessionDTO;
 import com.mini.entity.FileInfo;
+import com.mini.id.IdGenerator;
 import com.mini.mapper.FileInfoMapper;
-import com.mini.nio.NioAsyncExecutor;
+import com.mini.metrics.StageTimers;
+import com.mini.search.FileNameIndex;
 import com.mini.service.FileService;
+import com.mini.storage.BlobStore;
+import com.mini.storage.FileStorage;
+import com.mini.upload.ChunkedUploadStore;
+import com.mini.upload.IngestedPart;
+import com.mini.upload.UploadIngestPipeline;
+import com.mini.upload.UploadSession;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.Resource;
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -36,109 +61,436 @@ import java.util.stream.Collectors;
 //@Transactional
 public class FileServiceImpl implements FileService {
 
+    // 与 fileInfo.fileName VARCHAR(255) 一致，超长的记录无法入库
+    private static final int MAX_FILE_NAME_LENGTH = 255;
+
     @Resource
     private FileInfoMapper fileInfoMapper;
 
+    @Resource
+    private FileInfoCache fileInfoCache;
+
+    @Resource
+    private FileCountCache fileCountCache;
+
+    @Resource
+    private FileNameIndex fileNameIndex;
+
     @Value("${file.upload.path}")
     private String uploadPath;
 
-    @Value("${file.upload.max-size}")
-    private Long maxFileSize;
-
     @Value("${file.upload.allowed-types}")
     private String allowedTypes;
 
-    @Resource(name = "invalidFileIdQueue")
-    private LinkedBlockingDeque<Long> invalidFileIdQueue;
+    @Value("${file.download.zip.max-files:1000}")
+    private int maxZipFiles;
+
+    @Resource
+    private InvalidFileQueue invalidFileQueue;
+
+    @Resource
+    private UploadIngestPipeline uploadIngestPipeline;
+
+    @Resource
+    private FileInfoWriteBehind fileInfoWriteBehind;
+
+    @Resource
+    private BlobStore blobStore;
 
     @Resource
-    private NioAsyncExecutor nioAsyncExecutor;
+    private FileStorage fileStorage;
 
-    // 雪花算法生成id
-    private static final SnowflakeIdWorker idWorker = new SnowflakeIdWorker(1, 1);
+    @Resource
+    private ChunkedUploadStore chunkedUploadStore;
+
+    @Resource
+    private ExpiredFileCleaner expiredFileCleaner;
+
+    @Resource
+    private IdGenerator idGenerator;
+
+    @Resource
+    private StageTimers stageTimers;
 
     @ControllerCommonAnnotation
     @Override
-    public List<FileInfoDTO> uploadFiles(List<MultipartFile> files) {
-        List<FileInfoDTO> results = new ArrayList<>();
+    public List<UploadFileResult> uploadFiles(HttpServletRequest request) {
+        List<IngestedPart> parts;
+        // 存储文件名包含记录ID，同一请求内的同名文件、同一毫秒的并发上传不会互相覆盖
+        Map<String, Long> idsByStoredName = new HashMap<>();
+        try {
+            parts = uploadIngestPipeline.ingest(request, originalFilename -> {
+                long id = idGenerator.nextId();
+                String storedFileName = prepareFileName(originalFilename, id);
+                idsByStoredName.put(storedFileName, id);
+                return storedFileName;
+            });
+        } catch (IOException e) {
+            log.error("file upload error", e);
+            throw new RuntimeException("file upload error: " + e.getMessage());
+        }
+        List<UploadFileResult> results = new ArrayList<>(parts.size());
         List<FileInfo> fileInfos = new ArrayList<>();
-        for (MultipartFile file : files) {
-            try {
-                validateFile(file);
-                String fileName = saveFile(file);
-                FileInfo fileInfo = new FileInfo();
-                fileInfo.setId(idWorker.nextId());
-                fileInfo.setFileName(fileName);
-                fileInfo.setFilePath(uploadPath + File.separator + fileName);
-                fileInfo.setFileSize((int) file.getSize());
-                fileInfo.setStatus(0);
-                fileInfo.setUploadDate(LocalDateTime.now());
-                fileInfos.add(fileInfo);
-                results.add(convertToDTO(fileInfo));
-            } catch (Exception e) {
-                log.error("file upload error: {}", file.getOriginalFilename(), e);
+        for (IngestedPart part : parts) {
+            UploadFileResult result = new UploadFileResult();
+            result.setOriginalFileName(part.getOriginalFileName());
+            result.setSuccess(part.isSuccess());
+            if (!part.isSuccess()) {
+                log.error("file upload error: {}, {}", part.getOriginalFileName(), part.getError());
+                result.setMessage(part.getError());
+                results.add(result);
+                continue;
+            }
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setId(idsByStoredName.get(part.getStoredFileName()));
+            fileInfo.setFileName(part.getStoredFileName());
+            fileInfo.setFilePath(part.getPath().toString());
+            fileInfo.setFileSize(part.getSize());
+            fileInfo.setStatus(0);
+            fileInfo.setUploadDate(LocalDateTime.now());
+            fileInfo.setContentHash(part.getContentHash());
+            fileInfo.setContentEncoding(part.getContentEncoding());
+            fileInfo.setEtag(part.getEtag());
+            if (part.getLocation() != null) {
+                fileInfo.setSegmentOffset(part.getLocation().offset());
+                fileInfo.setSegmentLength(part.getLocation().length());
             }
+            fileInfos.add(fileInfo);
+            result.setFileInfo(convertToDTO(fileInfo));
+            results.add(result);
         }
-        if (!fileInfos.isEmpty()) {
+        // 写入本地日志后返回，由写后合并线程与其他请求的记录一起入库
+        long insertStart = System.nanoTime();
+        fileInfoWriteBehind.accept(fileInfos);
+        stageTimers.record(StageTimers.Stage.METADATA_INSERT, insertStart);
+        return results;
+    }
+
+    @ControllerCommonAnnotation
+    @Override
+    public UploadSessionDTO initiateUpload(String fileName, long fileSize, Integer chunkSize) {
+        // 会话创建时尚无记录，文件名另取一个ID保证唯一
+        String storedFileName = prepareFileName(fileName, idGenerator.nextId());
+        try {
+            return toSessionDTO(chunkedUploadStore.create(fileName, storedFileName, fileSize, chunkSize));
+        } catch (IOException e) {
+            log.error("create upload session error: {}", fileName, e);
+            throw new RuntimeException("create upload session error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void uploadChunk(String uploadId, int index, HttpServletRequest request) {
+        try {
+            chunkedUploadStore.writeChunk(uploadId, index, request.getInputStream(), request.getContentLengthLong());
+        } catch (IOException e) {
+            // 多为客户端中断连接，该分片需要重传
+            log.warn("upload chunk interrupted: {}#{}, {}", uploadId, index, e.getMessage());
+            throw new RuntimeException("upload chunk interrupted: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public UploadSessionDTO getUploadStatus(String uploadId) {
+        return toSessionDTO(chunkedUploadStore.get(uploadId));
+    }
+
+    @ControllerCommonAnnotation
+    @Override
+    public FileInfoDTO completeUpload(String uploadId) {
+        UploadSession session = chunkedUploadStore.get(uploadId);
+        FileInfo fileInfo = new FileInfo();
+        long writeStart = System.nanoTime();
+        try {
+            // 数据文件已按最终偏移写好，直接重命名到最终位置
+            Path data = chunkedUploadStore.seal(uploadId);
+            // 与普通上传一致，无论是否去重都以内容SHA-256作为强校验器
+            String digest = blobStore.digest(data);
+            fileInfo.setEtag(digest);
+            Path path;
+            if (blobStore.isEnabled()) {
+                path = blobStore.commit(data, digest, session.getFileSize());
+                fileInfo.setContentHash(digest);
+            } else {
+                path = fileStorage.commit(data, session.getStoredFileName());
+            }
+            fileInfo.setFilePath(path.toString());
+            stageTimers.record(StageTimers.Stage.DISK_WRITE, writeStart);
+        } catch (IOException e) {
+            log.error("complete upload error: {}", uploadId, e);
             try {
-                nioAsyncExecutor.submit(() -> fileInfoMapper.batchInsert(fileInfos));
-            } catch (Exception e) {
-                log.error("file upload nio error", e);
-                throw new RuntimeException("file upload nio error: " + e.getMessage());
+                chunkedUploadStore.unseal(uploadId);
+            } catch (IOException unsealError) {
+                log.warn("reopen upload session error: {}", uploadId, unsealError);
             }
+            throw new RuntimeException("complete upload error: " + e.getMessage());
         }
-        return results;
+        fileInfo.setId(idGenerator.nextId());
+        fileInfo.setFileName(session.getStoredFileName());
+        fileInfo.setFileSize(session.getFileSize());
+        fileInfo.setStatus(0);
+        fileInfo.setUploadDate(LocalDateTime.now());
+        long insertStart = System.nanoTime();
+        fileInfoWriteBehind.accept(List.of(fileInfo));
+        stageTimers.record(StageTimers.Stage.METADATA_INSERT, insertStart);
+        chunkedUploadStore.remove(uploadId);
+        return convertToDTO(fileInfo);
     }
 
     @ControllerCommonAnnotation
     @Override
-    public byte[] downloadFile(String fileName) {
+    public void abortUpload(String uploadId) {
+        chunkedUploadStore.get(uploadId);
+        chunkedUploadStore.remove(uploadId);
+    }
+
+    @Override
+    public int cleanAbandonedUploads() {
+        return chunkedUploadStore.expire();
+    }
+
+    @ControllerCommonAnnotation
+    @Override
+    public DownloadFile describeFile(String fileName) {
+        FileInfo fileInfo = lookupByFileName(fileName);
+        if (fileInfo == null) {
+            throw new RuntimeException("file not found: " + fileName);
+        }
+        return toDownloadFile(fileInfo);
+    }
+
+    @ControllerCommonAnnotation
+    @Override
+    public DownloadFile downloadFile(String fileName) {
+        FileInfo fileInfo = lookupByFileName(fileName);
+        if (fileInfo == null) {
+            throw new RuntimeException("file not found: " + fileName);
+        }
+        return statFile(toDownloadFile(fileInfo), true);
+    }
+
+    @Override
+    public DownloadFile statFile(DownloadFile file) {
+        return statFile(file, true);
+    }
+
+    /**
+     * @param retry 文件缺失时是否按ID重新查询记录后重试一次
+     */
+    private DownloadFile statFile(DownloadFile file, boolean retry) {
+        BasicFileAttributes attributes;
         try {
-            FileInfo fileInfo = fileInfoMapper.selectByFileName(fileName);
-            if (fileInfo == null) {
-                throw new RuntimeException("file not found: " + fileName);
+            attributes = Files.readAttributes(file.getPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // 文件可能已被存储迁移或段整理移动，缓存中的路径过期，失效后按ID重新加载；
+            // 回放中的写后合并记录可能仍是旧路径，因此直接使用查询结果而不是再按文件名查找
+            FileInfo fresh = null;
+            if (retry && Objects.nonNull(file.getId())) {
+                fileInfoCache.invalidateFileName(file.getFileName());
+                fileInfoCache.invalidateId(file.getId());
+                fresh = fileInfoCache.getById(file.getId(), fileInfoMapper::selectById);
             }
-            Path filePath = Paths.get(fileInfo.getFilePath());
-            if (!Files.exists(filePath)) {
-                if (Objects.nonNull(fileInfo.getId())) {
-                    invalidFileIdQueue.offer(fileInfo.getId());
-                }
-                throw new RuntimeException("file not found: " + fileName);
+            if (fresh != null && !Objects.equals(Paths.get(fresh.getFilePath()), file.getPath())) {
+                return statFile(toDownloadFile(fresh), false);
             }
-            return Files.readAllBytes(filePath);
+            if (Objects.nonNull(file.getId())) {
+                invalidFileQueue.offer(file.getId());
+            }
+            throw new RuntimeException("file not found: " + file.getFileName());
         } catch (IOException e) {
-            log.error("file download error: {}", fileName, e);
-            throw new RuntimeException("file download error: " + fileName);
+            log.error("file download error: {}", file.getFileName(), e);
+            throw new RuntimeException("file download error: " + file.getFileName());
+        }
+        // 合并存储的内容位置与长度取自记录，独立文件以磁盘上的实际大小为准
+        if (file.getOffset() == 0) {
+            file.setLength(attributes.size());
+        }
+        if (file.getContentEncoding() == null) {
+            file.setOriginalLength(file.getLength());
+        }
+        if (file.getLastModified() == 0) {
+            file.setLastModified(attributes.lastModifiedTime().toMillis());
         }
+        return file;
     }
 
     @ControllerCommonAnnotation
     @Override
-    public PageResult<FileInfoDTO> getFileList(Integer page, Integer pageSize, String fileName) {
-        int offset = (page - 1) * pageSize;
-        List<FileInfo> fileInfos= fileInfoMapper.selectPage(offset, pageSize, fileName);
-        long total = fileInfoMapper.selectCount(fileName);
-        List<FileInfoDTO> fileInfoDTOs = fileInfos.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
-        return new PageResult<>(fileInfoDTOs, total, page, pageSize);
+    public List<DownloadFile> resolveFiles(List<Long> ids, List<String> fileNames) {
+        List<Long> requestedIds = ids == null ? List.of() : ids.stream().filter(Objects::nonNull).distinct().toList();
+        List<String> requestedNames = fileNames == null ? List.of()
+                : fileNames.stream().filter(StringUtils::hasText).distinct().toList();
+        int total = requestedIds.size() + requestedNames.size();
+        if (total == 0) {
+            throw new IllegalArgumentException("no file specified");
+        }
+        if (total > maxZipFiles) {
+            throw new IllegalArgumentException("too many files, at most " + maxZipFiles);
+        }
+        long lookupStart = System.nanoTime();
+        Map<Long, FileInfo> byId = requestedIds.isEmpty() ? Map.of()
+                : fileInfoCache.getByIds(requestedIds, this::loadValidByIds);
+        Map<String, FileInfo> byName = new HashMap<>();
+        if (!requestedNames.isEmpty()) {
+            for (FileInfo fileInfo : fileInfoMapper.selectByFileNames(requestedNames)) {
+                byName.put(fileInfo.getFileName(), fileInfo);
+            }
+        }
+        stageTimers.record(StageTimers.Stage.METADATA_LOOKUP, lookupStart);
+        List<String> missing = new ArrayList<>();
+        Map<Long, FileInfo> resolved = new LinkedHashMap<>();
+        for (Long id : requestedIds) {
+            FileInfo fileInfo = byId.get(id);
+            if (fileInfo == null) {
+                missing.add(String.valueOf(id));
+            } else {
+                resolved.putIfAbsent(id, fileInfo);
+            }
+        }
+        for (String fileName : requestedNames) {
+            // 刚上传、尚未入库的记录
+            FileInfo fileInfo = byName.containsKey(fileName) ? byName.get(fileName) : fileInfoWriteBehind.findPending(fileName);
+            if (fileInfo == null) {
+                missing.add(fileName);
+            } else {
+                resolved.putIfAbsent(fileInfo.getId(), fileInfo);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new NoSuchElementException("file not found: " + String.join(", ", missing));
+        }
+        return resolved.values().stream().map(this::toDownloadFile).toList();
+    }
+
+    /**
+     * 由元数据生成下载描述，不访问磁盘；合并存储的内容取记录中的位置与长度，未压缩的独立文件长度取记录中的文件大小，
+     * 压缩存储的独立文件物理长度为0，由 {@link #statFile} 补全
+     */
+    private DownloadFile toDownloadFile(FileInfo fileInfo) {
+        DownloadFile downloadFile = new DownloadFile();
+        downloadFile.setId(fileInfo.getId());
+        downloadFile.setFileName(fileInfo.getFileName());
+        downloadFile.setPath(Paths.get(fileInfo.getFilePath()));
+        downloadFile.setContentEncoding(fileInfo.getContentEncoding());
+        downloadFile.setOriginalLength(fileInfo.getFileSize());
+        downloadFile.setEtag(fileInfo.getEtag());
+        if (fileInfo.getSegmentOffset() != null) {
+            downloadFile.setOffset(fileInfo.getSegmentOffset());
+            downloadFile.setLength(fileInfo.getSegmentLength());
+        } else if (fileInfo.getContentEncoding() == null && fileInfo.getFileSize() != null) {
+            downloadFile.setLength(fileInfo.getFileSize());
+        }
+        if (fileInfo.getUploadDate() != null) {
+            // 与 HTTP 日期精度一致，截断到秒
+            downloadFile.setLastModified(fileInfo.getUploadDate().atZone(ZoneId.systemDefault()).toEpochSecond() * 1000);
+        }
+        return downloadFile;
     }
 
+    @ControllerCommonAnnotation
     @Override
-    public void cleanExpiredFiles() {
-        List<FileInfo> expiredFiles = fileInfoMapper.selectExpiredFiles();
-        for (FileInfo fileInfo : expiredFiles) {
-            try {
-                Path filePath = Paths.get(fileInfo.getFilePath());
-                Files.deleteIfExists(filePath);
-                nioAsyncExecutor.submit(() -> {
-                    fileInfoMapper.deleteById(fileInfo.getId());
-                    log.info("delete expired file: {}", fileInfo.getFileName());
-                });
-            } catch (IOException e) {
-                log.error("delete expired file error: {}", fileInfo.getFileName(), e);
+    public PageResult<FileInfoDTO> getFileList(Integer page, Integer pageSize, String fileName,
+                                               String cursor, boolean exactCount) {
+        // 关键字先经文件名索引得到候选ID，索引无法服务时（未就绪、关键字过短、候选过多）回退到 LIKE 扫描
+        List<Long> candidateIds = StringUtils.hasText(fileName) ? fileNameIndex.search(fileName) : null;
+        if (candidateIds != null && candidateIds.isEmpty()) {
+            PageResult<FileInfoDTO> empty = new PageResult<>(List.of(), 0L, StringUtils.hasText(cursor) ? null : page, pageSize);
+            empty.setTotalExact(true);
+            return empty;
+        }
+        long total;
+        if (candidateIds != null) {
+            // 候选集有上限，按主键计数足够廉价
+            total = fileInfoMapper.selectCount(fileName, candidateIds);
+            exactCount = true;
+        } else {
+            total = fileCountCache.count(fileName, exactCount, name -> fileInfoMapper.selectCount(name, null));
+        }
+        PageResult<FileInfoDTO> result;
+        if (StringUtils.hasText(cursor)) {
+            result = getFileListByCursor(PageCursor.decode(cursor), pageSize, fileName, candidateIds, total);
+        } else {
+            // 多取一条用于判断是否还有下一页
+            int offset = (page - 1) * pageSize;
+            List<FileInfo> fileInfos = fileInfoMapper.selectPage(offset, pageSize + 1, fileName, candidateIds);
+            boolean hasMore = fileInfos.size() > pageSize;
+            if (hasMore) {
+                fileInfos = fileInfos.subList(0, pageSize);
+            }
+            result = new PageResult<>(toDTOs(fileInfos), total, page, pageSize);
+            if (!fileInfos.isEmpty()) {
+                result.setNextCursor(hasMore ? PageCursor.next(fileInfos.get(fileInfos.size() - 1)) : null);
+                result.setPrevCursor(page > 1 ? PageCursor.prev(fileInfos.get(0)) : null);
+            }
+        }
+        result.setTotalExact(exactCount);
+        return result;
+    }
+
+    private FileInfo lookupByFileName(String fileName) {
+        long start = System.nanoTime();
+        FileInfo fileInfo = fileInfoCache.getByFileName(fileName, this::loadByFileName);
+        stageTimers.record(StageTimers.Stage.METADATA_LOOKUP, start);
+        return fileInfo;
+    }
+
+    /**
+     * 刚上传的文件可能尚未入库，先查写后合并队列
+     */
+    private FileInfo loadByFileName(String fileName) {
+        FileInfo pending = fileInfoWriteBehind.findPending(fileName);
+        return pending != null ? pending : fileInfoMapper.selectByFileName(fileName);
+    }
+
+    /**
+     * 批量加载有效记录，供ID维度的缓存填充未命中项
+     */
+    private Map<Long, FileInfo> loadValidByIds(Set<? extends Long> ids) {
+        Map<Long, FileInfo> loaded = new HashMap<>();
+        for (List<Long> subList : Lists.partition(new ArrayList<Long>(ids), 500)) {
+            for (FileInfo fileInfo : fileInfoMapper.selectByIds(subList)) {
+                if (Objects.equals(fileInfo.getStatus(), 0)) {
+                    loaded.put(fileInfo.getId(), fileInfo);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 游标分页，按 (uploadDate, id) 定位，耗时与翻页深度无关
+     */
+    private PageResult<FileInfoDTO> getFileListByCursor(PageCursor cursor, Integer pageSize, String fileName,
+                                                        List<Long> candidateIds, long total) {
+        List<FileInfo> fileInfos = fileInfoMapper.selectPageByCursor(cursor.uploadDate, cursor.id, cursor.backward,
+                pageSize + 1, fileName, candidateIds);
+        boolean hasMore = fileInfos.size() > pageSize;
+        if (hasMore) {
+            fileInfos = fileInfos.subList(0, pageSize);
+        }
+        if (cursor.backward) {
+            // 向前翻页时按时间升序查出，恢复为降序
+            fileInfos = new ArrayList<>(fileInfos);
+            Collections.reverse(fileInfos);
+        }
+        PageResult<FileInfoDTO> result = new PageResult<>(toDTOs(fileInfos), total, null, pageSize);
+        if (!fileInfos.isEmpty()) {
+            FileInfo first = fileInfos.get(0);
+            FileInfo last = fileInfos.get(fileInfos.size() - 1);
+            if (cursor.backward) {
+                result.setPrevCursor(hasMore ? PageCursor.prev(first) : null);
+                result.setNextCursor(PageCursor.next(last));
+            } else {
+                result.setPrevCursor(PageCursor.prev(first));
+                result.setNextCursor(hasMore ? PageCursor.next(last) : null);
             }
         }
+        return result;
+    }
+
+    @Override
+    public void cleanExpiredFiles() {
+        expiredFileCleaner.run();
     }
 
     @ControllerCommonAnnotation
@@ -155,9 +507,13 @@ public class FileServiceImpl implements FileService {
 
             // 删除物理文件
             for (FileInfo fileInfo : fileInfos) {
+                if (!Objects.equals(fileInfo.getStatus(), 0)) {
+                    // 已删除的记录不能重复释放内容块引用
+                    continue;
+                }
                 try {
-                    Path path = Paths.get(fileInfo.getFilePath());
-                    Files.deleteIfExists(path);
+                    fileStorage.deleteContent(fileInfo);
+                    fileInfoCache.invalidate(fileInfo);
                     validIds.add(fileInfo.getId());
                 } catch (IOException e) {
                     log.error("delete actual file error: {}", fileInfo.getFilePath(), e);
@@ -173,39 +529,84 @@ public class FileServiceImpl implements FileService {
         return count;
     }
 
-    private void validateFile(MultipartFile file) {
-        if (file.isEmpty()) {
-            throw new RuntimeException("file is empty");
-        }
-        if (file.getSize() > maxFileSize) {
-            throw new RuntimeException("file size exceeds the limit");
+    @Override
+    public List<Long> deleteMissingFiles(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return List.of();
         }
-        String originalFilename = file.getOriginalFilename();
-        if (!StringUtils.hasText(originalFilename)) {
-            throw new RuntimeException("file is empty");
+        int count = 0;
+        Set<Long> failedIds = new HashSet<>();
+        for (List<Long> subList : Lists.partition(ids, 500)) {
+            // 先用缓存的记录排除文件仍存在的ID，其余以数据库中的最新记录为准
+            List<Long> candidateIds = new ArrayList<>();
+            for (FileInfo cached : fileInfoCache.getByIds(subList, this::loadValidByIds).values()) {
+                if (!Files.exists(Paths.get(cached.getFilePath()))) {
+                    candidateIds.add(cached.getId());
+                }
+            }
+            if (candidateIds.isEmpty()) {
+                continue;
+            }
+            fileInfoCache.invalidateIds(candidateIds);
+            List<Long> missingIds = new ArrayList<>();
+            for (FileInfo fileInfo : fileInfoMapper.selectByIds(candidateIds)) {
+                // 入队后可能已被删除或迁移，只处理物理文件确实不存在的有效记录
+                if (!Objects.equals(fileInfo.getStatus(), 0) || Files.exists(Paths.get(fileInfo.getFilePath()))) {
+                    continue;
+                }
+                if (fileInfo.getContentHash() != null) {
+                    try {
+                        blobStore.release(fileInfo.getContentHash());
+                    } catch (IOException e) {
+                        log.error("release missing blob error: {}", fileInfo.getContentHash(), e);
+                        failedIds.add(fileInfo.getId());
+                        continue;
+                    }
+                }
+                fileInfoCache.invalidate(fileInfo);
+                missingIds.add(fileInfo.getId());
+            }
+            if (!missingIds.isEmpty()) {
+                count += fileInfoMapper.batchDeleteByIds(missingIds);
+            }
         }
-        String fileExtension = getFileExtension(originalFilename);
-        if (!isAllowedFileType(fileExtension)) {
-            throw new RuntimeException("file type not supported");
+        if (count > 0) {
+            log.info("delete {} file records whose files are missing", count);
         }
+        return ids.stream().filter(id -> !failedIds.contains(id)).toList();
     }
 
-    private String saveFile(MultipartFile file) throws IOException {
-        Path uploadDir = Paths.get(uploadPath);
-        if (!Files.exists(uploadDir)) {
-            Files.createDirectories(uploadDir);
+    /**
+     * 校验原始文件名并生成存储文件名，大小与空文件校验在落盘时进行
+     */
+    private String prepareFileName(String originalFilename, long id) {
+        long start = System.nanoTime();
+        try {
+            if (!StringUtils.hasText(originalFilename)) {
+                throw new RuntimeException("file is empty");
+            }
+            String fileExtension = getFileExtension(originalFilename);
+            if (!isAllowedFileType(fileExtension)) {
+                throw new RuntimeException("file type not supported");
+            }
+            String storedFileName = generateFileName(originalFilename, id);
+            if (storedFileName.codePointCount(0, storedFileName.length()) > MAX_FILE_NAME_LENGTH) {
+                throw new RuntimeException("file name too long");
+            }
+            return storedFileName;
+        } finally {
+            stageTimers.record(StageTimers.Stage.VALIDATE, start);
         }
-        String originalFilename = file.getOriginalFilename();
-        String fileName = generateFileName(originalFilename);
-        Path filePath = uploadDir.resolve(fileName);
-        nioAsyncExecutor.submit(() -> Files.copy(file.getInputStream(), filePath));
-        return fileName;
     }
 
-    private String generateFileName(String originalFilename) {
+    /**
+     * 存储文件名为 原文件名_ID.扩展名，ID全局唯一，不同上传的存储文件名不会重复
+     */
+    @VisibleForTesting
+    String generateFileName(String originalFilename, long id) {
         String extension = getFileExtension(originalFilename);
         String baseName = originalFilename.substring(0, originalFilename.lastIndexOf('.'));
-        return baseName + "_" + System.currentTimeMillis() + "." + extension;
+        return baseName + "_" + id + "." + extension;
     }
 
     private String getFileExtension(String fileName) {
@@ -213,7 +614,8 @@ public class FileServiceImpl implements FileService {
         return lastDotIndex > 0 ? fileName.substring(lastDotIndex + 1).toLowerCase() : "";
     }
 
-    private boolean isAllowedFileType(String fileExtension) {
+    @VisibleForTesting
+    boolean isAllowedFileType(String fileExtension) {
         if (!StringUtils.hasText(allowedTypes)) {
             return true;
         }
@@ -226,67 +628,29 @@ public class FileServiceImpl implements FileService {
         return false;
     }
 
-    private FileInfoDTO convertToDTO(FileInfo fileInfo) {
+    private List<FileInfoDTO> toDTOs(List<FileInfo> fileInfos) {
+        return fileInfos.stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    private UploadSessionDTO toSessionDTO(UploadSession session) {
+        UploadSessionDTO dto = new UploadSessionDTO();
+        dto.setUploadId(session.getUploadId());
+        dto.setFileName(session.getOriginalFileName());
+        dto.setFileSize(session.getFileSize());
+        dto.setChunkSize(session.getChunkSize());
+        dto.setChunkCount(session.getChunkCount());
+        dto.setReceivedCount(session.getReceivedCount());
+        dto.setMissingChunks(session.getMissingChunks());
+        dto.setExpireTime(session.getLastAccessTime() + chunkedUploadStore.getSessionTtl().toMillis());
+        return dto;
+    }
+
+    @VisibleForTesting
+    FileInfoDTO convertToDTO(FileInfo fileInfo) {
         FileInfoDTO dto = new FileInfoDTO();
         BeanUtils.copyProperties(fileInfo, dto);
         return dto;
     }
 }
-
-// 雪花算法实现
-class SnowflakeIdWorker {
-    private final long workerId;
-    private final long datacenterId;
-    private long sequence = 0L;
-    private final long twepoch = 1288834974657L;
-    private final long workerIdBits = 5L;
-    private final long datacenterIdBits = 5L;
-    private final long maxWorkerId = -1L ^ (-1L << workerIdBits);
-    private final long maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
-    private final long sequenceBits = 12L;
-    private final long workerIdShift = sequenceBits;
-    private final long datacenterIdShift = sequenceBits + workerIdBits;
-    private final long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
-    private final long sequenceMask = -1L ^ (-1L << sequenceBits);
-    private long lastTimestamp = -1L;
-    public SnowflakeIdWorker(long workerId, long datacenterId) {
-        if (workerId > maxWorkerId || workerId < 0) {
-            throw new IllegalArgumentException(String.format("worker Id can't be greater than %d or less than 0", maxWorkerId));
-        }
-        if (datacenterId > maxDatacenterId || datacenterId < 0) {
-            throw new IllegalArgumentException(String.format("datacenter Id can't be greater than %d or less than 0", maxDatacenterId));
-        }
-        this.workerId = workerId;
-        this.datacenterId = datacenterId;
-    }
-    public synchronized long nextId() {
-        long timestamp = timeGen();
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException(
-                    String.format("Clock moved backwards.  Refusing to generate id for %d milliseconds", lastTimestamp - timestamp));
-        }
-        if (lastTimestamp == timestamp) {
-            sequence = (sequence + 1) & sequenceMask;
-            if (sequence == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
-            }
-        } else {
-            sequence = 0L;
-        }
-        lastTimestamp = timestamp;
-        return ((timestamp - twepoch) << timestampLeftShift) |
-                (datacenterId << datacenterIdShift) |
-                (workerId << workerIdShift) |
-                sequence;
-    }
-    private long tilNextMillis(long lastTimestamp) {
-        long timestamp = timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = timeGen();
-        }
-        return timestamp;
-    }
-    private long timeGen() {
-        return System.currentTimeMillis();
-    }
-}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.mini.service.impl;
+
+import com.mini.entity.FileInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 文件列表游标，对客户端不透明，编码了 (uploadDate, id) 位置与翻页方向
+ */
+class PageCursor {
+
+    private static final char FORWARD = 'N';
+    private static final char BACKWARD = 'P';
+
+    final LocalDateTime uploadDate;
+    final long id;
+    // true 表示向更新的记录翻页（上一页）
+    final boolean backward;
+
+    private PageCursor(LocalDateTime uploadDate, long id, boolean backward) {
+        this.uploadDate = uploadDate;
+        this.id = id;
+        this.backward = backward;
+    }
+
+    /**
+     * 以某条记录为界的下一页（更早的记录）游标
+     */
+    static String next(FileInfo last) {
+        return encode(FORWARD, last);
+    }
+
+    /**
+     * 以某条记录为界的上一页（更新的记录）游标
+     */
+    static String prev(FileInfo first) {
+        return encode(BACKWARD, first);
+    }
+
+    private static String encode(char direction, FileInfo fileInfo) {
+        String raw = direction + "," + fileInfo.getUploadDate() + "," + fileInfo.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] fields = raw.split(",");
+            if (fields.length != 3 || fields[0].length() != 1
+                    || (fields[0].charAt(0) != FORWARD && fields[0].charAt(0) != BACKWARD)) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+            return new PageCursor(LocalDateTime.parse(fields[1]), Long.parseLong(fields[2]), fields[0].charAt(0) == BACKWARD);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+}
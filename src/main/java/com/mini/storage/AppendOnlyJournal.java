@@ -0,0 +1,292 @@
+package com.mini.storage;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 本地追加写日志，按段文件滚动
+ * <p>
+ * 每条记录格式为 [长度 int][CRC32C int][内容]，追加后 fsync 才返回；
+ * 回放时遇到长度或校验和不合法的记录即视为崩溃时未写完的尾部，丢弃该段剩余内容。
+ * 调用方在记录全部处理完毕后通过 {@link #release(long)} 删除非活动段。非线程安全的方法均已同步。
+ * <p>
+ * 写入与落盘分离：{@link #write(byte[])} 只在对象锁内写入，{@link #sync(Position)} 按已落盘水位合并 fsync，
+ * 一次 fsync 覆盖在此之前写入的所有记录，并发追加时不必各自串行 fsync。
+ */
+@Slf4j
+public class AppendOnlyJournal implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+
+    private final String name;
+
+    private final long maxSegmentBytes;
+
+    private final TreeSet<Long> segments = new TreeSet<>();
+
+    private long activeSegment;
+
+    private FileChannel activeChannel;
+
+    // 累计写入的字节数（跨段），受对象锁保护
+    private long appended;
+
+    // 滚动或关闭时已落盘的累计位置，受对象锁保护
+    private long forcedOnClose;
+
+    // 已落盘水位，受syncLock保护
+    private long durable;
+
+    private final Object syncLock = new Object();
+
+    public AppendOnlyJournal(Path dir, String name, long maxSegmentBytes) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(file -> file.startsWith(name + "-") && file.endsWith(SUFFIX))
+                    .map(file -> Long.parseLong(file.substring(name.length() + 1, file.length() - SUFFIX.length())))
+                    .forEach(segments::add);
+        }
+        // 清理上次运行留下的空段
+        segments.removeIf(segment -> {
+            try {
+                return Files.size(segmentPath(segment)) == 0 && Files.deleteIfExists(segmentPath(segment));
+            } catch (IOException e) {
+                return false;
+            }
+        });
+        // 总是从新段开始写，旧段只读
+        openSegment(segments.isEmpty() ? 1 : segments.last() + 1);
+    }
+
+    /**
+     * 追加一条记录并落盘
+     *
+     * @return 记录所在的段号
+     */
+    public long append(byte[] payload) throws IOException {
+        Position position = write(payload);
+        sync(position);
+        return position.getSegment();
+    }
+
+    /**
+     * 追加一条记录但不落盘，需再调用 {@link #sync(Position)}
+     *
+     * @return 记录所在的段号与写入后的累计位置
+     */
+    public synchronized Position write(byte[] payload) throws IOException {
+        if (activeChannel.size() >= maxSegmentBytes) {
+            closeActive();
+            openSegment(activeSegment + 1);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            appended += activeChannel.write(buffer);
+        }
+        return new Position(activeSegment, appended);
+    }
+
+    /**
+     * 等待直到该位置之前写入的记录都已落盘，已被其他线程的 fsync 覆盖时直接返回
+     */
+    public void sync(Position position) throws IOException {
+        synchronized (syncLock) {
+            if (durable >= position.getEnd()) {
+                return;
+            }
+            FileChannel channel;
+            long target;
+            synchronized (this) {
+                channel = activeChannel;
+                target = appended;
+            }
+            // fsync 期间不持有对象锁，其他线程可以继续写入
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // 段已滚动，滚动前已落盘
+                if (target > forcedOnClose()) {
+                    throw e;
+                }
+            }
+            durable = Math.max(durable, target);
+        }
+    }
+
+    /**
+     * 当前活动段非空时切换到新段，使其可以被 {@link #release(long)}
+     */
+    public synchronized void roll() throws IOException {
+        if (activeChannel.size() > 0) {
+            closeActive();
+            openSegment(activeSegment + 1);
+        }
+    }
+
+    /**
+     * 按顺序读取全部已有段中的记录（不含当前活动段）
+     */
+    public synchronized List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Long segment : segments) {
+            if (segment == activeSegment) {
+                continue;
+            }
+            readSegment(segment, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * 删除非活动段
+     */
+    public synchronized void release(long segment) {
+        if (segment == activeSegment || !segments.remove(segment)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+        } catch (IOException e) {
+            log.warn("delete journal segment error: {}", segmentPath(segment), e);
+        }
+    }
+
+    public synchronized long getActiveSegment() {
+        return activeSegment;
+    }
+
+    /**
+     * 全部段文件的字节数
+     */
+    public synchronized long sizeInBytes() {
+        long bytes = 0;
+        for (Long segment : segments) {
+            try {
+                bytes += Files.size(segmentPath(segment));
+            } catch (IOException e) {
+                // 段文件已被删除
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeActive();
+    }
+
+    /**
+     * 落盘后关闭活动段，使并发中的 {@link #sync(Position)} 可以把已关闭视为已落盘
+     */
+    private void closeActive() throws IOException {
+        activeChannel.force(false);
+        forcedOnClose = appended;
+        activeChannel.close();
+    }
+
+    private synchronized long forcedOnClose() {
+        return forcedOnClose;
+    }
+
+    private void openSegment(long segment) throws IOException {
+        activeChannel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSegment = segment;
+        segments.add(segment);
+    }
+
+    private void readSegment(long segment, List<Entry> entries) throws IOException {
+        Path path = segmentPath(segment);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (position + HEADER_BYTES <= size) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || position + HEADER_BYTES + length > size) {
+                    log.warn("journal {} truncated at {}", path, position);
+                    return;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                while (payload.hasRemaining()) {
+                    channel.read(payload, position + HEADER_BYTES + payload.position());
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("journal {} corrupted at {}", path, position);
+                    return;
+                }
+                entries.add(new Entry(segment, payload.array()));
+                position += HEADER_BYTES + length;
+            }
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return dir.resolve(String.format("%s-%020d%s", name, segment, SUFFIX));
+    }
+
+    /**
+     * 追加记录后的位置
+     */
+    @Data
+    public static class Position {
+
+        /**
+         * 所在段号
+         */
+        private final long segment;
+
+        /**
+         * 写入后的累计字节数，用于比较落盘水位
+         */
+        private final long end;
+    }
+
+    /**
+     * 回放得到的记录
+     */
+    @Data
+    public static class Entry {
+
+        /**
+         * 所在段号
+         */
+        private final long segment;
+
+        /**
+         * 记录内容
+         */
+        private final byte[] payload;
+    }
+}
@@ -0,0 +1,237 @@
+package com.mini.storage;
+
+import com.mini.entity.FileBlob;
+import com.mini.mapper.FileBlobMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按内容寻址的去重存储
+ * <p>
+ * 上传内容在写入临时文件的同时计算 SHA-256，写完后按摘要提交：同一内容只在
+ * {@code <blob-dir>/<摘要前2位>/<摘要3-4位>/<摘要>} 保存一份，fileBlob 表记录引用数。
+ * <ul>
+ *     <li>内容已存在时只增加引用数并丢弃临时文件；临时文件未 fsync，丢弃前通常不会产生实际的磁盘写入</li>
+ *     <li>删除文件记录时引用数减1，最后一个引用释放后才删除物理文件</li>
+ *     <li>fileBlob 记录是引用数的唯一依据：提交先在事务中增加引用数（持有该摘要记录的行锁），再检查或写入物理文件；
+ *     释放在同一个事务中减少引用数，看到引用数归零时删除记录与物理文件。同一摘要的提交与释放跨节点串行，
+ *     不会出现一个节点刚确认文件存在、另一个节点随即将其删除的情况</li>
+ * </ul>
+ * 引用数先于 fileInfo 记录入库，进程在两者之间崩溃时引用数偏大，只会导致内容块不被回收，不会误删。
+ * 记录存在而物理文件缺失时（如释放事务提交失败），下一次提交相同内容会重新写入文件。
+ */
+@Slf4j
+@Component
+public class BlobStore {
+
+    private static final int DIGEST_BUFFER_SIZE = 1 << 20;
+
+    @Value("${file.storage.dedup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.storage.dedup.blob-dir:}")
+    private String blobDir;
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @Resource
+    private FileBlobMapper fileBlobMapper;
+
+    @Resource
+    private TransactionTemplate transactionTemplate;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Path root;
+
+    // 本进程启动以来的上传字节数与其中因内容已存在而未写入的字节数
+    private final AtomicLong logicalBytes = new AtomicLong();
+
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    private Counter hitCounter;
+
+    private Counter missCounter;
+
+    private Counter savedBytesCounter;
+
+    @PostConstruct
+    public void init() {
+        root = StringUtils.hasText(blobDir) ? Paths.get(blobDir) : Paths.get(uploadPath, "blobs");
+        hitCounter = Counter.builder("file.dedup.uploads").tag("result", "hit")
+                .description("uploads whose content was already stored")
+                .register(meterRegistry);
+        missCounter = Counter.builder("file.dedup.uploads").tag("result", "miss")
+                .description("uploads that stored new content")
+                .register(meterRegistry);
+        savedBytesCounter = Counter.builder("file.dedup.bytes.saved")
+                .description("bytes not written because the content already existed")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.dedup.ratio", this, BlobStore::dedupRatio)
+                .description("fraction of uploaded bytes that were already stored")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 在内容块目录下创建临时文件，保证提交时可以原子重命名
+     */
+    public Path createTempFile() throws IOException {
+        Files.createDirectories(root);
+        return Files.createFile(root.resolve("." + UUID.randomUUID() + ".tmp"));
+    }
+
+    /**
+     * 按摘要提交已写完（未 fsync）的临时文件
+     *
+     * @return 内容块路径
+     */
+    public Path commit(Path tempFile, String digest, long size) throws IOException {
+        Path target = blobPath(digest);
+        FileBlob fileBlob = new FileBlob();
+        fileBlob.setDigest(digest);
+        fileBlob.setFilePath(target.toString());
+        fileBlob.setFileSize(size);
+        boolean exists = inTransaction(() -> {
+            // 先增加引用数并持有行锁，其他节点的释放要等本事务提交后才能看到引用数，不会删除下面确认存在的文件
+            while (fileBlobMapper.addReference(fileBlob) == 0) {
+                // 记录在判定为重复之后被并发的释放删除，更新落空，重新插入
+                log.debug("blob reference raced with release, retry: {}", digest);
+            }
+            if (Files.exists(target)) {
+                Files.deleteIfExists(tempFile);
+                return true;
+            }
+            force(tempFile);
+            Files.createDirectories(target.getParent());
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory(target.getParent());
+            return false;
+        });
+
+        logicalBytes.addAndGet(size);
+        if (exists) {
+            hitCounter.increment();
+            savedBytesCounter.increment(size);
+            savedBytes.addAndGet(size);
+        } else {
+            missCounter.increment();
+        }
+        return target;
+    }
+
+    /**
+     * 读取文件计算 SHA-256，用于无法在写入时顺序计算摘要的场景（如分片上传）
+     */
+    public String digest(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时在同一事务中删除内容块
+     */
+    public void release(String digest) throws IOException {
+        inTransaction(() -> {
+            fileBlobMapper.removeReference(digest);
+            if (fileBlobMapper.deleteUnreferenced(digest) > 0) {
+                // 仍持有行锁，并发提交同一内容的节点会等到本事务提交后重新写入文件
+                Files.deleteIfExists(blobPath(digest));
+                log.info("delete unreferenced blob: {}", digest);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在数据库事务中执行，回调抛出异常时回滚
+     */
+    private <T> T inTransaction(BlobOperation<T> operation) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                try {
+                    return operation.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Path blobPath(String digest) {
+        return root.resolve(digest.substring(0, 2)).resolve(digest.substring(2, 4)).resolve(digest);
+    }
+
+    private double dedupRatio() {
+        long logical = logicalBytes.get();
+        return logical == 0 ? 0 : (double) savedBytes.get() / logical;
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BlobOperation<T> {
+
+        T run() throws IOException;
+    }
+
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("sync directory not supported: {}", dir);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mini.storage;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 存储压缩算法，名称与 HTTP Content-Encoding 一致
+ */
+public enum ContentCodec {
+
+    GZIP("gzip") {
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level < 0 ? Deflater.DEFAULT_COMPRESSION : level);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    ZSTD("zstd") {
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            ZstdOutputStream zstd = new ZstdOutputStream(out);
+            if (level >= 0) {
+                zstd.setLevel(level);
+            }
+            return zstd;
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new ZstdInputStream(in);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final String encoding;
+
+    ContentCodec(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 包装压缩输出流，关闭时写出结尾并关闭下层流
+     *
+     * @param level 压缩级别，负数使用算法默认值
+     */
+    public abstract OutputStream encode(OutputStream out, int level) throws IOException;
+
+    /**
+     * 包装解压输入流
+     */
+    public abstract InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * 按内容编码名查找
+     *
+     * @throws IllegalArgumentException 不支持的编码
+     */
+    public static ContentCodec of(String encoding) {
+        for (ContentCodec codec : values()) {
+            if (codec.encoding.equalsIgnoreCase(encoding)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unsupported content encoding: " + encoding);
+    }
+}
@@ -0,0 +1,142 @@
+package com.mini.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * 存储压缩策略：决定上传的文件是否压缩后落盘
+ * <p>
+ * 只压缩扩展名在 {@code types} 中的文件，并用第一个缓冲块做采样：以最快级别试压，
+ * 压缩后大小超过原大小的 {@code min-ratio} 倍时视为不可压缩，原样存储。
+ * 去重存储按原始内容摘要保存内容块，开启去重时不压缩。
+ */
+@Slf4j
+@Component
+public class ContentCompression {
+
+    @Value("${file.storage.compression.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.storage.compression.codec:gzip}")
+    private String codecName;
+
+    @Value("${file.storage.compression.level:-1}")
+    private int level;
+
+    @Value("${file.storage.compression.types:txt,doc,xls}")
+    private String types;
+
+    @Value("${file.storage.compression.min-ratio:0.9}")
+    private double minRatio;
+
+    @Value("${file.storage.dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private ContentCodec codec;
+
+    private Set<String> extensions;
+
+    private Counter compressedCounter;
+
+    private Counter incompressibleCounter;
+
+    private Counter savedBytesCounter;
+
+    @PostConstruct
+    public void init() {
+        codec = ContentCodec.of(codecName);
+        extensions = Arrays.stream(types.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .map(type -> type.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        if (enabled && dedupEnabled) {
+            log.warn("storage compression is disabled because dedup storage is enabled");
+            enabled = false;
+        }
+        compressedCounter = Counter.builder("file.compression.parts").tag("result", "compressed")
+                .description("uploaded files stored compressed")
+                .register(meterRegistry);
+        incompressibleCounter = Counter.builder("file.compression.parts").tag("result", "incompressible")
+                .description("compressible types stored raw because the sample did not compress")
+                .register(meterRegistry);
+        savedBytesCounter = Counter.builder("file.compression.bytes.saved")
+                .description("disk bytes saved by compression at rest")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 根据文件名与第一个缓冲块选择压缩算法
+     *
+     * @param sample 第一个缓冲块，读取位置不变
+     * @return 不压缩时返回null
+     */
+    public ContentCodec select(String fileName, ByteBuffer sample) {
+        if (!enabled) {
+            return null;
+        }
+        String extension = StringUtils.getFilenameExtension(fileName);
+        if (extension == null || !extensions.contains(extension.toLowerCase(Locale.ROOT))) {
+            return null;
+        }
+        if (sampledRatio(sample) > minRatio) {
+            incompressibleCounter.increment();
+            return null;
+        }
+        compressedCounter.increment();
+        return codec;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * 记录一个文件压缩后节省的字节数
+     */
+    public void recordSaved(long originalSize, long storedSize) {
+        savedBytesCounter.increment(Math.max(0, originalSize - storedSize));
+    }
+
+    private static double sampledRatio(ByteBuffer sample) {
+        ByteBuffer input = sample.duplicate();
+        int size = input.remaining();
+        if (size == 0) {
+            return 1;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            // 只需判断是否达到阈值，输出缓冲区与输入等长，写满即视为不可压缩
+            ByteBuffer output = ByteBuffer.allocate(size);
+            while (!deflater.finished() && output.hasRemaining()) {
+                deflater.deflate(output);
+            }
+            return deflater.finished() ? (double) output.position() / size : 1;
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.mini.storage;
+
+import com.google.common.hash.Hashing;
+import com.mini.entity.FileInfo;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地文件存储，负责存储位置分配、临时文件与原子提交
+ * <p>
+ * 上传内容先写入所选存储卷根目录下的临时文件，落盘（fsync）后再原子提交为最终文件名，
+ * 保证最终路径上只会出现完整的文件，且不会覆盖已有文件。
+ * <ul>
+ *     <li>可配置多个存储卷，新文件按剩余空间最多（free-space）或轮询（round-robin）选择存储卷</li>
+ *     <li>sharded 布局下文件位于 {@code <卷>/<xx>/<yy>/<文件名>}，xx、yy 取自文件名哈希，
+ *     单个目录的条目数控制在总量的 1/65536</li>
+ * </ul>
+ * 最终路径记录在 fileInfo.filePath 中，读取时不依赖当前配置，调整存储卷或布局不影响已有文件。
+ */
+@Slf4j
+@Component
+public class FileStorage {
+
+    private static final String TEMP_PREFIX = ".";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Value("${file.storage.volumes:${file.upload.path}}")
+    private String[] volumePaths;
+
+    @Value("${file.storage.placement:free-space}")
+    private String placement;
+
+    @Value("${file.storage.layout:sharded}")
+    private String layout;
+
+    @Value("${file.storage.min-free-bytes:1073741824}")
+    private long minFreeBytes;
+
+    @Resource
+    private BlobStore blobStore;
+
+    // 段文件存储依赖本类的存储卷，延迟获取以避免循环依赖
+    @Resource
+    private ObjectProvider<SegmentStore> segmentStoreProvider;
+
+    private List<Path> volumes;
+
+    private final AtomicInteger nextVolume = new AtomicInteger();
+
+    @PostConstruct
+    public void init() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (String volumePath : volumePaths) {
+            Path volume = Paths.get(volumePath.trim()).toAbsolutePath().normalize();
+            Files.createDirectories(volume);
+            paths.add(volume);
+        }
+        volumes = Collections.unmodifiableList(paths);
+        log.info("file storage volumes = {}, placement = {}, layout = {}", volumes, placement, layout);
+    }
+
+    public List<Path> getVolumes() {
+        return volumes;
+    }
+
+    public boolean isSharded() {
+        return !"flat".equalsIgnoreCase(layout);
+    }
+
+    /**
+     * 在选定的存储卷根目录下创建临时文件（与最终文件同一文件系统，保证可以原子重命名）
+     */
+    public Path createTempFile() throws IOException {
+        return Files.createFile(selectVolume().resolve(TEMP_PREFIX + UUID.randomUUID() + TEMP_SUFFIX));
+    }
+
+    /**
+     * 将已落盘的文件原子提交为最终文件，并同步目录项
+     * <p>
+     * 最终文件位于源文件所在的存储卷，源文件不在任何存储卷下时（如分片上传的会话目录）选择同一文件系统上的存储卷。
+     * 先建立硬链接再删除源文件，目标已存在时抛出 {@link FileAlreadyExistsException}，不会覆盖已有文件；
+     * 文件系统不支持硬链接时（{@link UnsupportedOperationException}，或 EPERM/EXDEV 等 {@link FileSystemException}）
+     * 退化为检查后重命名。
+     */
+    public Path commit(Path tempFile, String fileName) throws IOException {
+        Path target = resolve(volumeOf(tempFile), fileName);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.createLink(target, tempFile);
+            discard(tempFile);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.debug("hard link not supported, fall back to rename: {}, {}", target, e.toString());
+            if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(target.toString());
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        syncDirectory(target.getParent());
+        return target;
+    }
+
+    /**
+     * 文件在指定存储卷上按当前布局的位置
+     */
+    public Path resolve(Path volume, String fileName) {
+        if (!isSharded()) {
+            return volume.resolve(fileName);
+        }
+        int hash = Hashing.murmur3_32().hashString(fileName, StandardCharsets.UTF_8).asInt();
+        return volume.resolve(String.format("%02x", (hash >>> 24) & 0xff))
+                .resolve(String.format("%02x", (hash >>> 16) & 0xff))
+                .resolve(fileName);
+    }
+
+    /**
+     * 路径所在的存储卷，不在任何存储卷下时返回null
+     */
+    public Path findVolume(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        for (Path volume : volumes) {
+            if (normalized.startsWith(volume)) {
+                return volume;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 删除记录对应的文件内容，去重存储的内容块在最后一个引用释放后才删除，合并存储的内容由段整理回收
+     */
+    public void deleteContent(FileInfo fileInfo) throws IOException {
+        if (fileInfo.getContentHash() != null) {
+            blobStore.release(fileInfo.getContentHash());
+        } else if (fileInfo.getSegmentOffset() != null) {
+            segmentStoreProvider.getObject().release(fileInfo);
+        } else {
+            Files.deleteIfExists(Paths.get(fileInfo.getFilePath()));
+        }
+    }
+
+    /**
+     * 丢弃临时文件
+     */
+    public void discard(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("delete temp file error: {}", tempFile, e);
+        }
+    }
+
+    /**
+     * 重命名只有在目录项落盘后才算持久，部分平台不支持以只读方式打开目录，忽略即可
+     */
+    public void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("sync directory not supported: {}", dir);
+        }
+    }
+
+    /**
+     * 按放置策略选择存储卷，剩余空间低于 min-free-bytes 的卷不参与分配（全部不足时仍按策略选择）
+     */
+    private Path selectVolume() throws IOException {
+        if (volumes.size() == 1) {
+            return volumes.get(0);
+        }
+        if ("round-robin".equalsIgnoreCase(placement)) {
+            for (int i = 0; i < volumes.size(); i++) {
+                Path volume = volumes.get(Math.floorMod(nextVolume.getAndIncrement(), volumes.size()));
+                if (Files.getFileStore(volume).getUsableSpace() >= minFreeBytes) {
+                    return volume;
+                }
+            }
+            return volumes.get(Math.floorMod(nextVolume.getAndIncrement(), volumes.size()));
+        }
+        Path best = volumes.get(0);
+        long bestFree = -1;
+        for (Path volume : volumes) {
+            long free = Files.getFileStore(volume).getUsableSpace();
+            if (free > bestFree) {
+                best = volume;
+                bestFree = free;
+            }
+        }
+        return best;
+    }
+
+    private Path volumeOf(Path file) throws IOException {
+        Path volume = findVolume(file);
+        if (volume != null) {
+            return volume;
+        }
+        for (Path candidate : volumes) {
+            if (Files.getFileStore(candidate).equals(Files.getFileStore(file))) {
+                return candidate;
+            }
+        }
+        throw new IOException("no storage volume on the same file system as " + file);
+    }
+}
@@ -0,0 +1,540 @@
+package com.mini.storage;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.mini.batch.FileInfoWriteBehind;
+import com.mini.dto.DownloadFile;
+import com.mini.entity.FileInfo;
+import com.mini.id.IdGenerator;
+import com.mini.mapper.FileInfoMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 小文件合并存储
+ * <p>
+ * 不超过 {@code max-file-size} 的上传内容追加写入存储卷下 {@code .segments} 目录中的段文件，
+ * fileInfo 记录段文件路径（filePath）与内容的位置（segmentOffset、segmentLength），大文件仍按独立文件存放。
+ * <ul>
+ *     <li>每个存储卷同时只有一个活动段，追加在锁内完成，刷盘在锁外合并：一次 fsync 覆盖此前已写入的全部条目</li>
+ *     <li>活动段达到 {@code segment-size} 后封存；重启后总是新建活动段，崩溃时写了一半的条目没有记录引用，
+ *     不计入垃圾字节，所在段因其他垃圾被整理时回收</li>
+ *     <li>条目为 魔数、数据长度、存储文件名 与数据，读取时按记录中的位置直接定位，不解析条目头</li>
+ *     <li>删除（包括过期清理）时在段文件旁的 .tomb 文件中追加墓碑（位置、长度），用于统计段内的垃圾字节</li>
+ *     <li>后台整理垃圾比例超过 {@code garbage-ratio} 的封存段：以文件记录为准，把仍被引用的条目复制到活动段，
+ *     按原位置条件更新记录后删除旧段。副本写入后先记墓碑、记录更新成功后再撤销，
+ *     复制与更新记录之间崩溃时留下的副本仍计入垃圾字节，可以被回收</li>
+ * </ul>
+ * 整理跳过封存不足 {@code compact-min-age} 或仍有记录在写后合并队列中的段。已打开旧段的下载不受删除影响，
+ * 缓存的旧位置由记录变更回调失效。
+ */
+@Slf4j
+@Component
+public class SegmentStore {
+
+    static final String SEGMENT_DIR = ".segments";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String TOMBSTONE_SUFFIX = ".tomb";
+
+    private static final int MAGIC = 0x46534547;
+
+    // 魔数、数据长度、文件名长度，其后为文件名
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Short.BYTES;
+
+    // 位置、长度（负数表示撤销该位置此前的墓碑）
+    private static final int TOMBSTONE_SIZE = 2 * Long.BYTES;
+
+    @Value("${file.storage.segment.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.storage.segment.max-file-size:262144}")
+    private long maxFileSize;
+
+    @Value("${file.storage.segment.segment-size:268435456}")
+    private long segmentSize;
+
+    @Value("${file.storage.segment.garbage-ratio:0.5}")
+    private double garbageRatio;
+
+    @Value("${file.storage.segment.compact-min-age:10m}")
+    private Duration compactMinAge;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private FileInfoMapper fileInfoMapper;
+
+    @Resource
+    private FileInfoWriteBehind fileInfoWriteBehind;
+
+    @Resource
+    private IdGenerator idGenerator;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<Path, Segment> segments = new ConcurrentHashMap<>();
+
+    // 存储卷 -> 活动段，受appendLock保护
+    private final Map<Path, Segment> activeSegments = new HashMap<>();
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private Counter appendCounter;
+
+    private Counter compactedCounter;
+
+    private Counter reclaimedCounter;
+
+    @PostConstruct
+    public void init() throws IOException {
+        for (Path volume : fileStorage.getVolumes()) {
+            Path dir = volume.resolve(SEGMENT_DIR);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    segments.put(path, Segment.load(path));
+                }
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.info("loaded {} segments, {} bytes, {} garbage bytes", segments.size(), totalBytes(), garbageBytes());
+        }
+        Gauge.builder("file.segment.count", segments, Map::size)
+                .description("segment files holding packed small files")
+                .register(meterRegistry);
+        Gauge.builder("file.segment.bytes", this, SegmentStore::totalBytes)
+                .description("bytes in segment files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.segment.garbage.bytes", this, SegmentStore::garbageBytes)
+                .description("tombstoned bytes in segment files waiting for compaction")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        appendCounter = Counter.builder("file.segment.appends")
+                .description("small files appended to segment files")
+                .register(meterRegistry);
+        compactedCounter = Counter.builder("file.segment.compactions")
+                .description("segment files rewritten and removed by compaction")
+                .register(meterRegistry);
+        reclaimedCounter = Counter.builder("file.segment.reclaimed.bytes")
+                .description("bytes freed by segment compaction")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        appendLock.lock();
+        try {
+            for (Segment segment : activeSegments.values()) {
+                seal(segment);
+            }
+            activeSegments.clear();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * 该大小的内容是否合并存储
+     */
+    public boolean accepts(long size) {
+        return enabled && size <= maxFileSize;
+    }
+
+    /**
+     * 把已写完的临时文件内容追加到存储卷的活动段，刷盘后返回；临时文件由调用方删除
+     */
+    public Location append(Path volume, Path source, String fileName) throws IOException {
+        return append(volume, ByteBuffer.wrap(Files.readAllBytes(source)), fileName);
+    }
+
+    /**
+     * 写入墓碑，记录随后由调用方逻辑删除；段已被整理删除时忽略
+     */
+    public void release(FileInfo fileInfo) throws IOException {
+        Segment segment = segments.get(Paths.get(fileInfo.getFilePath()));
+        if (segment != null) {
+            segment.tombstone(fileInfo.getSegmentOffset(), fileInfo.getSegmentLength());
+        }
+    }
+
+    /**
+     * 整理垃圾比例超过阈值的封存段，垃圾比例高的优先
+     *
+     * @return 删除的段数，已有整理在进行时返回0
+     */
+    public int compact() {
+        if (!compacting.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            long sealedBefore = System.currentTimeMillis() - compactMinAge.toMillis();
+            List<Segment> candidates = segments.values().stream()
+                    .filter(segment -> segment.sealedAt > 0 && segment.sealedAt <= sealedBefore)
+                    .filter(segment -> segment.garbageRatio() >= garbageRatio)
+                    .sorted(Comparator.comparingDouble(Segment::garbageRatio).reversed())
+                    .toList();
+            int count = 0;
+            for (Segment segment : candidates) {
+                try {
+                    if (compact(segment)) {
+                        count++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.error("compact segment error: {}", segment.path, e);
+                }
+            }
+            return count;
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * 段文件目录下的路径
+     */
+    public static boolean isSegmentFile(String filePath) {
+        Path parent = Paths.get(filePath).getParent();
+        return parent != null && parent.getFileName() != null && SEGMENT_DIR.equals(parent.getFileName().toString());
+    }
+
+    /**
+     * 读取下载内容：独立文件读取整个文件，合并存储时只读取段文件中的对应区间
+     */
+    public static InputStream newInputStream(DownloadFile file) throws IOException {
+        if (file.getOffset() == 0) {
+            return Files.newInputStream(file.getPath());
+        }
+        FileChannel channel = FileChannel.open(file.getPath(), StandardOpenOption.READ);
+        try {
+            channel.position(file.getOffset());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return ByteStreams.limit(Channels.newInputStream(channel), file.getLength());
+    }
+
+    private Location append(Path volume, ByteBuffer data, String fileName) throws IOException {
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        long length = data.remaining();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + name.length)
+                .putInt(MAGIC)
+                .putLong(length)
+                .putShort((short) name.length)
+                .put(name)
+                .flip();
+        long entrySize = header.remaining() + length;
+        Segment segment;
+        long offset;
+        long end;
+        appendLock.lock();
+        try {
+            segment = activeSegments.get(volume);
+            if (segment == null || segment.size + entrySize > segmentSize) {
+                if (segment != null) {
+                    seal(segment);
+                }
+                segment = create(volume);
+                activeSegments.put(volume, segment);
+            }
+            offset = segment.size + header.remaining();
+            ByteBuffer[] buffers = {header, data};
+            try {
+                while (data.hasRemaining()) {
+                    segment.channel.write(buffers);
+                }
+            } catch (IOException e) {
+                // 写了一半的条目之后不能再追加
+                activeSegments.remove(volume);
+                seal(segment);
+                throw e;
+            }
+            segment.size += entrySize;
+            end = segment.size;
+        } finally {
+            appendLock.unlock();
+        }
+        segment.sync(end);
+        appendCounter.increment();
+        return new Location(segment.path, offset, length);
+    }
+
+    private Segment create(Path volume) throws IOException {
+        Path dir = volume.resolve(SEGMENT_DIR);
+        Files.createDirectories(dir);
+        Path path = dir.resolve(String.format("%016x", idGenerator.nextId()) + SEGMENT_SUFFIX);
+        Segment segment = new Segment(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        fileStorage.syncDirectory(dir);
+        segments.put(path, segment);
+        log.info("created segment: {}", path);
+        return segment;
+    }
+
+    private void seal(Segment segment) {
+        try {
+            segment.seal();
+        } catch (IOException e) {
+            log.warn("seal segment error: {}", segment.path, e);
+        }
+    }
+
+    /**
+     * 复制仍被引用的条目后删除段文件
+     *
+     * @return false 表示该段暂时不能整理
+     */
+    private boolean compact(Segment segment) throws IOException {
+        List<Entry> entries = readEntries(segment);
+        // 先查写后合并队列再查库：记录入库后才从队列移除，两次检查之间入库的记录不会被漏掉
+        for (Entry entry : entries) {
+            if (fileInfoWriteBehind.findPending(entry.fileName()) != null) {
+                log.debug("skip compacting segment with pending rows: {}", segment.path);
+                return false;
+            }
+        }
+        Map<String, FileInfo> rows = new HashMap<>();
+        List<String> fileNames = entries.stream().map(Entry::fileName).distinct().toList();
+        for (List<String> batch : Lists.partition(fileNames, 500)) {
+            for (FileInfo row : fileInfoMapper.selectByFileNames(batch)) {
+                rows.put(row.getFileName(), row);
+            }
+        }
+        String segmentPath = segment.path.toString();
+        Path volume = segment.path.getParent().getParent();
+        long moved = 0;
+        int movedCount = 0;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            for (Entry entry : entries) {
+                FileInfo row = rows.get(entry.fileName());
+                if (row == null || !segmentPath.equals(row.getFilePath())
+                        || !Objects.equals(row.getSegmentOffset(), entry.offset())) {
+                    continue;
+                }
+                ByteBuffer data = ByteBuffer.allocate((int) entry.length());
+                readFully(channel, data, entry.offset());
+                Location location = append(volume, data.flip(), entry.fileName());
+                // 记录更新前副本没有引用，先按垃圾计入；复制期间被删除时保持该墓碑
+                Segment target = segments.get(location.path());
+                if (target != null) {
+                    target.tombstone(location.offset(), location.length());
+                }
+                if (fileInfoMapper.relocate(row.getId(), segmentPath, entry.offset(),
+                        location.path().toString(), location.offset()) > 0) {
+                    if (target != null) {
+                        target.tombstone(location.offset(), -location.length());
+                    }
+                    moved += entry.length();
+                    movedCount++;
+                }
+            }
+        }
+        segments.remove(segment.path);
+        segment.delete();
+        compactedCounter.increment();
+        reclaimedCounter.increment(Math.max(0, segment.size - moved));
+        log.info("compacted segment: {}, entries = {}, moved = {}, reclaimed bytes = {}",
+                segment.path, entries.size(), movedCount, segment.size - moved);
+        return true;
+    }
+
+    /**
+     * 顺序解析段文件中的条目，遇到不完整或损坏的条目时停止
+     */
+    private static List<Entry> readEntries(Segment segment) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position + HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                header.flip();
+                int magic = header.getInt();
+                long length = header.getLong();
+                int nameLength = Short.toUnsignedInt(header.getShort());
+                long offset = position + HEADER_SIZE + nameLength;
+                if (magic != MAGIC || length < 0 || offset + length > size) {
+                    log.warn("truncated segment entry: {} at {}", segment.path, position);
+                    break;
+                }
+                ByteBuffer name = ByteBuffer.allocate(nameLength);
+                readFully(channel, name, position + HEADER_SIZE);
+                entries.add(new Entry(new String(name.array(), StandardCharsets.UTF_8), offset, length));
+                position = offset + length;
+            }
+        }
+        return entries;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("segment truncated");
+            }
+        }
+    }
+
+    private long totalBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size).sum();
+    }
+
+    private long garbageBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.garbage.get()).sum();
+    }
+
+    /**
+     * 内容在段文件中的位置
+     */
+    public record Location(Path path, long offset, long length) {
+    }
+
+    private record Entry(String fileName, long offset, long length) {
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+
+        private final Path tombstonePath;
+
+        // 活动段的写通道，封存后为null
+        private FileChannel channel;
+
+        // 已写入的字节数，活动段受appendLock保护
+        private volatile long size;
+
+        // 已刷盘的字节数，受this保护
+        private long synced;
+
+        // 封存时间（毫秒），活动段为0
+        private volatile long sealedAt;
+
+        private final AtomicLong garbage = new AtomicLong();
+
+        private boolean deleted;
+
+        Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.tombstonePath = path.resolveSibling(path.getFileName() + TOMBSTONE_SUFFIX);
+            this.channel = channel;
+        }
+
+        /**
+         * 启动时加载已有的段，一律视为已封存；封存时间取段文件的修改时间
+         */
+        static Segment load(Path path) throws IOException {
+            Segment segment = new Segment(path, null);
+            segment.size = Files.size(path);
+            segment.synced = segment.size;
+            segment.sealedAt = Files.getLastModifiedTime(path).toMillis();
+            if (Files.exists(segment.tombstonePath)) {
+                ByteBuffer tombstones = ByteBuffer.wrap(Files.readAllBytes(segment.tombstonePath));
+                while (tombstones.remaining() >= TOMBSTONE_SIZE) {
+                    tombstones.getLong();
+                    segment.garbage.addAndGet(tombstones.getLong());
+                }
+            }
+            return segment;
+        }
+
+        /**
+         * 确保 end 之前的内容已落盘；等待期间其他线程的 fsync 已覆盖时直接返回
+         */
+        synchronized void sync(long end) throws IOException {
+            if (synced >= end) {
+                return;
+            }
+            if (channel == null) {
+                // 封存时 fsync 失败，无法确认这些条目已落盘
+                throw new IOException("segment sealed before entries were synced: " + path);
+            }
+            long target = size;
+            channel.force(false);
+            synced = target;
+        }
+
+        synchronized void seal() throws IOException {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.force(false);
+                synced = size;
+            } finally {
+                channel.close();
+                channel = null;
+                sealedAt = System.currentTimeMillis();
+            }
+        }
+
+        /**
+         * @param length 垃圾字节数，负数撤销该位置此前记录的墓碑
+         */
+        synchronized void tombstone(long offset, long length) throws IOException {
+            if (deleted) {
+                return;
+            }
+            try (FileChannel tombstones = FileChannel.open(tombstonePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer record = ByteBuffer.allocate(TOMBSTONE_SIZE).putLong(offset).putLong(length).flip();
+                while (record.hasRemaining()) {
+                    tombstones.write(record);
+                }
+            }
+            garbage.addAndGet(length);
+        }
+
+        synchronized void delete() throws IOException {
+            deleted = true;
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(tombstonePath);
+        }
+
+        double garbageRatio() {
+            long total = size;
+            return total == 0 ? 1 : (double) garbage.get() / total;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.mini.storage;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.mini.dto.MigrationStatus;
+import com.mini.entity.FileInfo;
+import com.mini.executor.TaskExecutors;
+import com.mini.mapper.FileInfoMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 将平铺在存储卷根目录下的历史文件在线迁移到分片目录
+ * <p>
+ * 按ID分批扫描有效记录，对每个文件：
+ * <ol>
+ *     <li>在分片目录中为原文件建立硬链接，新旧路径同时可读</li>
+ *     <li>更新 fileInfo.filePath，由 {@link com.mini.mapper.FileInfoChangeInterceptor} 失效本节点缓存</li>
+ *     <li>等待宽限期（覆盖其他节点缓存的过期时间）后删除旧路径</li>
+ * </ol>
+ * 文件系统不支持硬链接时退化为原子重命名，期间持有旧路径的下载会按ID重新查询记录后重试。
+ * 迁移可重复执行：已位于分片目录的记录会检查并清理残留的旧路径。迁移速率由 {@code file.storage.migration.rate} 限制。
+ */
+@Slf4j
+@Component
+public class StorageMigrator {
+
+    @Value("${file.storage.migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.storage.migration.rate:200}")
+    private double rate;
+
+    @Value("${file.storage.migration.unlink-grace:15m}")
+    private Duration unlinkGrace;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private FileInfoMapper fileInfoMapper;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 受this保护
+    private final MigrationStatus status = new MigrationStatus();
+
+    // 等待删除的旧路径，按到期时间排序，仅迁移线程访问
+    private final Deque<PendingUnlink> pendingUnlinks = new ArrayDeque<>();
+
+    private Counter migratedCounter;
+
+    @PostConstruct
+    public void init() {
+        migratedCounter = Counter.builder("file.storage.migrated")
+                .description("files moved into the sharded layout")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在I/O线程池中启动迁移
+     *
+     * @return false 表示已有迁移在进行或未启用分片布局
+     */
+    public boolean start() {
+        if (!fileStorage.isSharded() || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (this) {
+            BeanUtils.copyProperties(new MigrationStatus(), status);
+            status.setRunning(true);
+            status.setStartTime(LocalDateTime.now());
+        }
+        try {
+            taskExecutors.io().execute(this::migrate);
+        } catch (RuntimeException e) {
+            finish();
+            throw e;
+        }
+        return true;
+    }
+
+    public synchronized MigrationStatus getStatus() {
+        MigrationStatus copy = new MigrationStatus();
+        BeanUtils.copyProperties(status, copy);
+        return copy;
+    }
+
+    private void migrate() {
+        RateLimiter limiter = RateLimiter.create(rate);
+        try {
+            long afterId = 0;
+            while (true) {
+                List<FileInfo> batch = fileInfoMapper.selectAfterId(afterId, batchSize);
+                for (FileInfo fileInfo : batch) {
+                    limiter.acquire();
+                    migrate(fileInfo);
+                }
+                unlinkDue(false);
+                if (batch.size() < batchSize) {
+                    break;
+                }
+                afterId = batch.get(batch.size() - 1).getId();
+                synchronized (this) {
+                    status.setLastId(afterId);
+                }
+            }
+            log.info("storage migration scanned all records, waiting {} to unlink {} old paths",
+                    unlinkGrace, pendingUnlinks.size());
+            unlinkDue(true);
+        } catch (Exception e) {
+            log.error("storage migration error, {} old paths are left in place", pendingUnlinks.size(), e);
+            pendingUnlinks.clear();
+        } finally {
+            finish();
+        }
+        log.info("storage migration finished: {}", getStatus());
+    }
+
+    private void migrate(FileInfo fileInfo) {
+        synchronized (this) {
+            status.setScanned(status.getScanned() + 1);
+        }
+        if (fileInfo.getContentHash() != null || fileInfo.getSegmentOffset() != null || fileInfo.getFilePath() == null) {
+            // 去重内容块本身按摘要分片存放，合并存储的内容位于段文件中
+            count(Outcome.SKIPPED);
+            return;
+        }
+        Path source = Paths.get(fileInfo.getFilePath());
+        Path volume = fileStorage.findVolume(source);
+        if (volume == null) {
+            count(Outcome.SKIPPED);
+            return;
+        }
+        Path target = fileStorage.resolve(volume, fileInfo.getFileName());
+        try {
+            if (source.equals(target)) {
+                // 已迁移，清理上次迁移中断时残留的旧路径
+                Path flat = volume.resolve(fileInfo.getFileName());
+                if (!flat.equals(target) && Files.exists(flat) && Files.isSameFile(flat, target)) {
+                    scheduleUnlink(flat);
+                }
+                count(Outcome.SKIPPED);
+                return;
+            }
+            if (!Files.exists(source)) {
+                count(Outcome.SKIPPED);
+                return;
+            }
+            Files.createDirectories(target.getParent());
+            boolean linked = link(source, target);
+            fileStorage.syncDirectory(target.getParent());
+
+            FileInfo update = new FileInfo();
+            update.setId(fileInfo.getId());
+            update.setFilePath(target.toString());
+            fileInfoMapper.update(update);
+            if (linked) {
+                scheduleUnlink(source);
+            }
+            migratedCounter.increment();
+            count(Outcome.MIGRATED);
+        } catch (IOException | RuntimeException e) {
+            log.warn("migrate file error: {}, {}", fileInfo.getId(), source, e);
+            count(Outcome.FAILED);
+        }
+    }
+
+    /**
+     * @return true 建立了硬链接，旧路径需稍后删除；false 已直接重命名
+     */
+    private boolean link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            if (Files.isSameFile(source, target)) {
+                return true;
+            }
+            throw e;
+        } catch (UnsupportedOperationException e) {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            return false;
+        }
+    }
+
+    private void scheduleUnlink(Path path) {
+        pendingUnlinks.add(new PendingUnlink(path, System.nanoTime() + unlinkGrace.toNanos()));
+        synchronized (this) {
+            status.setPendingUnlinks(pendingUnlinks.size());
+        }
+    }
+
+    /**
+     * 删除已过宽限期的旧路径
+     *
+     * @param wait true 时等待全部旧路径到期
+     */
+    private void unlinkDue(boolean wait) throws InterruptedException {
+        while (!pendingUnlinks.isEmpty()) {
+            PendingUnlink head = pendingUnlinks.peek();
+            long remaining = head.dueTime - System.nanoTime();
+            if (remaining > 0) {
+                if (!wait) {
+                    break;
+                }
+                Thread.sleep(Duration.ofNanos(remaining));
+            }
+            pendingUnlinks.poll();
+            try {
+                Files.deleteIfExists(head.path);
+            } catch (IOException e) {
+                log.warn("delete migrated old path error: {}", head.path, e);
+            }
+            synchronized (this) {
+                status.setPendingUnlinks(pendingUnlinks.size());
+            }
+        }
+    }
+
+    private synchronized void count(Outcome outcome) {
+        switch (outcome) {
+            case MIGRATED:
+                status.setMigrated(status.getMigrated() + 1);
+                break;
+            case FAILED:
+                status.setFailed(status.getFailed() + 1);
+                break;
+            default:
+                status.setSkipped(status.getSkipped() + 1);
+                break;
+        }
+    }
+
+    private void finish() {
+        synchronized (this) {
+            status.setRunning(false);
+            status.setPendingUnlinks(pendingUnlinks.size());
+            status.setFinishTime(LocalDateTime.now());
+        }
+        running.set(false);
+    }
+
+    private enum Outcome {
+        MIGRATED, SKIPPED, FAILED
+    }
+
+    private static final class PendingUnlink {
+
+        private final Path path;
+
+        private final long dueTime;
+
+        PendingUnlink(Path path, long dueTime) {
+            this.path = path;
+            this.dueTime = dueTime;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.mini.upload;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 分片上传会话存储
+ * <p>
+ * 每个会话在会话目录下有独立子目录：创建时按文件总大小预分配 data 文件，
+ * 各分片以定位写（positional write）直接写入最终偏移，多个分片可以并行上传；
+ * 全部分片到齐后由调用方将 data 文件原子重命名到最终位置，不需要再次拷贝合并。
+ * <ul>
+ *     <li>分片内容由 {@link FileChannel#transferFrom} 从请求流写入文件，不占用堆内缓冲</li>
+ *     <li>分片落盘后才记入 chunks 日志，进程重启后从日志恢复已接收的分片</li>
+ *     <li>重传已接收的分片时先撤销其接收标记再覆盖，覆盖中途失败时该分片需要再次上传；同一分片不允许并发写入</li>
+ *     <li>超过 session-ttl 未活动的会话由定时任务回收</li>
+ * </ul>
+ * 会话目录需与上传目录在同一文件系统，保证完成时可以原子重命名。
+ */
+@Slf4j
+@Component
+public class ChunkedUploadStore {
+
+    private static final String MANIFEST = "manifest.properties";
+    private static final String DATA = "data";
+    private static final String CHUNK_LOG = "chunks.log";
+
+    @Value("${file.upload.chunked.session-dir:/data/uploads/.sessions}")
+    private String sessionDir;
+
+    @Value("${file.upload.chunked.max-file-size:10737418240}")
+    private long maxFileSize;
+
+    @Value("${file.upload.chunked.default-chunk-size:8388608}")
+    private int defaultChunkSize;
+
+    @Value("${file.upload.chunked.min-chunk-size:1048576}")
+    private int minChunkSize;
+
+    @Value("${file.upload.chunked.max-chunk-size:67108864}")
+    private int maxChunkSize;
+
+    @Value("${file.upload.chunked.max-sessions:1000}")
+    private int maxSessions;
+
+    @Value("${file.upload.chunked.session-ttl:24h}")
+    private Duration sessionTtl;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path root = Paths.get(sessionDir);
+        Files.createDirectories(root);
+        try (Stream<Path> dirs = Files.list(root)) {
+            dirs.filter(Files::isDirectory).forEach(this::recover);
+        }
+        if (!sessions.isEmpty()) {
+            log.info("recovered {} chunked upload sessions", sessions.size());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        sessions.values().forEach(this::closeChannels);
+    }
+
+    /**
+     * 创建会话并预分配数据文件
+     *
+     * @param chunkSize 为null时使用默认分片大小
+     */
+    public UploadSession create(String originalFileName, String storedFileName, long fileSize, Integer chunkSize)
+            throws IOException {
+        if (fileSize <= 0) {
+            throw new IllegalArgumentException("file is empty");
+        }
+        if (fileSize > maxFileSize) {
+            throw new IllegalArgumentException("file size exceeds the limit");
+        }
+        int size = chunkSize == null ? defaultChunkSize : chunkSize;
+        if (size < minChunkSize || size > maxChunkSize) {
+            throw new IllegalArgumentException("chunk size must be between " + minChunkSize + " and " + maxChunkSize);
+        }
+        if (sessions.size() >= maxSessions) {
+            throw new IllegalStateException("too many upload sessions, please retry later");
+        }
+        Path root = Paths.get(sessionDir);
+        if (Files.getFileStore(root).getUsableSpace() < fileSize) {
+            throw new IllegalStateException("insufficient disk space");
+        }
+
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        Path dir = Files.createDirectory(root.resolve(uploadId));
+        UploadSession session = new UploadSession(uploadId, originalFileName, storedFileName, fileSize, size, dir);
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(dir.resolve(DATA).toFile(), "rw")) {
+                file.setLength(fileSize);
+            }
+            Properties manifest = new Properties();
+            manifest.setProperty("originalFileName", originalFileName);
+            manifest.setProperty("storedFileName", storedFileName);
+            manifest.setProperty("fileSize", String.valueOf(fileSize));
+            manifest.setProperty("chunkSize", String.valueOf(size));
+            try (Writer writer = Files.newBufferedWriter(dir.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+                manifest.store(writer, null);
+            }
+            openChannels(session);
+        } catch (IOException | RuntimeException e) {
+            closeChannels(session);
+            FileSystemUtils.deleteRecursively(dir);
+            throw e;
+        }
+        session.lastAccessTime = System.currentTimeMillis();
+        sessions.put(uploadId, session);
+        return session;
+    }
+
+    public UploadSession get(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new NoSuchElementException("upload session not found: " + uploadId);
+        }
+        return session;
+    }
+
+    /**
+     * 写入一个分片，重复上传同一分片会覆盖原内容，写入完成前该分片视为未接收
+     *
+     * @param contentLength 请求声明的长度，未知时为-1
+     */
+    public void writeChunk(String uploadId, int index, InputStream in, long contentLength) throws IOException {
+        UploadSession session = get(uploadId);
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("chunk index out of range: " + index);
+        }
+        long length = session.chunkLength(index);
+        if (contentLength >= 0 && contentLength != length) {
+            throw new IllegalArgumentException("chunk " + index + " must be " + length + " bytes");
+        }
+        if (!session.writing.add(index)) {
+            throw new IllegalStateException("chunk " + index + " is being uploaded by another request");
+        }
+        session.lock.readLock().lock();
+        try {
+            if (session.closed) {
+                throw new IllegalStateException("upload session is completing: " + uploadId);
+            }
+            session.lastAccessTime = System.currentTimeMillis();
+            if (session.clearReceived(index)) {
+                // 先落盘撤销记录，覆盖中途失败或崩溃后不会把不完整的内容当作已接收
+                appendChunkLog(session, -index - 1);
+                log.info("chunk {}#{} is uploaded again, overwrite the received content", uploadId, index);
+            }
+            long position = (long) index * session.getChunkSize();
+            ReadableByteChannel source = Channels.newChannel(in);
+            long written = 0;
+            while (written < length) {
+                long n = session.dataChannel.transferFrom(source, position + written, length - written);
+                if (n <= 0) {
+                    break;
+                }
+                written += n;
+            }
+            if (written < length) {
+                throw new IllegalArgumentException("chunk " + index + " is incomplete: " + written + " of " + length + " bytes");
+            }
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("chunk " + index + " is larger than " + length + " bytes");
+            }
+            session.dataChannel.force(false);
+            if (session.markReceived(index)) {
+                appendChunkLog(session, index);
+            }
+            session.lastAccessTime = System.currentTimeMillis();
+        } finally {
+            session.lock.readLock().unlock();
+            session.writing.remove(index);
+        }
+    }
+
+    /**
+     * 封存会话，不再接收分片
+     *
+     * @return 已落盘的数据文件
+     */
+    public Path seal(String uploadId) throws IOException {
+        UploadSession session = get(uploadId);
+        session.lock.writeLock().lock();
+        try {
+            if (session.closed) {
+                throw new IllegalStateException("upload session is completing: " + uploadId);
+            }
+            if (!session.isComplete()) {
+                throw new IllegalStateException("upload session is missing " + session.getMissingChunks().size() + " chunks");
+            }
+            session.closed = true;
+            session.dataChannel.force(true);
+            closeChannels(session);
+            return session.getDir().resolve(DATA);
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 封存后合并提交失败时恢复会话，客户端可以重试完成
+     */
+    public void unseal(String uploadId) throws IOException {
+        UploadSession session = get(uploadId);
+        session.lock.writeLock().lock();
+        try {
+            if (session.closed && Files.exists(session.getDir().resolve(DATA))) {
+                openChannels(session);
+                session.closed = false;
+            }
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除会话及其目录（数据文件已被移走时只删除剩余文件）
+     */
+    public void remove(String uploadId) {
+        UploadSession session = sessions.remove(uploadId);
+        if (session == null) {
+            return;
+        }
+        session.lock.writeLock().lock();
+        try {
+            session.closed = true;
+            closeChannels(session);
+            FileSystemUtils.deleteRecursively(session.getDir());
+        } catch (IOException e) {
+            log.warn("delete upload session error: {}", session.getDir(), e);
+        } finally {
+            session.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 回收超过 session-ttl 未活动的会话，正在写入或完成中的会话跳过
+     *
+     * @return 回收的会话数
+     */
+    public int expire() {
+        long deadline = System.currentTimeMillis() - sessionTtl.toMillis();
+        int count = 0;
+        for (UploadSession session : sessions.values()) {
+            if (session.lastAccessTime >= deadline || !session.lock.writeLock().tryLock()) {
+                continue;
+            }
+            try {
+                if (session.closed) {
+                    continue;
+                }
+            } finally {
+                session.lock.writeLock().unlock();
+            }
+            remove(session.getUploadId());
+            log.info("expire upload session: {}, {}", session.getUploadId(), session.getOriginalFileName());
+            count++;
+        }
+        return count;
+    }
+
+    public Duration getSessionTtl() {
+        return sessionTtl;
+    }
+
+    private void openChannels(UploadSession session) throws IOException {
+        session.dataChannel = FileChannel.open(session.getDir().resolve(DATA), StandardOpenOption.WRITE);
+        session.chunkLog = FileChannel.open(session.getDir().resolve(CHUNK_LOG),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void closeChannels(UploadSession session) {
+        for (FileChannel channel : new FileChannel[]{session.dataChannel, session.chunkLog}) {
+            if (channel == null) {
+                continue;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("close upload session channel error: {}", session.getUploadId(), e);
+            }
+        }
+    }
+
+    /**
+     * @param record 已接收的分片序号，或撤销接收时的 -(序号+1)
+     */
+    private void appendChunkLog(UploadSession session, int record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).putInt(record).flip();
+        synchronized (session.chunkLog) {
+            while (buffer.hasRemaining()) {
+                session.chunkLog.write(buffer);
+            }
+            session.chunkLog.force(false);
+        }
+    }
+
+    /**
+     * 从会话目录恢复会话，manifest 或数据文件缺失的目录视为未创建完成并删除
+     */
+    private void recover(Path dir) {
+        String uploadId = dir.getFileName().toString();
+        try {
+            Path manifestPath = dir.resolve(MANIFEST);
+            if (!Files.exists(manifestPath) || !Files.exists(dir.resolve(DATA))) {
+                FileSystemUtils.deleteRecursively(dir);
+                return;
+            }
+            Properties manifest = new Properties();
+            try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                manifest.load(reader);
+            }
+            UploadSession session = new UploadSession(uploadId,
+                    manifest.getProperty("originalFileName"),
+                    manifest.getProperty("storedFileName"),
+                    Long.parseLong(manifest.getProperty("fileSize")),
+                    Integer.parseInt(manifest.getProperty("chunkSize")),
+                    dir);
+            Path chunkLog = dir.resolve(CHUNK_LOG);
+            long lastAccessTime = Files.getLastModifiedTime(manifestPath).toMillis();
+            if (Files.exists(chunkLog)) {
+                // 末尾不足4字节的记录是崩溃时未写完的部分，截掉后对应分片需要重传
+                long complete = Files.size(chunkLog) / Integer.BYTES * Integer.BYTES;
+                try (FileChannel channel = FileChannel.open(chunkLog, StandardOpenOption.WRITE)) {
+                    channel.truncate(complete);
+                }
+                ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(chunkLog));
+                while (records.remaining() >= Integer.BYTES) {
+                    int record = records.getInt();
+                    int index = record >= 0 ? record : -record - 1;
+                    if (index >= session.getChunkCount()) {
+                        continue;
+                    }
+                    if (record >= 0) {
+                        session.markReceived(index);
+                    } else {
+                        session.clearReceived(index);
+                    }
+                }
+                lastAccessTime = Math.max(lastAccessTime, Files.getLastModifiedTime(chunkLog).toMillis());
+            }
+            openChannels(session);
+            session.lastAccessTime = lastAccessTime;
+            sessions.put(uploadId, session);
+        } catch (IOException | RuntimeException e) {
+            log.warn("recover upload session error: {}", dir, e);
+        }
+    }
+}
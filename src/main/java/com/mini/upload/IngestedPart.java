@@ -0,0 +1,62 @@
+package com.mini.upload;
+
+import com.mini.storage.SegmentStore;
+import lombok.Data;
+
+import java.nio.file.Path;
+
+/**
+ * 单个上传分part的落盘结果
+ */
+@Data
+public class IngestedPart {
+
+    /**
+     * 客户端提交的原始文件名
+     */
+    private String originalFileName;
+
+    /**
+     * 存储文件名
+     */
+    private String storedFileName;
+
+    /**
+     * 落盘后的最终路径，合并存储时为段文件路径
+     */
+    private Path path;
+
+    /**
+     * 合并存储时内容在段文件中的位置，独立文件为null
+     */
+    private SegmentStore.Location location;
+
+    /**
+     * 文件大小（字节）
+     */
+    private long size;
+
+    /**
+     * 去重存储模式下的内容块摘要，普通模式为null
+     */
+    private String contentHash;
+
+    /**
+     * 原始内容SHA-256（十六进制），作为下载的强校验器
+     */
+    private String etag;
+
+    /**
+     * 存储压缩算法，未压缩为null
+     */
+    private String contentEncoding;
+
+    /**
+     * 失败原因，成功时为null
+     */
+    private String error;
+
+    public boolean isSuccess() {
+        return error == null && path != null;
+    }
+}
@@ -0,0 +1,427 @@
+package com.mini.upload;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mini.storage.FileStorage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 上传准入控制
+ * <p>
+ * 在读取请求体之前按声明的 Content-Length（未声明时按 max-request-size）决定是否接收上传：
+ * <ul>
+ *     <li>单个客户端的请求数与字节数各有一个令牌桶，超出时返回429，Retry-After 为令牌补足所需的时间</li>
+ *     <li>所有已准入、尚未处理完的上传字节数不超过 max-in-flight-bytes，超出时最多排队 queue-timeout，
+ *     仍无空位则返回503；单个请求超过上限时只在没有其他在途上传时准入</li>
+ *     <li>存储卷剩余空间（扣除在途字节）低于 min-free-bytes 后拒绝上传并返回503，
+ *     恢复到 resume-free-bytes 以上才重新接收，避免在阈值附近反复切换</li>
+ * </ul>
+ * 被拒绝的请求不读取请求体，由容器丢弃剩余内容，不占用临时文件与写盘线程。
+ */
+@Slf4j
+@Component
+public class UploadAdmission {
+
+    @Value("${file.upload.admission.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.upload.max-request-size:104857600}")
+    private long maxRequestSize;
+
+    @Value("${file.upload.admission.max-in-flight-bytes:1073741824}")
+    private long maxInFlightBytes;
+
+    @Value("${file.upload.admission.queue-timeout:2s}")
+    private Duration queueTimeout;
+
+    @Value("${file.upload.admission.busy-retry-after:5s}")
+    private Duration busyRetryAfter;
+
+    // 识别客户端的请求头（如反向代理设置的 X-Forwarded-For），为空时使用连接的远端地址
+    @Value("${file.upload.admission.client-header:}")
+    private String clientHeader;
+
+    @Value("${file.upload.admission.client-requests-per-second:5}")
+    private double clientRequestsPerSecond;
+
+    @Value("${file.upload.admission.client-request-burst:20}")
+    private double clientRequestBurst;
+
+    @Value("${file.upload.admission.client-bytes-per-second:20971520}")
+    private double clientBytesPerSecond;
+
+    @Value("${file.upload.admission.client-byte-burst:209715200}")
+    private double clientByteBurst;
+
+    @Value("${file.upload.admission.min-free-bytes:2147483648}")
+    private long minFreeBytes;
+
+    @Value("${file.upload.admission.resume-free-bytes:4294967296}")
+    private long resumeFreeBytes;
+
+    @Value("${file.upload.admission.disk-check-interval:1s}")
+    private Duration diskCheckInterval;
+
+    @Value("${file.upload.admission.disk-retry-after:60s}")
+    private Duration diskRetryAfter;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, ClientBuckets> clients;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    // 受lock保护
+    private long inFlightBytes;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    // 剩余空间按 disk-check-interval 缓存
+    private volatile long freeBytes = Long.MAX_VALUE;
+
+    private volatile long freeBytesCheckedAt;
+
+    // 剩余空间已低于 min-free-bytes，尚未恢复到 resume-free-bytes
+    private volatile boolean diskLow;
+
+    private Counter admittedCounter;
+
+    private Counter queuedCounter;
+
+    // 拒绝原因 -> 计数
+    private Map<String, Counter> rejectedCounters;
+
+    private Timer queueTimer;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (resumeFreeBytes < minFreeBytes) {
+            throw new IllegalArgumentException("file.upload.admission.resume-free-bytes must not be less than min-free-bytes");
+        }
+        clients = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        admittedCounter = Counter.builder("file.upload.admission").tag("result", "admitted")
+                .description("uploads admitted")
+                .register(meterRegistry);
+        queuedCounter = Counter.builder("file.upload.admission").tag("result", "queued")
+                .description("uploads that waited for in-flight capacity before being admitted or rejected")
+                .register(meterRegistry);
+        rejectedCounters = new HashMap<>();
+        for (String reason : List.of("client-rate", "disk-space", "in-flight")) {
+            rejectedCounters.put(reason, Counter.builder("file.upload.admission").tag("result", "rejected").tag("reason", reason)
+                    .description("uploads rejected before reading the request body")
+                    .register(meterRegistry));
+        }
+        queueTimer = Timer.builder("file.upload.admission.queue.time")
+                .description("time uploads waited for in-flight capacity")
+                .register(meterRegistry);
+        Gauge.builder("file.upload.inflight.bytes", this, UploadAdmission::getInFlightBytes)
+                .description("declared bytes of admitted uploads still being processed")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.upload.admission.waiting", waiting, AtomicInteger::get)
+                .description("uploads currently waiting for in-flight capacity")
+                .register(meterRegistry);
+        Gauge.builder("file.upload.admission.disk.low", this, admission -> admission.diskLow ? 1 : 0)
+                .description("1 while uploads are refused because the upload volume is low on space")
+                .register(meterRegistry);
+        log.info("upload admission enabled, maxInFlightBytes = {}, client limit = {} req/s, {} B/s, minFreeBytes = {}",
+                maxInFlightBytes, clientRequestsPerSecond, clientBytesPerSecond, minFreeBytes);
+    }
+
+    /**
+     * 申请上传许可，处理完成后必须关闭返回的许可
+     *
+     * @throws RejectedException 拒绝上传，携带响应状态码与 Retry-After
+     */
+    public Permit admit(HttpServletRequest request) {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+        long declared = request.getContentLengthLong();
+        long bytes = declared >= 0 ? declared : maxRequestSize;
+        if (bytes > maxRequestSize) {
+            // 超过上限的请求交给上传管道返回原有的错误信息，这里只按上限计
+            bytes = maxRequestSize;
+        }
+
+        if (isDiskLow(bytes)) {
+            throw reject(HttpStatus.SERVICE_UNAVAILABLE, "disk-space", diskRetryAfter.toNanos(), "upload storage is low on space");
+        }
+
+        ClientBuckets buckets = clients.get(clientKey(request), key -> new ClientBuckets(
+                new TokenBucket(clientRequestsPerSecond, clientRequestBurst),
+                new TokenBucket(clientBytesPerSecond, clientByteBurst)));
+        long waitNanos = buckets.tryAcquire(bytes);
+        if (waitNanos > 0) {
+            throw reject(HttpStatus.TOO_MANY_REQUESTS, "client-rate", waitNanos, "too many uploads from this client");
+        }
+
+        if (!acquire(bytes)) {
+            // 服务端繁忙不计入客户端的配额
+            buckets.refund(bytes);
+            throw reject(HttpStatus.SERVICE_UNAVAILABLE, "in-flight", busyRetryAfter.toNanos(), "too many uploads in progress");
+        }
+        admittedCounter.increment();
+        return new Permit(this, bytes);
+    }
+
+    public long getInFlightBytes() {
+        lock.lock();
+        try {
+            return inFlightBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 占用在途字节，容量不足时最多等待 queue-timeout
+     */
+    private boolean acquire(long bytes) {
+        lock.lock();
+        try {
+            if (fits(bytes)) {
+                inFlightBytes += bytes;
+                return true;
+            }
+            queuedCounter.increment();
+            waiting.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                long remaining = queueTimeout.toNanos();
+                while (!fits(bytes)) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlightBytes += bytes;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting.decrementAndGet();
+                queueTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean fits(long bytes) {
+        return inFlightBytes == 0 || inFlightBytes + bytes <= maxInFlightBytes;
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            inFlightBytes -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按剩余空间最多的存储卷判断，与新文件的默认放置策略一致；在途字节视为即将写入
+     */
+    private boolean isDiskLow(long bytes) {
+        long now = System.nanoTime();
+        if (now - freeBytesCheckedAt >= diskCheckInterval.toNanos()) {
+            freeBytesCheckedAt = now;
+            freeBytes = usableSpace();
+        }
+        long available = freeBytes - getInFlightBytes() - bytes;
+        if (diskLow) {
+            if (available >= resumeFreeBytes) {
+                diskLow = false;
+                log.info("upload volume space recovered, free = {}, resume uploads", freeBytes);
+            }
+        } else if (available < minFreeBytes) {
+            diskLow = true;
+            log.warn("upload volume low on space, free = {}, refuse uploads until {} bytes are free", freeBytes, resumeFreeBytes);
+        }
+        return diskLow;
+    }
+
+    private long usableSpace() {
+        long max = 0;
+        for (Path volume : fileStorage.getVolumes()) {
+            try {
+                max = Math.max(max, Files.getFileStore(volume).getUsableSpace());
+            } catch (IOException e) {
+                log.warn("read usable space error: {}", volume, e);
+            }
+        }
+        return max;
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        if (StringUtils.hasText(clientHeader)) {
+            String value = request.getHeader(clientHeader);
+            if (StringUtils.hasText(value)) {
+                // X-Forwarded-For 取最左侧的原始客户端
+                int comma = value.indexOf(',');
+                return (comma < 0 ? value : value.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private RejectedException reject(HttpStatus status, String reason, long retryAfterNanos, String message) {
+        rejectedCounters.get(reason).increment();
+        // 向上取整到秒，至少1秒
+        long retryAfterSeconds = Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        log.debug("upload rejected: {}, retry after {}s", reason, retryAfterSeconds);
+        return new RejectedException(status, retryAfterSeconds, message);
+    }
+
+    /**
+     * 上传许可，关闭时归还占用的在途字节
+     */
+    public static final class Permit implements AutoCloseable {
+
+        static final Permit NONE = new Permit(null, 0);
+
+        private final UploadAdmission admission;
+
+        private final long bytes;
+
+        private boolean closed;
+
+        private Permit(UploadAdmission admission, long bytes) {
+            this.admission = admission;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (admission != null && !closed) {
+                closed = true;
+                admission.release(bytes);
+            }
+        }
+    }
+
+    /**
+     * 上传被拒绝
+     */
+    @Getter
+    public static final class RejectedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HttpStatus status;
+
+        private final long retryAfterSeconds;
+
+        RejectedException(HttpStatus status, long retryAfterSeconds, String message) {
+            super(message);
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    /**
+     * 单个客户端的请求数与字节数令牌桶，两者都满足时才同时扣除
+     */
+    private record ClientBuckets(TokenBucket requests, TokenBucket bytes) {
+
+        /**
+         * @return 0 表示已扣除；否则为令牌补足所需的纳秒数
+         */
+        long tryAcquire(long size) {
+            synchronized (this) {
+                long now = System.nanoTime();
+                long wait = Math.max(requests.waitNanos(1, now), bytes.waitNanos(size, now));
+                if (wait == 0) {
+                    requests.take(1);
+                    bytes.take(size);
+                }
+                return wait;
+            }
+        }
+
+        void refund(long size) {
+            synchronized (this) {
+                requests.give(1);
+                bytes.give(size);
+            }
+        }
+    }
+
+    /**
+     * 令牌桶，调用方负责同步
+     * <p>
+     * 单次消耗超过桶容量时只要求桶满，扣除后余额为负，之后的请求需等待欠额补足。
+     */
+    private static final class TokenBucket {
+
+        private final double ratePerNano;
+
+        private final double capacity;
+
+        private double tokens;
+
+        private long refilledAt;
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.refilledAt = System.nanoTime();
+        }
+
+        long waitNanos(double cost, long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            double required = Math.min(cost, capacity);
+            return tokens >= required ? 0 : (long) Math.ceil((required - tokens) / ratePerNano);
+        }
+
+        void take(double cost) {
+            tokens -= cost;
+        }
+
+        void give(double cost) {
+            tokens = Math.min(capacity, tokens + cost);
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.mini.upload;
+
+import com.mini.executor.TaskExecutors;
+import com.mini.metrics.StageTimers;
+import com.mini.storage.BlobStore;
+import com.mini.storage.ContentCodec;
+import com.mini.storage.ContentCompression;
+import com.mini.storage.FileStorage;
+import com.mini.storage.SegmentStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 流式上传管道
+ * <p>
+ * 请求线程边接收边解析 multipart 请求体，把每个文件part切分为固定大小的缓冲块交给独立的写盘任务，
+ * 写盘任务写入临时文件、fsync 后原子重命名到最终位置。
+ * <ul>
+ *     <li>写盘任务运行在I/O线程池，单个管道的并发数受 {@code file.upload.ingest.parallelism} 限制，超出时请求线程阻塞等待</li>
+ *     <li>缓冲块来自全局固定大小的缓冲池，磁盘跟不上网络时请求线程阻塞在取缓冲块上，形成背压</li>
+ *     <li>写盘任务同时计算原始内容的 SHA-256 作为下载校验器；开启去重存储时写完后交给 {@link BlobStore} 按摘要提交</li>
+ *     <li>开启存储压缩时由 {@link ContentCompression} 根据第一个缓冲块决定是否边写边压缩</li>
+ *     <li>开启小文件合并存储时，不超过阈值的内容写完后追加到 {@link SegmentStore} 的段文件，临时文件不单独 fsync</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class UploadIngestPipeline {
+
+    // 写盘任务结束标记
+    private static final ByteBuffer END_OF_PART = ByteBuffer.allocate(0);
+    // 写盘任务放弃标记
+    private static final ByteBuffer ABORT_PART = ByteBuffer.allocate(0);
+
+    @Value("${file.upload.max-size}")
+    private Long maxFileSize;
+
+    @Value("${file.upload.max-request-size:104857600}")
+    private Long maxRequestSize;
+
+    @Value("${file.upload.ingest.parallelism:4}")
+    private int parallelism;
+
+    @Value("${file.upload.ingest.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${file.upload.ingest.buffer-count:64}")
+    private int bufferCount;
+
+    @Resource
+    private FileStorage fileStorage;
+
+    @Resource
+    private BlobStore blobStore;
+
+    @Resource
+    private SegmentStore segmentStore;
+
+    @Resource
+    private ContentCompression contentCompression;
+
+    @Resource
+    private TaskExecutors taskExecutors;
+
+    @Resource
+    private StageTimers stageTimers;
+
+    private Semaphore writerSlots;
+
+    private BlockingQueue<ByteBuffer> bufferPool;
+
+    @PostConstruct
+    public void init() {
+        writerSlots = new Semaphore(parallelism);
+        bufferPool = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            bufferPool.add(ByteBuffer.allocate(bufferSize));
+        }
+    }
+
+    /**
+     * 流式接收请求中的全部文件part，所有part落盘（或失败）后返回
+     *
+     * @param fileNamer 根据原始文件名校验并生成存储文件名，校验失败时抛出异常
+     */
+    public List<IngestedPart> ingest(HttpServletRequest request, Function<String, String> fileNamer) throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new RuntimeException("request is not multipart");
+        }
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        upload.setSizeMax(maxRequestSize);
+        upload.setHeaderCharset(StandardCharsets.UTF_8);
+
+        List<IngestedPart> parts = new ArrayList<>();
+        List<PartWriter> writers = new ArrayList<>();
+        try {
+            FileItemInputIterator iterator = upload.getItemIterator(request);
+            while (iterator.hasNext()) {
+                FileItemInput item = iterator.next();
+                if (item.isFormField()) {
+                    continue;
+                }
+                IngestedPart part = new IngestedPart();
+                parts.add(part);
+                try {
+                    part.setOriginalFileName(item.getName());
+                    part.setStoredFileName(fileNamer.apply(part.getOriginalFileName()));
+                } catch (RuntimeException e) {
+                    // 未读取的内容由迭代器在next时跳过
+                    part.setError(e.getMessage());
+                    continue;
+                }
+                PartWriter writer;
+                try {
+                    writer = startWriter(part);
+                } catch (RejectedExecutionException e) {
+                    part.setError("server busy, please retry later");
+                    continue;
+                }
+                writers.add(writer);
+                pump(item, writer);
+            }
+        } catch (IOException e) {
+            // 请求体读取失败（连接中断、超过请求大小限制等），已提交的part仍然有效
+            log.error("upload stream interrupted", e);
+            for (PartWriter writer : writers) {
+                writer.abort("upload stream interrupted: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (PartWriter writer : writers) {
+                writer.abort("upload interrupted");
+            }
+        }
+        for (PartWriter writer : writers) {
+            writer.done.join();
+        }
+        return parts;
+    }
+
+    private PartWriter startWriter(IngestedPart part) throws IOException, InterruptedException {
+        writerSlots.acquire();
+        try {
+            Path tempFile = blobStore.isEnabled() ? blobStore.createTempFile() : fileStorage.createTempFile();
+            PartWriter writer = new PartWriter(part, tempFile);
+            try {
+                taskExecutors.io().execute(writer);
+            } catch (RejectedExecutionException e) {
+                fileStorage.discard(writer.tempFile);
+                throw e;
+            }
+            return writer;
+        } catch (IOException | RuntimeException e) {
+            writerSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 将part内容按缓冲块转交写盘任务
+     */
+    private void pump(FileItemInput item, PartWriter writer) throws IOException, InterruptedException {
+        InputStream in = item.getInputStream();
+        long size = 0;
+        while (true) {
+            ByteBuffer buffer = bufferPool.take();
+            int read;
+            try {
+                read = in.readNBytes(buffer.array(), 0, buffer.capacity());
+            } catch (IOException e) {
+                release(buffer);
+                throw e;
+            }
+            if (read <= 0) {
+                release(buffer);
+                break;
+            }
+            size += read;
+            if (size > maxFileSize) {
+                release(buffer);
+                writer.abort("file size exceeds the limit");
+                return;
+            }
+            if (writer.failed) {
+                // 写盘已失败，剩余内容由迭代器跳过
+                release(buffer);
+                writer.abort(null);
+                return;
+            }
+            buffer.limit(read);
+            writer.chunks.put(buffer);
+        }
+        if (size == 0) {
+            writer.abort("file is empty");
+            return;
+        }
+        writer.finish(size);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void release(ByteBuffer buffer) {
+        buffer.clear();
+        bufferPool.offer(buffer);
+    }
+
+    /**
+     * 单个part的写盘任务，按顺序消费缓冲块
+     */
+    private class PartWriter implements Runnable {
+
+        private final IngestedPart part;
+
+        private final Path tempFile;
+
+        private final BlockingQueue<ByteBuffer> chunks = new LinkedBlockingQueue<>();
+
+        private final CompletableFuture<IngestedPart> done = new CompletableFuture<>();
+
+        // 原始内容摘要
+        private final MessageDigest digest = sha256();
+
+        private final boolean dedup;
+
+        // 写完后追加到段文件，由写盘任务在结束标记处决定
+        private boolean packed;
+
+        private volatile boolean failed;
+
+        private volatile String abortReason;
+
+        // 已消费到结束或放弃标记
+        private boolean terminated;
+
+        // 累计的写盘耗时，不含等待缓冲块的时间
+        private long writeNanos;
+
+        PartWriter(IngestedPart part, Path tempFile) {
+            this.part = part;
+            this.tempFile = tempFile;
+            this.dedup = blobStore.isEnabled();
+        }
+
+        void finish(long size) throws InterruptedException {
+            part.setSize(size);
+            chunks.put(END_OF_PART);
+        }
+
+        void abort(String reason) {
+            if (abortReason == null) {
+                abortReason = reason;
+            }
+            chunks.offer(ABORT_PART);
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean completed = write();
+                long commitStart = System.nanoTime();
+                if (completed) {
+                    part.setEtag(HexFormat.of().formatHex(digest.digest()));
+                }
+                if (completed && dedup) {
+                    part.setContentHash(part.getEtag());
+                    part.setPath(blobStore.commit(tempFile, part.getContentHash(), part.getSize()));
+                    stageTimers.recordNanos(StageTimers.Stage.DISK_WRITE, writeNanos + System.nanoTime() - commitStart);
+                } else if (completed && packed) {
+                    SegmentStore.Location location = segmentStore.append(fileStorage.findVolume(tempFile), tempFile,
+                            part.getStoredFileName());
+                    fileStorage.discard(tempFile);
+                    part.setLocation(location);
+                    part.setPath(location.path());
+                    stageTimers.recordNanos(StageTimers.Stage.DISK_WRITE, writeNanos + System.nanoTime() - commitStart);
+                } else if (completed) {
+                    part.setPath(fileStorage.commit(tempFile, part.getStoredFileName()));
+                    stageTimers.recordNanos(StageTimers.Stage.DISK_WRITE, writeNanos + System.nanoTime() - commitStart);
+                } else {
+                    part.setError(abortReason);
+                    fileStorage.discard(tempFile);
+                }
+            } catch (Exception e) {
+                log.error("write upload part error: {}", part.getOriginalFileName(), e);
+                failed = true;
+                part.setError("write file error: " + e.getMessage());
+                fileStorage.discard(tempFile);
+                drain();
+            } finally {
+                writerSlots.release();
+                done.complete(part);
+            }
+        }
+
+        /**
+         * @return 正常结束返回true，被放弃返回false
+         */
+        private boolean write() throws IOException, InterruptedException {
+            OutputStream encoder = null;
+            boolean first = true;
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (true) {
+                    ByteBuffer buffer = chunks.take();
+                    long start = System.nanoTime();
+                    if (buffer == END_OF_PART) {
+                        terminated = true;
+                        if (encoder != null) {
+                            // 写出压缩流结尾，下层通道保持打开
+                            OutputStream finished = encoder;
+                            encoder = null;
+                            finished.close();
+                            contentCompression.recordSaved(part.getSize(), channel.size());
+                        }
+                        // 去重模式下内容已存在时直接丢弃，由 BlobStore 只对新内容 fsync；合并存储由段文件统一 fsync
+                        packed = !dedup && segmentStore.accepts(channel.size());
+                        if (!dedup && !packed) {
+                            channel.force(true);
+                        }
+                        writeNanos += System.nanoTime() - start;
+                        return true;
+                    }
+                    if (buffer == ABORT_PART) {
+                        terminated = true;
+                        return false;
+                    }
+                    try {
+                        if (first) {
+                            first = false;
+                            ContentCodec codec = dedup
+                                    ? null : contentCompression.select(part.getOriginalFileName(), buffer);
+                            if (codec != null) {
+                                encoder = codec.encode(new ChannelSink(channel), contentCompression.getLevel());
+                                part.setContentEncoding(codec.getEncoding());
+                            }
+                        }
+                        digest.update(buffer.duplicate());
+                        if (encoder != null) {
+                            encoder.write(buffer.array(), buffer.position(), buffer.remaining());
+                        } else {
+                            while (buffer.hasRemaining()) {
+                                channel.write(buffer);
+                            }
+                        }
+                    } finally {
+                        release(buffer);
+                        writeNanos += System.nanoTime() - start;
+                    }
+                }
+            } finally {
+                if (encoder != null) {
+                    // 放弃或失败时释放压缩器（zstd 持有本地内存），临时文件随后删除
+                    try {
+                        encoder.close();
+                    } catch (IOException e) {
+                        log.debug("close encoder error: {}", e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * 写盘失败后继续归还请求线程已投递的缓冲块，直到收到结束或放弃标记
+         */
+        private void drain() {
+            if (terminated) {
+                return;
+            }
+            try {
+                while (true) {
+                    ByteBuffer buffer = chunks.poll(30, TimeUnit.SECONDS);
+                    if (buffer == null || buffer == END_OF_PART || buffer == ABORT_PART) {
+                        return;
+                    }
+                    release(buffer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 压缩流的下层输出，写入文件通道；关闭时不关闭通道，以便随后 fsync
+     */
+    private static final class ChannelSink extends OutputStream {
+
+        private final FileChannel channel;
+
+        ChannelSink(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
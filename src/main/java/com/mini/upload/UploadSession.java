@@ -0,0 +1,111 @@
+package com.mini.upload;
+
+import lombok.Getter;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 分片上传会话
+ * <p>
+ * 描述信息在创建时写入会话目录下的 manifest，已接收分片的序号逐条追加到 chunks 日志
+ * （重传已接收的分片前先追加 -(序号+1) 撤销），重启后可由 {@link ChunkedUploadStore} 恢复会话继续上传。
+ */
+public class UploadSession {
+
+    @Getter
+    private final String uploadId;
+
+    @Getter
+    private final String originalFileName;
+
+    @Getter
+    private final String storedFileName;
+
+    @Getter
+    private final long fileSize;
+
+    @Getter
+    private final int chunkSize;
+
+    @Getter
+    private final int chunkCount;
+
+    @Getter
+    private final Path dir;
+
+    // 以下字段仅供 ChunkedUploadStore 使用
+    final BitSet received = new BitSet();
+
+    // 分片写入持读锁，封存与删除持写锁
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 正在写入的分片序号，同一分片同时只允许一个请求写入
+    final Set<Integer> writing = ConcurrentHashMap.newKeySet();
+
+    FileChannel dataChannel;
+
+    FileChannel chunkLog;
+
+    @Getter
+    volatile long lastAccessTime;
+
+    // 已封存（开始合并提交）或已删除，不再接收分片
+    boolean closed;
+
+    UploadSession(String uploadId, String originalFileName, String storedFileName,
+                  long fileSize, int chunkSize, Path dir) {
+        this.uploadId = uploadId;
+        this.originalFileName = originalFileName;
+        this.storedFileName = storedFileName;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = (int) ((fileSize + chunkSize - 1) / chunkSize);
+        this.dir = dir;
+    }
+
+    /**
+     * 指定分片的字节数，最后一个分片可能不足 chunkSize
+     */
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, fileSize - (long) index * chunkSize);
+    }
+
+    public synchronized int getReceivedCount() {
+        return received.cardinality();
+    }
+
+    public synchronized List<Integer> getMissingChunks() {
+        List<Integer> missing = new ArrayList<>(chunkCount - received.cardinality());
+        for (int i = received.nextClearBit(0); i < chunkCount; i = received.nextClearBit(i + 1)) {
+            missing.add(i);
+        }
+        return missing;
+    }
+
+    public synchronized boolean isComplete() {
+        return received.cardinality() == chunkCount;
+    }
+
+    synchronized boolean markReceived(int index) {
+        if (received.get(index)) {
+            return false;
+        }
+        received.set(index);
+        return true;
+    }
+
+    synchronized boolean clearReceived(int index) {
+        if (!received.get(index)) {
+            return false;
+        }
+        received.clear(index);
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+-- 文件服务表结构（MySQL 8）
+-- 用于新部署；已有库按顺序执行 upgrade.sql 中尚未执行的步骤，修改表结构时两个文件需同步更新
+
+CREATE TABLE IF NOT EXISTS fileInfo (
+    id         BIGINT       NOT NULL COMMENT '雪花算法ID',
+    fileName   VARCHAR(255) NOT NULL COMMENT '存储文件名',
+    filePath   VARCHAR(512) COLLATE utf8mb4_0900_bin NOT NULL COMMENT '物理文件路径，按码点排序以便与目录遍历顺序对齐',
+    fileSize   BIGINT       NOT NULL COMMENT '文件大小（字节）',
+    status     INT          NOT NULL DEFAULT 0 COMMENT '0 有效，1 已删除',
+    uploadDate DATETIME     NOT NULL COMMENT '上传时间',
+    contentHash CHAR(64)    NULL COMMENT '去重存储模式下内容的SHA-256',
+    contentEncoding VARCHAR(16) NULL COMMENT '存储压缩算法（gzip/zstd），NULL表示未压缩',
+    etag       CHAR(64)     NULL COMMENT '原始内容的SHA-256，下载的强校验器',
+    segmentOffset BIGINT    NULL COMMENT '小文件合并存储时内容在段文件（filePath）中的起始位置，独立文件为NULL',
+    segmentLength BIGINT    NULL COMMENT '小文件合并存储时内容在段文件中的长度（字节）',
+    PRIMARY KEY (id),
+    KEY idx_fileName (fileName),
+    -- 列表游标分页、过期文件扫描
+    KEY idx_status_uploadDate_id (status, uploadDate, id),
+    -- 存储对账按路径区间扫描
+    KEY idx_filePath (filePath)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '文件信息';
+
+-- 去重存储的内容块，按SHA-256寻址，refCount为引用该内容的fileInfo记录数
+CREATE TABLE IF NOT EXISTS fileBlob (
+    digest     CHAR(64)     NOT NULL COMMENT '内容SHA-256',
+    filePath   VARCHAR(512) NOT NULL COMMENT '内容块物理路径',
+    fileSize   BIGINT       NOT NULL COMMENT '内容大小（字节）',
+    refCount   INT          NOT NULL DEFAULT 0 COMMENT '引用计数',
+    createDate DATETIME     NOT NULL COMMENT '首次写入时间',
+    PRIMARY KEY (digest)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '去重内容块';
+
+-- ID生成器工作节点租约，每个实例启动时占用一个workerId并定期续约
+CREATE TABLE IF NOT EXISTS idWorkerLease (
+    workerId      INT          NOT NULL COMMENT '工作节点ID（0-1023）',
+    owner         VARCHAR(128) NOT NULL COMMENT '持有者实例标识',
+    lastTimestamp BIGINT       NOT NULL DEFAULT 0 COMMENT '持有者最近发出的ID的时间戳（毫秒）',
+    expireTime    DATETIME     NOT NULL COMMENT '租约到期时间（数据库时间）',
+    PRIMARY KEY (workerId)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = 'ID生成器工作节点租约';
@@ -0,0 +1,53 @@
+-- 文件服务表结构升级脚本（MySQL 8）
+--
+-- 新部署直接执行 schema.sql；已有库按编号顺序执行尚未执行过的步骤，执行后的表结构与 schema.sql 一致。
+-- MySQL 8 不支持 ADD COLUMN IF NOT EXISTS，已执行过的步骤重复执行会报列或索引已存在，跳过即可。
+-- 第 3、4 步会重建 fileInfo 表，大表请在低峰期执行或使用 gh-ost / pt-online-schema-change。
+
+-- 1. 列表游标分页、过期文件扫描使用的索引
+ALTER TABLE fileInfo
+    ADD KEY idx_status_uploadDate_id (status, uploadDate, id);
+
+-- 2. 去重存储：内容哈希列与内容块表
+ALTER TABLE fileInfo
+    ADD COLUMN contentHash CHAR(64) NULL COMMENT '去重存储模式下内容的SHA-256' AFTER uploadDate;
+
+CREATE TABLE IF NOT EXISTS fileBlob (
+    digest     CHAR(64)     NOT NULL COMMENT '内容SHA-256',
+    filePath   VARCHAR(512) NOT NULL COMMENT '内容块物理路径',
+    fileSize   BIGINT       NOT NULL COMMENT '内容大小（字节）',
+    refCount   INT          NOT NULL DEFAULT 0 COMMENT '引用计数',
+    createDate DATETIME     NOT NULL COMMENT '首次写入时间',
+    PRIMARY KEY (digest)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = '去重内容块';
+
+-- 3. 分片上传支持超过 2GB 的文件
+ALTER TABLE fileInfo
+    MODIFY COLUMN fileSize BIGINT NOT NULL COMMENT '文件大小（字节）';
+
+-- 4. 存储对账按路径区间扫描：路径按码点排序并建索引
+ALTER TABLE fileInfo
+    MODIFY COLUMN filePath VARCHAR(512) COLLATE utf8mb4_0900_bin NOT NULL COMMENT '物理文件路径，按码点排序以便与目录遍历顺序对齐',
+    ADD KEY idx_filePath (filePath);
+
+-- 5. ID生成器工作节点租约
+CREATE TABLE IF NOT EXISTS idWorkerLease (
+    workerId      INT          NOT NULL COMMENT '工作节点ID（0-1023）',
+    owner         VARCHAR(128) NOT NULL COMMENT '持有者实例标识',
+    lastTimestamp BIGINT       NOT NULL DEFAULT 0 COMMENT '持有者最近发出的ID的时间戳（毫秒）',
+    expireTime    DATETIME     NOT NULL COMMENT '租约到期时间（数据库时间）',
+    PRIMARY KEY (workerId)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4 COMMENT = 'ID生成器工作节点租约';
+
+-- 6. 压缩存储
+ALTER TABLE fileInfo
+    ADD COLUMN contentEncoding VARCHAR(16) NULL COMMENT '存储压缩算法（gzip/zstd），NULL表示未压缩' AFTER contentHash;
+
+-- 7. 下载强校验器
+ALTER TABLE fileInfo
+    ADD COLUMN etag CHAR(64) NULL COMMENT '原始内容的SHA-256，下载的强校验器' AFTER contentEncoding;
+
+-- 8. 小文件合并存储
+ALTER TABLE fileInfo
+    ADD COLUMN segmentOffset BIGINT NULL COMMENT '小文件合并存储时内容在段文件（filePath）中的起始位置，独立文件为NULL' AFTER etag,
+    ADD COLUMN segmentLength BIGINT NULL COMMENT '小文件合并存储时内容在段文件中的长度（字节）' AFTER segmentOffset;